@@ -16,14 +16,26 @@
 
 package net.sf.json;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.Writer;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
+import net.sf.ezmorph.Morpher;
+import net.sf.ezmorph.object.IdentityObjectMorpher;
+import net.sf.json.util.JSONTokener;
 import net.sf.json.util.JsonEventListener;
 import net.sf.json.util.JSONUtils;
+import net.sf.json.util.LazyNumber;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +54,17 @@ abstract class AbstractJSON implements JSON {
       }
    };
 
+   /**
+    * JSON values being converted, by identity. A JSON value can't be equal to
+    * one that contains it, so this gives the same answer as cycleSet without
+    * computing hashCode() over the whole value.
+    */
+   private static ThreadLocal jsonCycleMap = new ThreadLocal(){
+      protected synchronized Object initialValue() {
+         return new IdentityHashMap();
+      }
+   };
+
    private static final Log log = LogFactory.getLog( AbstractJSON.class );
 
    /**
@@ -52,6 +75,9 @@ abstract class AbstractJSON implements JSON {
     *        otherwise.
     */
    protected static boolean addInstance( Object instance ) {
+      if( instance instanceof JSON ){
+         return getJsonCycleMap().put( instance, Boolean.TRUE ) == null;
+      }
       return getCycleSet().add( instance );
    }
 
@@ -203,17 +229,186 @@ abstract class AbstractJSON implements JSON {
       }
    }
 
+   /**
+    * Returns true if jsonConfig asks for a lazy tree and nothing it sets up
+    * requires the tree to be built eagerly. Lazy trees are only built in
+    * strict mode and without excludes, property filters or value processors,
+    * so that parsing keeps what the text holds.
+    */
+   protected static boolean isLazyTree( JsonConfig jsonConfig ) {
+      return jsonConfig.isLazyTree() && jsonConfig.isStrict()
+            && !jsonConfig.isEventTriggeringEnabled() && jsonConfig.getIncludePaths() == null
+            && jsonConfig.getExcludes().length == 0 && jsonConfig.getJsonPropertyFilter() == null
+            && !jsonConfig.hasJsonValueProcessors() && !jsonConfig.getObjectMapFactory()
+                  .isConcurrent() && !jsonConfig.getArrayListFactory()
+                  .isConcurrent();
+   }
+
+   /**
+    * Freezes value if it is a JSONObject or JSONArray.
+    *
+    * @return value
+    */
+   protected static Object freeze( Object value ) {
+      if( value instanceof JSONObject ){
+         ((JSONObject) value).freeze();
+      }else if( value instanceof JSONArray ){
+         ((JSONArray) value).freeze();
+      }
+      return value;
+   }
+
+   /**
+    * Returns true if value is a frozen JSONObject or JSONArray.
+    */
+   protected static boolean isFrozen( Object value ) {
+      if( value instanceof JSONObject ){
+         return ((JSONObject) value).isFrozen();
+      }
+      return value instanceof JSONArray && ((JSONArray) value).isFrozen();
+   }
+
+   /**
+    * Returns true if value is a JSONObject or JSONArray whose text has not
+    * been parsed yet, see JsonConfig.setLazyTree().
+    */
+   protected static boolean isUnparsed( Object value ) {
+      return value instanceof AbstractJSON && ((AbstractJSON) value).isUnparsed();
+   }
+
    /**
     * Removes a reference for cycle detection check.
     */
    protected static void removeInstance( Object instance ) {
-      getCycleSet().remove( instance );
+      if( instance instanceof JSON ){
+         getJsonCycleMap().remove( instance );
+      }else{
+         getCycleSet().remove( instance );
+      }
+   }
+
+   /**
+    * Returns true if two values of a JSONObject or JSONArray are equal.<br>
+    * JSONNull only equals JSONNull, a String equals any value whose
+    * String.valueOf() is that String, JSONObjects, JSONArrays and
+    * JSONFunctions equal the same kind of value with equal contents. Booleans
+    * and numbers of the same class are compared with equals(), Integers,
+    * Longs, Shorts and Bytes by their long value. Any other value is morphed
+    * with the MorpherRegistry of JSONUtils before comparing.
+    */
+   protected static boolean valuesEqual( Object o1, Object o2 ) {
+      if( o1 == o2 ){
+         return true;
+      }
+      JSONNull jsonNull = JSONNull.getInstance();
+      boolean null1 = jsonNull.equals( o1 );
+      boolean null2 = jsonNull.equals( o2 );
+      if( null1 || null2 ){
+         return null1 && null2;
+      }
+
+      if( o1 instanceof String ){
+         return o1.equals( String.valueOf( o2 ) );
+      }else if( o2 instanceof String ){
+         return o2.equals( String.valueOf( o1 ) );
+      }else if( (o1 instanceof JSONObject && o2 instanceof JSONObject)
+            || (o1 instanceof JSONArray && o2 instanceof JSONArray)
+            || (o1 instanceof JSONFunction && o2 instanceof JSONFunction) ){
+         return o1.equals( o2 );
+      }
+
+      if( o1 instanceof LazyNumber ){
+         o1 = ((LazyNumber) o1).getNumber();
+      }
+      if( o2 instanceof LazyNumber ){
+         o2 = ((LazyNumber) o2).getNumber();
+      }
+      if( o1 instanceof Boolean && o2 instanceof Boolean ){
+         return o1.equals( o2 );
+      }else if( isIntegral( o1 ) && isIntegral( o2 ) ){
+         return ((Number) o1).longValue() == ((Number) o2).longValue();
+      }else if( o1.getClass() == o2.getClass()
+            && (o1 instanceof Double || o1 instanceof BigDecimal || o1 instanceof BigInteger
+                  || o1 instanceof Float) ){
+         return o1.equals( o2 );
+      }
+
+      Morpher m1 = JSONUtils.getMorpherRegistry()
+            .getMorpherFor( o1.getClass() );
+      if( m1 != null && m1 != IdentityObjectMorpher.getInstance() ){
+         return o1.equals( JSONUtils.getMorpherRegistry()
+               .morph( o1.getClass(), o2 ) );
+      }
+      Morpher m2 = JSONUtils.getMorpherRegistry()
+            .getMorpherFor( o2.getClass() );
+      if( m2 != null && m2 != IdentityObjectMorpher.getInstance() ){
+         return JSONUtils.getMorpherRegistry()
+               .morph( o1.getClass(), o1 )
+               .equals( o2 );
+      }
+      return o1.equals( o2 );
+   }
+
+   /**
+    * Creates a JSONTokener over the remaining UTF-8 encoded bytes of a buffer.
+    * The position of the buffer is not changed.
+    */
+   protected static JSONTokener newTokener( ByteBuffer buffer ) {
+      return new JSONTokener( buffer, buffer.position(), buffer.remaining() );
+   }
+
+   /**
+    * Creates a JSONTokener over a memory mapped UTF-8 encoded file. A leading
+    * byte order mark is skipped.
+    *
+    * @throws JSONException if the file can't be mapped
+    */
+   protected static JSONTokener newTokener( File file ) {
+      if( file == null ){
+         throw new JSONException( "file is null" );
+      }
+      FileInputStream in = null;
+      try{
+         in = new FileInputStream( file );
+         FileChannel channel = in.getChannel();
+         long size = channel.size();
+         if( size > Integer.MAX_VALUE ){
+            throw new JSONException( "File is too large to be mapped: " + file );
+         }
+         ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+         int offset = 0;
+         if( size >= 3 && (buffer.get( 0 ) & 0xFF) == 0xEF && (buffer.get( 1 ) & 0xFF) == 0xBB
+               && (buffer.get( 2 ) & 0xFF) == 0xBF ){
+            offset = 3;
+         }
+         return new JSONTokener( buffer, offset, (int) size - offset );
+      }catch( IOException ioe ){
+         throw new JSONException( ioe );
+      }finally{
+         if( in != null ){
+            try{
+               // the mapping stays valid after the channel is closed
+               in.close();
+            }catch( IOException ioe ){
+               log.warn( ioe );
+            }
+         }
+      }
    }
 
    private static Set getCycleSet() {
       return (Set) cycleSet.get();
    }
 
+   private static Map getJsonCycleMap() {
+      return (Map) jsonCycleMap.get();
+   }
+
+   private static boolean isIntegral( Object value ) {
+      return value instanceof Integer || value instanceof Long || value instanceof Short
+            || value instanceof Byte;
+   }
+
     public final Writer write(Writer writer) throws IOException {
         write(writer,NORMAL);
         return writer;
@@ -226,12 +421,19 @@ abstract class AbstractJSON implements JSON {
 
     protected abstract void write(Writer w, WritingVisitor v) throws IOException;
 
+   /**
+    * Returns true if the text of this value has not been parsed yet.
+    */
+   boolean isUnparsed() {
+      return false;
+   }
+
     interface WritingVisitor {
         void on(JSON o, Writer w) throws IOException;
         void on(Object value, Writer w) throws IOException;
     }
 
-    private static final WritingVisitor NORMAL = new WritingVisitor() {
+    static final WritingVisitor NORMAL = new WritingVisitor() {
         public void on(JSON o, Writer w) throws IOException {
             o.write(w);
         }
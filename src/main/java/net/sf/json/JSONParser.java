@@ -0,0 +1,442 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json;
+
+import java.util.Collection;
+
+import net.sf.json.util.IncludePaths;
+import net.sf.json.util.JSONTokener;
+import net.sf.json.util.JSONUtils;
+import net.sf.json.util.LazyText;
+import net.sf.json.util.PropertyFilter;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Builds JSONObjects and JSONArrays from a JSONTokener without recursion.<br>
+ * The objects and arrays being parsed are kept on an explicit stack of
+ * frames, so the nesting of a text is limited by JsonConfig.getMaxDepth()
+ * instead of the size of the thread stack. Values go straight into the
+ * objects and arrays being built, without the copies and lookups made by
+ * element() for values that can't need them.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+final class JSONParser {
+   /**
+    * Checks that nothing but whitespace follows the value just parsed if
+    * jsonConfig is strict, used when tokener holds a whole JSON text.
+    *
+    * @throws JSONException if jsonConfig is strict and the text continues.
+    */
+   static void end( JSONTokener tokener, JsonConfig jsonConfig ) {
+      if( !jsonConfig.isStrict() ){
+         return;
+      }
+      boolean strict = tokener.isStrict();
+      tokener.setStrict( true );
+      try{
+         if( tokener.nextClean() != 0 ){
+            JSONException jsone = tokener.syntaxError( "Unexpected text after the JSON text" );
+            AbstractJSON.fireErrorEvent( jsone, jsonConfig );
+            throw jsone;
+         }
+      }finally{
+         tokener.setStrict( strict );
+      }
+   }
+
+   /**
+    * Parses the JSONArray at the current position of tokener.
+    *
+    * @throws JSONException if the text is not a proper JSONArray or is nested
+    *         deeper than the maximum depth of jsonConfig.
+    */
+   static JSONArray parseArray( JSONTokener tokener, JsonConfig jsonConfig ) {
+      return (JSONArray) parse( tokener, jsonConfig, false );
+   }
+
+   /**
+    * Parses the JSONObject at the current position of tokener, a null
+    * JSONObject if the text starts with "null".
+    *
+    * @throws JSONException if the text is not a proper JSONObject or is nested
+    *         deeper than the maximum depth of jsonConfig.
+    */
+   static JSONObject parseObject( JSONTokener tokener, JsonConfig jsonConfig ) {
+      return (JSONObject) parse( tokener, jsonConfig, true );
+   }
+
+   /**
+    * Adds a value read from the text to the array of frame. Values are added
+    * as they are unless a JsonValueProcessor applies to them.
+    */
+   private static void add( Frame frame, Object value, JsonConfig jsonConfig ) {
+      JSONArray jsonArray = frame.jsonArray;
+      if( !jsonConfig.hasJsonValueProcessors() || AbstractJSON.isUnparsed( value )
+            || jsonConfig.findJsonValueProcessor( value.getClass() ) == null ){
+         jsonArray.addParsed( toValue( value ) );
+      }else{
+         jsonArray.element( value, jsonConfig );
+      }
+      AbstractJSON.fireElementAddedEvent( frame.index, jsonArray.get( frame.index++ ), jsonConfig );
+   }
+
+   /**
+    * Reads the '{' or '[' opening a JSONObject or JSONArray and returns its
+    * frame.
+    */
+   private static Frame begin( JSONTokener tokener, JsonConfig jsonConfig, boolean object,
+         IncludePaths includePaths, String key, Frame parent ) {
+      Frame frame = new Frame( parent, key, includePaths );
+      if( object ){
+         AbstractJSON.fireObjectStartEvent( jsonConfig );
+         if( tokener.nextClean() != '{' ){
+            throw tokener.syntaxError( "A JSONObject text must begin with '{'" );
+         }
+         frame.jsonObject = new JSONObject( jsonConfig );
+      }else{
+         AbstractJSON.fireArrayStartEvent( jsonConfig );
+         frame.jsonArray = new JSONArray( jsonConfig );
+         if( tokener.nextClean() != '[' ){
+            throw tokener.syntaxError( "A JSONArray text must start with '['" );
+         }
+      }
+      return frame;
+   }
+
+   /**
+    * Reads the text of a function whose header is the value just read.
+    */
+   private static JSONFunction nextFunction( JSONTokener tokener, Object header ) {
+      // read params if any
+      String params = JSONUtils.getFunctionParams( (String) header );
+      // read function text
+      int i = 0;
+      StringBuffer sb = new StringBuffer();
+      for( ;; ){
+         char ch = tokener.next();
+         if( ch == 0 ){
+            break;
+         }
+         if( ch == '{' ){
+            i++;
+         }
+         if( ch == '}' ){
+            i--;
+         }
+         sb.append( ch );
+         if( i == 0 ){
+            break;
+         }
+      }
+      if( i != 0 ){
+         throw tokener.syntaxError( "Unbalanced '{' or '}' on prop: " + header );
+      }
+      // trim '{' at start and '}' at end
+      String text = sb.toString();
+      text = text.substring( 1, text.length() - 1 )
+            .trim();
+      return new JSONFunction( (params != null) ? StringUtils.split( params, "," ) : null, text );
+   }
+
+   private static AbstractJSON parse( JSONTokener tokener, JsonConfig jsonConfig, boolean object ) {
+      if( object && tokener.startsWith( "null" ) ){
+         AbstractJSON.fireObjectStartEvent( jsonConfig );
+         for( int i = 0; i < 4; i++ ){
+            tokener.next();
+         }
+         AbstractJSON.fireObjectEndEvent( jsonConfig );
+         return new JSONObject( true );
+      }
+
+      boolean wasStrict = tokener.isStrict();
+      boolean strict = wasStrict || jsonConfig.isStrict();
+      tokener.setStrict( strict );
+      try{
+         Collection exclusions = jsonConfig.getMergedExcludes();
+         PropertyFilter jsonPropertyFilter = jsonConfig.getJsonPropertyFilter();
+         boolean lazy = AbstractJSON.isLazyTree( jsonConfig );
+         int maxDepth = jsonConfig.getMaxDepth();
+         IncludePaths includePaths = tokener.getIncludePaths() != null ? tokener.getIncludePaths()
+               : jsonConfig.getIncludePaths();
+         Frame frame = begin( tokener, jsonConfig, object, includePaths, null, null );
+         boolean more = first( tokener, frame );
+         for( ;; ){
+            if( !more ){
+               Frame parent = frame.parent;
+               AbstractJSON json;
+               if( frame.jsonObject != null ){
+                  AbstractJSON.fireObjectEndEvent( jsonConfig );
+                  json = frame.jsonObject;
+               }else{
+                  AbstractJSON.fireArrayEndEvent( jsonConfig );
+                  json = frame.jsonArray;
+               }
+               if( parent == null ){
+                  return json;
+               }
+               if( parent.jsonObject != null ){
+                  put( parent, frame.key, json, tokener, exclusions, jsonPropertyFilter, jsonConfig );
+               }else{
+                  add( parent, json, jsonConfig );
+               }
+               frame = parent;
+               more = next( tokener, frame, strict );
+               continue;
+            }
+
+            String key = null;
+            IncludePaths valuePaths = null;
+            if( frame.jsonObject != null ){
+               char c = tokener.nextClean();
+               switch( c ){
+                  case 0:
+                     throw tokener.syntaxError( "A JSONObject text must end with '}'" );
+                  case '}':
+                     more = false;
+                     continue;
+                  default:
+                     tokener.back();
+                     key = tokener.nextKey( jsonConfig );
+               }
+
+               /*
+                * The key is followed by ':'. We will also tolerate '=' or '=>'.
+                */
+
+               c = tokener.nextClean();
+               if( c == '=' && !strict ){
+                  if( tokener.next() != '>' ){
+                     tokener.back();
+                  }
+               }else if( c != ':' ){
+                  throw tokener.syntaxError( "Expected a ':' after a key" );
+               }
+               if( frame.includePaths != null ){
+                  valuePaths = frame.includePaths.property( key );
+                  if( valuePaths != null && !valuePaths.isAll() ){
+                     // only objects and arrays can hold the selected values
+                     c = tokener.nextClean();
+                     tokener.back();
+                     if( c != '{' && c != '[' ){
+                        valuePaths = null;
+                     }
+                  }
+                  if( valuePaths == null ){
+                     tokener.skipValue();
+                     more = next( tokener, frame, strict );
+                     continue;
+                  }
+               }
+            }else{
+               if( frame.includePaths != null ){
+                  valuePaths = frame.includePaths.element( frame.position++ );
+                  char c = tokener.nextClean();
+                  tokener.back();
+                  // only objects and arrays can hold the selected values
+                  if( valuePaths == null || (!valuePaths.isAll() && c != '{' && c != '[') ){
+                     if( c != ',' ){
+                        tokener.skipValue();
+                     }
+                     more = next( tokener, frame, strict );
+                     continue;
+                  }
+               }
+               if( tokener.nextClean() == ',' ){
+                  if( strict ){
+                     throw tokener.syntaxError( "Missing value." );
+                  }
+                  tokener.back();
+                  frame.jsonArray.addParsed( JSONNull.getInstance() );
+                  AbstractJSON.fireElementAddedEvent( frame.index, frame.jsonArray.get( frame.index++ ),
+                        jsonConfig );
+                  more = next( tokener, frame, strict );
+                  continue;
+               }
+               tokener.back();
+            }
+
+            char c = tokener.nextClean();
+            tokener.back();
+            if( c == '{' || c == '[' ){
+               LazyText text = lazy ? LazyText.skip( tokener, c ) : null;
+               if( text == null ){
+                  if( frame.depth >= maxDepth ){
+                     throw tokener.syntaxError( "Nesting depth exceeds the maximum of " + maxDepth );
+                  }
+                  frame = begin( tokener, jsonConfig, c == '{', valuePaths, key, frame );
+                  more = first( tokener, frame );
+                  continue;
+               }
+               AbstractJSON json = c == '{' ? (AbstractJSON) JSONObject._fromLazyText( text,
+                     jsonConfig ) : JSONArray._fromLazyText( text, jsonConfig );
+               if( frame.jsonObject != null ){
+                  put( frame, key, json, tokener, exclusions, jsonPropertyFilter, jsonConfig );
+               }else{
+                  add( frame, json, jsonConfig );
+               }
+               more = next( tokener, frame, strict );
+               continue;
+            }
+
+            Object v = tokener.nextValue( jsonConfig );
+            if( !strict && JSONUtils.isFunctionHeader( v ) ){
+               JSONFunction function = nextFunction( tokener, v );
+               if( frame.jsonObject != null ){
+                  if( jsonPropertyFilter == null || !jsonPropertyFilter.apply( tokener, key, function ) ){
+                     set( frame.jsonObject, key, function, jsonConfig );
+                  }
+               }else{
+                  add( frame, function, jsonConfig );
+               }
+            }else if( frame.jsonObject != null ){
+               put( frame, key, v, tokener, exclusions, jsonPropertyFilter, jsonConfig );
+            }else{
+               add( frame, v, jsonConfig );
+            }
+            more = next( tokener, frame, strict );
+         }
+      }catch( JSONException jsone ){
+         AbstractJSON.fireErrorEvent( jsone, jsonConfig );
+         throw jsone;
+      }finally{
+         tokener.setStrict( wasStrict );
+      }
+   }
+
+   /**
+    * Returns false if the JSONArray of frame is empty, consuming its ']'.
+    */
+   private static boolean first( JSONTokener tokener, Frame frame ) {
+      if( frame.jsonArray != null ){
+         if( tokener.nextClean() == ']' ){
+            return false;
+         }
+         tokener.back();
+      }
+      return true;
+   }
+
+   /**
+    * Reads the separator following a member of the JSONObject or JSONArray of
+    * frame. Returns false if it was the last one, consuming the closing
+    * bracket.
+    */
+   private static boolean next( JSONTokener tokener, Frame frame, boolean strict ) {
+      char close = frame.jsonObject != null ? '}' : ']';
+
+      /*
+       * Members are separated by ','. We will also tolerate ';' and a trailing
+       * ',' unless strict.
+       */
+
+      char c = tokener.nextClean();
+      if( c == ',' || (c == ';' && !strict) ){
+         if( tokener.nextClean() == close ){
+            if( strict ){
+               throw tokener.syntaxError( "Expected a value after ','" );
+            }
+            return false;
+         }
+         tokener.back();
+         return true;
+      }
+      if( c == close ){
+         return false;
+      }
+      throw tokener.syntaxError( "Expected a ',' or '" + close + "'" );
+   }
+
+   /**
+    * Puts a value read from the text in the JSONObject of frame, unless key
+    * is excluded or filtered. Values are put as they are unless the key is
+    * already present or a JsonValueProcessor applies to them.
+    */
+   private static void put( Frame frame, String key, Object value, JSONTokener tokener,
+         Collection exclusions, PropertyFilter jsonPropertyFilter, JsonConfig jsonConfig ) {
+      if( exclusions.contains( key ) ){
+         return;
+      }
+      if( jsonPropertyFilter != null && jsonPropertyFilter.apply( tokener, key, value ) ){
+         return;
+      }
+      JSONObject jsonObject = frame.jsonObject;
+      if( !jsonObject.has( key )
+            && (!jsonConfig.hasJsonValueProcessors() || AbstractJSON.isUnparsed( value ) || jsonConfig.findJsonValueProcessor(
+                  value.getClass(), key ) == null) ){
+         jsonObject.putParsed( key, toValue( value ) );
+         AbstractJSON.firePropertySetEvent( key, value, false, jsonConfig );
+      }else{
+         set( jsonObject, key, value, jsonConfig );
+      }
+   }
+
+   private static void set( JSONObject jsonObject, String key, Object value, JsonConfig jsonConfig ) {
+      if( jsonObject.has( key ) ){
+         jsonObject.accumulate( key, value, jsonConfig );
+         AbstractJSON.firePropertySetEvent( key, value, true, jsonConfig );
+      }else{
+         jsonObject.element( key, value, jsonConfig );
+         AbstractJSON.firePropertySetEvent( key, value, false, jsonConfig );
+      }
+   }
+
+   /**
+    * Applies to a value read from the text the conversions element() would,
+    * strings that hold a function become a JSONFunction and non finite
+    * numbers are rejected.
+    */
+   private static Object toValue( Object value ) {
+      if( value instanceof String ){
+         if( JSONUtils.isFunction( value ) ){
+            return JSONFunction.parse( (String) value );
+         }
+      }else if( value instanceof Double ){
+         JSONUtils.testValidity( value );
+      }
+      return value;
+   }
+
+   private JSONParser() {
+
+   }
+
+   /**
+    * A JSONObject or JSONArray being parsed.
+    */
+   private static final class Frame {
+      final int depth;
+      /** Number of elements added to jsonArray */
+      int index;
+      final IncludePaths includePaths;
+      JSONArray jsonArray;
+      JSONObject jsonObject;
+      /** Key of jsonObject or jsonArray in the parent JSONObject */
+      final String key;
+      final Frame parent;
+      /** Number of elements read from the text of jsonArray */
+      int position;
+
+      Frame( Frame parent, String key, IncludePaths includePaths ) {
+         this.parent = parent;
+         this.key = key;
+         this.includePaths = includePaths;
+         this.depth = parent != null ? parent.depth + 1 : 1;
+      }
+   }
+}
@@ -16,6 +16,13 @@
 
 package net.sf.json;
 
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 import net.sf.json.util.JSONTokener;
 import net.sf.json.util.JSONUtils;
 
@@ -97,6 +104,10 @@ public class JSONSerializer {
          json = toJSON( (JSONString) object, jsonConfig );
       }else if( object instanceof String ){
          json = toJSON( (String) object, jsonConfig );
+      }else if( object instanceof Reader ){
+         json = toJSON( new JSONTokener( (Reader) object, JSONTokener.DEFAULT_BUFFER_SIZE ), jsonConfig );
+      }else if( object instanceof ByteBuffer ){
+         json = toJSON( AbstractJSON.newTokener( (ByteBuffer) object ), jsonConfig );
       }else if( JSONUtils.isArray( object ) ){
          json = JSONArray.fromObject( object, jsonConfig );
       }else{
@@ -113,6 +124,101 @@ public class JSONSerializer {
       return json;
    }
 
+   /**
+    * Creates a JSONObject, JSONArray or a JSONNull from a UTF-8 encoded file.<br>
+    * The file is memory mapped and parsed in place, so its text is never
+    * copied to the heap. Files larger than 2GB can't be mapped, read them with
+    * toJSON(InputStream, Charset) instead.
+    *
+    * @param file the source file
+    * @throws JSONException if the file can not be read or is not valid JSON
+    */
+   public static JSON toJSON( File file ) {
+      return toJSON( file, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JSONObject, JSONArray or a JSONNull from a UTF-8 encoded file.<br>
+    * The file is memory mapped and parsed in place, so its text is never
+    * copied to the heap. Files larger than 2GB can't be mapped, read them with
+    * toJSON(InputStream, Charset, JsonConfig) instead.
+    *
+    * @param file the source file
+    * @param jsonConfig additional configuration
+    * @throws JSONException if the file can not be read or is not valid JSON
+    */
+   public static JSON toJSON( File file, JsonConfig jsonConfig ) {
+      return toJSON( AbstractJSON.newTokener( file ), jsonConfig );
+   }
+
+   /**
+    * Creates a JSONObject, JSONArray or a JSONNull from a stream of encoded
+    * characters.<br>
+    * The stream is read through a buffer and is not closed.
+    *
+    * @param in the source stream
+    * @param charset the encoding of the stream
+    * @throws JSONException if the stream can not be read or is not valid JSON
+    */
+   public static JSON toJSON( InputStream in, Charset charset ) {
+      return toJSON( in, charset, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JSONObject, JSONArray or a JSONNull from a stream of encoded
+    * characters.<br>
+    * The stream is read through a buffer and is not closed.
+    *
+    * @param in the source stream
+    * @param charset the encoding of the stream
+    * @param jsonConfig additional configuration
+    * @throws JSONException if the stream can not be read or is not valid JSON
+    */
+   public static JSON toJSON( InputStream in, Charset charset, JsonConfig jsonConfig ) {
+      return toJSON( new InputStreamReader( in, charset ), jsonConfig );
+   }
+
+   /**
+    * Creates a JSONObject, JSONArray or a JSONNull from a JSONTokener, looking
+    * at the first significant character instead of resetting the tokener, as
+    * a tokener reading from a Reader may not be able to go back.
+    *
+    * @throws JSONException if the text is not valid JSON
+    */
+   private static JSON toJSON( JSONTokener tokener, JsonConfig jsonConfig ) {
+      char c = tokener.nextClean();
+      tokener.back();
+      JSON json;
+      switch( c ){
+         case '[':
+            json = JSONArray.fromObject( tokener, jsonConfig );
+            JSONParser.end( tokener, jsonConfig );
+            return json;
+         case '{':
+            json = JSONObject.fromObject( tokener, jsonConfig );
+            JSONParser.end( tokener, jsonConfig );
+            return json;
+         case 'n':
+         case 'N':
+            if( !jsonConfig.isStrict() ){
+               if( "null".equalsIgnoreCase( tokener.nextTo( "" ) ) ){
+                  return JSONNull.getInstance();
+               }
+               break;
+            }
+            for( int i = 0; i < 4; i++ ){
+               if( tokener.next() != "null".charAt( i ) ){
+                  throw new JSONException( "Invalid JSON String" );
+               }
+            }
+            JSONParser.end( tokener, jsonConfig );
+            return JSONNull.getInstance();
+         default:
+            // empty
+      }
+      throw new JSONException( "Invalid JSON String" );
+   }
+
    /**
     * Creates a JSONObject, JSONArray or a JSONNull from a JSONString.
     *
@@ -133,7 +239,7 @@ public class JSONSerializer {
          json = JSONArray.fromObject( string, jsonConfig );
       }else if( string.startsWith( "{" ) ){
          json = JSONObject.fromObject( string, jsonConfig );
-      }else if( "null".equalsIgnoreCase( string ) ){
+      }else if( jsonConfig.isStrict() ? "null".equals( string ) : "null".equalsIgnoreCase( string ) ){
          json = JSONNull.getInstance();
       }else{
          throw new JSONException( "Invalid JSON String" );
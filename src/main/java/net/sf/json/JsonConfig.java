@@ -26,10 +26,14 @@ import java.util.Map;
 import net.sf.json.processors.JsonBeanProcessor;
 import net.sf.json.processors.JsonBeanProcessorMatcher;
 import net.sf.json.processors.JsonValueProcessor;
+import net.sf.json.util.ArrayListFactory;
 import net.sf.json.util.CycleDetectionStrategy;
+import net.sf.json.util.IncludePaths;
 import net.sf.json.util.JavaIdentifierTransformer;
 import net.sf.json.util.JsonEventListener;
+import net.sf.json.util.KeyCache;
 import net.sf.json.util.NewBeanInstanceStrategy;
+import net.sf.json.util.ObjectMapFactory;
 import net.sf.json.util.PropertyFilter;
 
 import org.apache.commons.collections.map.MultiKeyMap;
@@ -41,8 +45,11 @@ import org.apache.commons.lang.StringUtils;
  * @author Andres Almiray <aalmiray@users.sourceforge.net>
  */
 public class JsonConfig {
+   public static final ArrayListFactory DEFAULT_ARRAY_LIST_FACTORY = ArrayListFactory.ARRAY_LIST;
    public static final JsonBeanProcessorMatcher DEFAULT_JSON_BEAN_PROCESSOR_MATCHER = JsonBeanProcessorMatcher.DEFAULT;
+   public static final int DEFAULT_MAX_DEPTH = 1000;
    public static final NewBeanInstanceStrategy DEFAULT_NEW_BEAN_INSTANCE_STRATEGY = NewBeanInstanceStrategy.DEFAULT;
+   public static final ObjectMapFactory DEFAULT_OBJECT_MAP_FACTORY = ObjectMapFactory.SORTED;
    public static final int MODE_LIST = 1;
    public static final int MODE_OBJECT_ARRAY = 2;
    private static final CycleDetectionStrategy DEFAULT_CYCLE_DETECTION_STRATEGY = CycleDetectionStrategy.STRICT;
@@ -51,6 +58,7 @@ public class JsonConfig {
    private static final JavaIdentifierTransformer DEFAULT_JAVA_IDENTIFIER_TRANSFORMER = JavaIdentifierTransformer.NOOP;
    private static final String[] EMPTY_EXCLUDES = new String[0];
 
+   private ArrayListFactory arrayListFactory = DEFAULT_ARRAY_LIST_FACTORY;
    /** Array conversion mode */
    private int arrayMode = MODE_LIST;
    private MultiKeyMap beanKeyMap = new MultiKeyMap();
@@ -64,16 +72,23 @@ public class JsonConfig {
    private boolean handleJettisonSingleElementArray;
    private boolean ignoreDefaultExcludes;
    private boolean ignoreTransientFields;
+   private IncludePaths includePaths;
    private JavaIdentifierTransformer javaIdentifierTransformer = DEFAULT_JAVA_IDENTIFIER_TRANSFORMER;
    private PropertyFilter javaPropertyFilter;
    private JsonBeanProcessorMatcher jsonBeanProcessorMatcher = DEFAULT_JSON_BEAN_PROCESSOR_MATCHER;
    private PropertyFilter jsonPropertyFilter;
+   private KeyCache keyCache;
    private Map keyMap = new HashMap();
+   private boolean lazyNumbers;
+   private boolean lazyTree;
+   private int maxDepth = DEFAULT_MAX_DEPTH;
    private NewBeanInstanceStrategy newBeanInstanceStrategy = DEFAULT_NEW_BEAN_INSTANCE_STRATEGY;
+   private ObjectMapFactory objectMapFactory = DEFAULT_OBJECT_MAP_FACTORY;
    private Map processorMap = new HashMap();
    /** Root class used when converting to an specific bean */
    private Class rootClass;
    private boolean skipJavaIdentifierTransformationInMapKeys;
+   private boolean strict;
    private boolean triggerEvents;
    private Map typeMap = new HashMap();
 
@@ -140,17 +155,25 @@ public class JsonConfig {
       jsc.handleJettisonSingleElementArray = handleJettisonSingleElementArray;
       jsc.ignoreDefaultExcludes = ignoreDefaultExcludes;
       jsc.ignoreTransientFields = ignoreTransientFields;
+      jsc.includePaths = includePaths;
       jsc.javaIdentifierTransformer = javaIdentifierTransformer;
+      jsc.keyCache = keyCache;
       jsc.keyMap.putAll( keyMap );
+      jsc.lazyNumbers = lazyNumbers;
+      jsc.lazyTree = lazyTree;
+      jsc.maxDepth = maxDepth;
       jsc.processorMap.putAll( processorMap );
       jsc.rootClass = rootClass;
       jsc.skipJavaIdentifierTransformationInMapKeys = skipJavaIdentifierTransformationInMapKeys;
+      jsc.strict = strict;
       jsc.triggerEvents = triggerEvents;
       jsc.typeMap.putAll( typeMap );
       jsc.jsonPropertyFilter = jsonPropertyFilter;
       jsc.javaPropertyFilter = javaPropertyFilter;
       jsc.jsonBeanProcessorMatcher = jsonBeanProcessorMatcher;
       jsc.newBeanInstanceStrategy = newBeanInstanceStrategy;
+      jsc.objectMapFactory = objectMapFactory;
+      jsc.arrayListFactory = arrayListFactory;
       return jsc;
    }
 
@@ -267,6 +290,14 @@ public class JsonConfig {
       return null;
    }
 
+   /**
+    * Returns the configured ArrayListFactory.<br>
+    * Default value is ArrayListFactory.ARRAY_LIST
+    */
+   public ArrayListFactory getArrayListFactory() {
+      return arrayListFactory;
+   }
+
    /**
     * Returns the current array mode conversion
     *
@@ -301,6 +332,15 @@ public class JsonConfig {
       return excludes;
    }
 
+   /**
+    * Returns the paths of the JSON text that are kept when parsing, or null
+    * if the whole text is kept.<br>
+    * Default value is null
+    */
+   public IncludePaths getIncludePaths() {
+      return includePaths;
+   }
+
    /**
     * Returns the configured JavaIdentifierTransformer. <br>
     * Used when transforming from Json to Java.<br>
@@ -339,6 +379,24 @@ public class JsonConfig {
       return jsonPropertyFilter;
    }
 
+   /**
+    * Returns the KeyCache used to canonicalize object keys when parsing, or
+    * null if keys are not cached.<br>
+    * Default value is null
+    */
+   public KeyCache getKeyCache() {
+      return keyCache;
+   }
+
+   /**
+    * Returns the maximum nesting of objects and arrays allowed when parsing
+    * JSON text.<br>
+    * Default value is DEFAULT_MAX_DEPTH
+    */
+   public int getMaxDepth() {
+      return maxDepth;
+   }
+
    /**
     * Returns a set of default excludes with user-defined excludes.
     */
@@ -370,6 +428,14 @@ public class JsonConfig {
       return newBeanInstanceStrategy;
    }
 
+   /**
+    * Returns the configured ObjectMapFactory.<br>
+    * Default value is ObjectMapFactory.SORTED
+    */
+   public ObjectMapFactory getObjectMapFactory() {
+      return objectMapFactory;
+   }
+
    /**
     * Returns the current root Class.
     *
@@ -423,6 +489,24 @@ public class JsonConfig {
       return ignoreTransientFields;
    }
 
+   /**
+    * Returns true if numbers parsed from JSON text are kept as LazyNumber
+    * instances, converted only when their value is requested.<br>
+    * Default value is false
+    */
+   public boolean isLazyNumbers() {
+      return lazyNumbers;
+   }
+
+   /**
+    * Returns true if JSONObjects and JSONArrays parsed from a String keep
+    * their text and parse it on first use.<br>
+    * Default value is false
+    */
+   public boolean isLazyTree() {
+      return lazyTree;
+   }
+
    /**
     * Returns true if map keys will not be transformed.<br>
     * Default value is false
@@ -431,6 +515,14 @@ public class JsonConfig {
       return skipJavaIdentifierTransformationInMapKeys;
    }
 
+   /**
+    * Returns true if JSON text is parsed with the grammar of RFC 8259 only.<br>
+    * Default value is false
+    */
+   public boolean isStrict() {
+      return strict;
+   }
+
    /**
     * Registers a JsonValueProcessor.<br>
     *
@@ -512,12 +604,18 @@ public class JsonConfig {
       excludes = EMPTY_EXCLUDES;
       ignoreDefaultExcludes = false;
       ignoreTransientFields = false;
+      includePaths = null;
       javaIdentifierTransformer = DEFAULT_JAVA_IDENTIFIER_TRANSFORMER;
       cycleDetectionStrategy = DEFAULT_CYCLE_DETECTION_STRATEGY;
       skipJavaIdentifierTransformationInMapKeys = false;
+      strict = false;
       triggerEvents = false;
       handleJettisonEmptyElement = false;
       handleJettisonSingleElementArray = false;
+      lazyNumbers = false;
+      lazyTree = false;
+      maxDepth = DEFAULT_MAX_DEPTH;
+      keyCache = null;
       arrayMode = MODE_LIST;
       rootClass = null;
       classMap = null;
@@ -529,6 +627,21 @@ public class JsonConfig {
       javaPropertyFilter = null;
       jsonBeanProcessorMatcher = DEFAULT_JSON_BEAN_PROCESSOR_MATCHER;
       newBeanInstanceStrategy = DEFAULT_NEW_BEAN_INSTANCE_STRATEGY;
+      objectMapFactory = DEFAULT_OBJECT_MAP_FACTORY;
+      arrayListFactory = DEFAULT_ARRAY_LIST_FACTORY;
+   }
+
+   /**
+    * Sets the ArrayListFactory that creates the List of every JSONArray built
+    * with this configuration.<br>
+    * JSONArrays built from arrays of primitives keep them unboxed only with
+    * ArrayListFactory.ARRAY_LIST. Lazy trees are not built when this factory
+    * or the ObjectMapFactory is concurrent.<br>
+    * Will set default value (ArrayListFactory.ARRAY_LIST) if null.
+    */
+   public void setArrayListFactory( ArrayListFactory arrayListFactory ) {
+      this.arrayListFactory = arrayListFactory == null ? DEFAULT_ARRAY_LIST_FACTORY
+            : arrayListFactory;
    }
 
    /**
@@ -607,6 +720,17 @@ public class JsonConfig {
       this.ignoreTransientFields = ignoreTransientFields;
    }
 
+   /**
+    * Sets the paths of the JSON text that are kept when parsing, null keeps
+    * the whole text.<br>
+    * Unlike a json property filter, which is applied to values that have
+    * already been parsed, the values that are not on an include path are
+    * skipped by the parser without being built.
+    */
+   public void setIncludePaths( IncludePaths includePaths ) {
+      this.includePaths = includePaths;
+   }
+
    /**
     * Sets the JavaIdentifierTransformer to use.<br>
     * Will set default value (JavaIdentifierTransformer.NOOP) if null.
@@ -643,6 +767,56 @@ public class JsonConfig {
       this.jsonPropertyFilter = jsonPropertyFilter;
    }
 
+   /**
+    * Sets the KeyCache used to canonicalize object keys when parsing, null
+    * disables caching.<br>
+    * The same KeyCache may be set on several JsonConfigs so that they share
+    * their keys, and is shared by the copies of this JsonConfig.
+    */
+   public void setKeyCache( KeyCache keyCache ) {
+      this.keyCache = keyCache;
+   }
+
+   /**
+    * Sets if numbers parsed from JSON text are kept as LazyNumber instances,
+    * converted to Integer, Long or Double only when their value is requested.<br>
+    * Only numbers written in the plain JSON syntax are kept lazy.
+    */
+   public void setLazyNumbers( boolean lazyNumbers ) {
+      this.lazyNumbers = lazyNumbers;
+   }
+
+   /**
+    * Sets if JSONObjects and JSONArrays parsed from a String keep their text
+    * and parse it on first use, one level at a time. The whole text is still
+    * checked against RFC 8259 when it is read. Untouched objects and arrays
+    * are written as they appear in the text, without whitespace between
+    * tokens, if parsing would keep all of it, otherwise they are parsed
+    * before they are written.<br>
+    * Lazy trees are only built in strict mode. The tree is built eagerly when
+    * events are triggered, or include paths, excludes, a property filter or
+    * value processors are set, and when the ObjectMapFactory or the
+    * ArrayListFactory is concurrent. The JsonConfig is used when the text is
+    * parsed, it must not be changed while lazy objects and arrays are in use,
+    * and lazy objects and arrays must not be shared between threads before
+    * they are parsed.
+    */
+   public void setLazyTree( boolean lazyTree ) {
+      this.lazyTree = lazyTree;
+   }
+
+   /**
+    * Sets the maximum nesting of objects and arrays allowed when parsing JSON
+    * text, the outermost object or array is at depth 1. Deeper texts are
+    * rejected with a JSONException.<br>
+    * Parsing does not use the thread stack for nesting, but writing,
+    * comparing and converting a tree to beans do. Will set default value
+    * (DEFAULT_MAX_DEPTH) if maxDepth is not positive.
+    */
+   public void setMaxDepth( int maxDepth ) {
+      this.maxDepth = maxDepth > 0 ? maxDepth : DEFAULT_MAX_DEPTH;
+   }
+
    /**
     * Sets the NewBeanInstanceStrategy to use.<br>
     * Will set default value (NewBeanInstanceStrategy.DEFAULT) if null.
@@ -652,6 +826,18 @@ public class JsonConfig {
             : newBeanInstanceStrategy;
    }
 
+   /**
+    * Sets the ObjectMapFactory that creates the Map of every JSONObject built
+    * with this configuration.<br>
+    * Lazy trees are not built when this factory or the ArrayListFactory is
+    * concurrent.<br>
+    * Will set default value (ObjectMapFactory.SORTED) if null.
+    */
+   public void setObjectMapFactory( ObjectMapFactory objectMapFactory ) {
+      this.objectMapFactory = objectMapFactory == null ? DEFAULT_OBJECT_MAP_FACTORY
+            : objectMapFactory;
+   }
+
    /**
     * Sets the current root Class
     *
@@ -669,6 +855,28 @@ public class JsonConfig {
       this.skipJavaIdentifierTransformationInMapKeys = skipJavaIdentifierTransformationInMapKeys;
    }
 
+   /**
+    * Sets if JSON text is parsed with the grammar of RFC 8259 only. Comments,
+    * single quoted and unquoted strings, the '=', '=>' and ';' separators,
+    * functions, missing array elements, trailing commas, hexadecimal and
+    * octal numbers and text following the outermost value are rejected with a
+    * JSONException.<br>
+    * Values skipped by include paths, and the objects and arrays of a lazy
+    * tree until they are used, are only checked for balanced brackets.
+    */
+   public void setStrict( boolean strict ) {
+      this.strict = strict;
+   }
+
+   /**
+    * Returns true if any JsonValueProcessor is registered, lets the parser
+    * skip looking them up for every value.
+    */
+   boolean hasJsonValueProcessors() {
+      return !typeMap.isEmpty() || !keyMap.isEmpty() || !beanTypeMap.isEmpty()
+            || !beanKeyMap.isEmpty();
+   }
+
    /**
     * Removes a JsonBeanProcessor.
     *
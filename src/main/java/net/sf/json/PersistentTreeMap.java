@@ -0,0 +1,275 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable Map with its keys in natural order, kept in a balanced (AVL)
+ * binary tree.<br>
+ * with() and without() return a new map that shares every node of this one
+ * except the ones on the path to the key, O(log n) of them.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+final class PersistentTreeMap extends AbstractMap {
+   static final PersistentTreeMap EMPTY = new PersistentTreeMap( null, 0 );
+
+   /**
+    * Returns a PersistentTreeMap with the entries of map.
+    */
+   static PersistentTreeMap of( Map map ) {
+      if( map instanceof PersistentTreeMap ){
+         return (PersistentTreeMap) map;
+      }
+      PersistentTreeMap persistent = EMPTY;
+      for( Iterator entries = map.entrySet()
+            .iterator(); entries.hasNext(); ){
+         Map.Entry entry = (Map.Entry) entries.next();
+         persistent = persistent.with( entry.getKey(), entry.getValue() );
+      }
+      return persistent;
+   }
+
+   private static Node balance( Object key, Object value, Node left, Node right ) {
+      int hl = height( left );
+      int hr = height( right );
+      if( hl > hr + 1 ){
+         if( height( left.left ) >= height( left.right ) ){
+            return new Node( left.key, left.value, left.left, new Node( key, value, left.right,
+                  right ) );
+         }
+         Node lr = left.right;
+         return new Node( lr.key, lr.value, new Node( left.key, left.value, left.left, lr.left ),
+               new Node( key, value, lr.right, right ) );
+      }
+      if( hr > hl + 1 ){
+         if( height( right.right ) >= height( right.left ) ){
+            return new Node( right.key, right.value, new Node( key, value, left, right.left ),
+                  right.right );
+         }
+         Node rl = right.left;
+         return new Node( rl.key, rl.value, new Node( key, value, left, rl.left ), new Node(
+               right.key, right.value, rl.right, right.right ) );
+      }
+      return new Node( key, value, left, right );
+   }
+
+   private static Node delete( Node node, Comparable key ) {
+      int c = key.compareTo( node.key );
+      if( c < 0 ){
+         return balance( node.key, node.value, delete( node.left, key ), node.right );
+      }else if( c > 0 ){
+         return balance( node.key, node.value, node.left, delete( node.right, key ) );
+      }
+      if( node.left == null ){
+         return node.right;
+      }
+      if( node.right == null ){
+         return node.left;
+      }
+      Node min = node.right;
+      while( min.left != null ){
+         min = min.left;
+      }
+      return balance( min.key, min.value, node.left, deleteMin( node.right ) );
+   }
+
+   private static Node deleteMin( Node node ) {
+      if( node.left == null ){
+         return node.right;
+      }
+      return balance( node.key, node.value, deleteMin( node.left ), node.right );
+   }
+
+   private static int height( Node node ) {
+      return node != null ? node.height : 0;
+   }
+
+   private static Node insert( Node node, Comparable key, Object value ) {
+      if( node == null ){
+         return new Node( key, value, null, null );
+      }
+      int c = key.compareTo( node.key );
+      if( c < 0 ){
+         return balance( node.key, node.value, insert( node.left, key, value ), node.right );
+      }else if( c > 0 ){
+         return balance( node.key, node.value, node.left, insert( node.right, key, value ) );
+      }
+      return new Node( key, value, node.left, node.right );
+   }
+
+   private final Node root;
+   private final int size;
+
+   private PersistentTreeMap( Node root, int size ) {
+      this.root = root;
+      this.size = size;
+   }
+
+   public boolean containsKey( Object key ) {
+      return find( key ) != null;
+   }
+
+   public Set entrySet() {
+      return new AbstractSet(){
+         public Iterator iterator() {
+            return new EntryIterator( root );
+         }
+
+         public int size() {
+            return size;
+         }
+      };
+   }
+
+   public Object get( Object key ) {
+      Node node = find( key );
+      return node != null ? node.value : null;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Returns a map with the entries of this one and key mapped to value.
+    */
+   PersistentTreeMap with( Object key, Object value ) {
+      if( key == null ){
+         throw new NullPointerException();
+      }
+      Node node = find( key );
+      if( node != null && node.value == value ){
+         return this;
+      }
+      return new PersistentTreeMap( insert( root, (Comparable) key, value ), node != null ? size
+            : size + 1 );
+   }
+
+   /**
+    * Returns a map with the entries of this one except key.
+    */
+   PersistentTreeMap without( Object key ) {
+      if( find( key ) == null ){
+         return this;
+      }
+      return new PersistentTreeMap( delete( root, (Comparable) key ), size - 1 );
+   }
+
+   private Node find( Object key ) {
+      if( key == null ){
+         return null;
+      }
+      Comparable k = (Comparable) key;
+      Node node = root;
+      while( node != null ){
+         int c = k.compareTo( node.key );
+         if( c == 0 ){
+            return node;
+         }
+         node = c < 0 ? node.left : node.right;
+      }
+      return null;
+   }
+
+   /**
+    * Visits the nodes in key order, keeping the path to the next one.
+    */
+   private static final class EntryIterator implements Iterator {
+      private final ArrayList stack = new ArrayList();
+
+      EntryIterator( Node root ) {
+         push( root );
+      }
+
+      public boolean hasNext() {
+         return !stack.isEmpty();
+      }
+
+      public Object next() {
+         if( stack.isEmpty() ){
+            throw new NoSuchElementException();
+         }
+         Node node = (Node) stack.remove( stack.size() - 1 );
+         push( node.right );
+         return node;
+      }
+
+      public void remove() {
+         throw new UnsupportedOperationException();
+      }
+
+      private void push( Node node ) {
+         while( node != null ){
+            stack.add( node );
+            node = node.left;
+         }
+      }
+   }
+
+   private static final class Node implements Map.Entry {
+      final int height;
+      final Object key;
+      final Node left;
+      final Node right;
+      final Object value;
+
+      Node( Object key, Object value, Node left, Node right ) {
+         this.key = key;
+         this.value = value;
+         this.left = left;
+         this.right = right;
+         this.height = Math.max( height( left ), height( right ) ) + 1;
+      }
+
+      public boolean equals( Object obj ) {
+         if( !(obj instanceof Map.Entry) ){
+            return false;
+         }
+         Map.Entry other = (Map.Entry) obj;
+         return key.equals( other.getKey() )
+               && (value == null ? other.getValue() == null : value.equals( other.getValue() ));
+      }
+
+      public Object getKey() {
+         return key;
+      }
+
+      public Object getValue() {
+         return value;
+      }
+
+      public int hashCode() {
+         return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+      }
+
+      public Object setValue( Object value ) {
+         throw new UnsupportedOperationException();
+      }
+
+      public String toString() {
+         return key + "=" + value;
+      }
+   }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable List kept in a tree of arrays of up to 32 elements, leaves
+ * hold the elements and inner nodes hold the nodes below them.<br>
+ * with() and plus() return a new list that shares every array of this one
+ * except the ones on the path to the index, O(log32 n) of them.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+final class PersistentVector extends AbstractList<Object> {
+   static final PersistentVector EMPTY = new PersistentVector( new Object[0], 0, 0 );
+
+   private static final int BITS = 5;
+   private static final int MASK = (1 << BITS) - 1;
+
+   /**
+    * Returns a PersistentVector with the elements of list.
+    */
+   static PersistentVector of( List list ) {
+      if( list instanceof PersistentVector ){
+         return (PersistentVector) list;
+      }
+      PersistentVector persistent = EMPTY;
+      for( Iterator elements = list.iterator(); elements.hasNext(); ){
+         persistent = persistent.plus( elements.next() );
+      }
+      return persistent;
+   }
+
+   private static Object[] newPath( int level, Object value ) {
+      return level == 0 ? new Object[] { value } : new Object[] { newPath( level - BITS, value ) };
+   }
+
+   private static Object[] push( Object[] node, int level, int index, Object value ) {
+      int slot = (index >>> level) & MASK;
+      if( slot < node.length ){
+         Object[] copy = node.clone();
+         copy[slot] = push( (Object[]) node[slot], level - BITS, index, value );
+         return copy;
+      }
+      Object[] copy = new Object[node.length + 1];
+      System.arraycopy( node, 0, copy, 0, node.length );
+      copy[slot] = level == 0 ? value : newPath( level - BITS, value );
+      return copy;
+   }
+
+   private static Object[] set( Object[] node, int level, int index, Object value ) {
+      Object[] copy = node.clone();
+      int slot = (index >>> level) & MASK;
+      copy[slot] = level == 0 ? value : set( (Object[]) node[slot], level - BITS, index, value );
+      return copy;
+   }
+
+   private final Object[] root;
+   private final int shift;
+   private final int size;
+
+   private PersistentVector( Object[] root, int shift, int size ) {
+      this.root = root;
+      this.shift = shift;
+      this.size = size;
+   }
+
+   public Object get( int index ) {
+      if( index < 0 || index >= size ){
+         throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+      }
+      Object[] node = root;
+      for( int level = shift; level > 0; level -= BITS ){
+         node = (Object[]) node[(index >>> level) & MASK];
+      }
+      return node[index & MASK];
+   }
+
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Returns a list with the elements of this one and value appended.
+    */
+   PersistentVector plus( Object value ) {
+      if( size == 1 << (shift + BITS) ){
+         return new PersistentVector( new Object[] { root, newPath( shift, value ) }, shift
+               + BITS, size + 1 );
+      }
+      return new PersistentVector( push( root, shift, size, value ), shift, size + 1 );
+   }
+
+   /**
+    * Returns a list with the elements of this one and value at index.
+    */
+   PersistentVector with( int index, Object value ) {
+      if( index == size ){
+         return plus( value );
+      }
+      if( index < 0 || index > size ){
+         throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+      }
+      return new PersistentVector( set( root, shift, index, value ), shift, size );
+   }
+}
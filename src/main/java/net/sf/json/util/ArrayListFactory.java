@@ -0,0 +1,66 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base class for creating the List where a JSONArray keeps its elements.<br>
+ * <ul>
+ * <li>ARRAY_LIST - an ArrayList. This is the default.</li>
+ * <li>COPY_ON_WRITE - a CopyOnWriteArrayList, for arrays shared by many
+ * threads.</li>
+ * </ul>
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public abstract class ArrayListFactory {
+   /** Not safe for concurrent updates, fastest to build and change */
+   public static final ArrayListFactory ARRAY_LIST = new ArrayListFactory(){
+      public List newList() {
+         return new ArrayList();
+      }
+   };
+   /**
+    * Safe for use by many threads at once. Readers never block, every update
+    * copies the elements.
+    */
+   public static final ArrayListFactory COPY_ON_WRITE = new ArrayListFactory(){
+      public boolean isConcurrent() {
+         return true;
+      }
+
+      public List newList() {
+         return new CopyOnWriteArrayList();
+      }
+   };
+
+   /**
+    * Returns true if the lists created by this factory may be read and
+    * updated by many threads at once.
+    */
+   public boolean isConcurrent() {
+      return false;
+   }
+
+   /**
+    * Creates a new, empty List.
+    */
+   public abstract List newList();
+}
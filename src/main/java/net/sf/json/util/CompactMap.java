@@ -0,0 +1,272 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A Map for a few keys, kept with their values in two arrays and looked up
+ * by a linear scan. Adding a key beyond THRESHOLD moves every entry to a
+ * HashMap, LinkedHashMap or TreeMap, depending on order, used from then on.
+ * SORTED and INSERTION_ORDER iterate in the same order before and after the
+ * move. HASH iterates in insertion order until the move, and in the order of
+ * the HashMap after it.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+final class CompactMap extends AbstractMap {
+   static final int HASH = 0;
+   static final int INSERTION_ORDER = 1;
+   static final int SORTED = 2;
+   /** Maximum number of keys kept in the arrays */
+   static final int THRESHOLD = 8;
+
+   private Object[] keys;
+   private Map map;
+   private final int order;
+   private int size;
+   private Object[] values;
+
+   CompactMap( int order ) {
+      this.order = order;
+   }
+
+   public void clear() {
+      map = null;
+      keys = null;
+      values = null;
+      size = 0;
+   }
+
+   public boolean containsKey( Object key ) {
+      if( map != null ){
+         return map.containsKey( key );
+      }
+      return indexOf( key ) >= 0;
+   }
+
+   public Set entrySet() {
+      if( map != null ){
+         return map.entrySet();
+      }
+      return new EntrySet();
+   }
+
+   public Object get( Object key ) {
+      if( map != null ){
+         return map.get( key );
+      }
+      int index = indexOf( key );
+      return index >= 0 ? values[index] : null;
+   }
+
+   /**
+    * Returns true if the keys are iterated in natural order.
+    */
+   boolean isSorted() {
+      return order == SORTED;
+   }
+
+   public Object put( Object key, Object value ) {
+      if( map != null ){
+         return map.put( key, value );
+      }
+      if( key == null && order == SORTED ){
+         throw new NullPointerException();
+      }
+      int index = indexOf( key );
+      if( index >= 0 ){
+         Object previous = values[index];
+         values[index] = value;
+         return previous;
+      }
+      if( size == THRESHOLD ){
+         promote();
+         return map.put( key, value );
+      }
+      if( keys == null ){
+         keys = new Object[2];
+         values = new Object[2];
+      }else if( size == keys.length ){
+         Object[] grown = new Object[size * 2];
+         System.arraycopy( keys, 0, grown, 0, size );
+         keys = grown;
+         grown = new Object[size * 2];
+         System.arraycopy( values, 0, grown, 0, size );
+         values = grown;
+      }
+      index = size;
+      if( order == SORTED ){
+         while( index > 0 && ((Comparable) keys[index - 1]).compareTo( key ) > 0 ){
+            index--;
+         }
+         System.arraycopy( keys, index, keys, index + 1, size - index );
+         System.arraycopy( values, index, values, index + 1, size - index );
+      }
+      keys[index] = key;
+      values[index] = value;
+      size++;
+      return null;
+   }
+
+   public Object remove( Object key ) {
+      if( map != null ){
+         return map.remove( key );
+      }
+      int index = indexOf( key );
+      if( index < 0 ){
+         return null;
+      }
+      Object previous = values[index];
+      removeAt( index );
+      return previous;
+   }
+
+   public int size() {
+      return map != null ? map.size() : size;
+   }
+
+   private int indexOf( Object key ) {
+      for( int i = 0; i < size; i++ ){
+         Object k = keys[i];
+         if( k == key || (key != null && key.equals( k )) ){
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Moves the entries from the arrays to a Map.
+    */
+   private void promote() {
+      if( order == SORTED ){
+         map = new TreeMap();
+      }else if( order == INSERTION_ORDER ){
+         map = new LinkedHashMap();
+      }else{
+         map = new HashMap();
+      }
+      for( int i = 0; i < size; i++ ){
+         map.put( keys[i], values[i] );
+      }
+      keys = null;
+      values = null;
+      size = 0;
+   }
+
+   private void removeAt( int index ) {
+      size--;
+      System.arraycopy( keys, index + 1, keys, index, size - index );
+      System.arraycopy( values, index + 1, values, index, size - index );
+      keys[size] = null;
+      values[size] = null;
+   }
+
+   private final class Entry implements Map.Entry {
+      private final int index;
+
+      Entry( int index ) {
+         this.index = index;
+      }
+
+      public boolean equals( Object obj ) {
+         if( !(obj instanceof Map.Entry) ){
+            return false;
+         }
+         Map.Entry other = (Map.Entry) obj;
+         Object key = getKey();
+         Object value = getValue();
+         return (key == null ? other.getKey() == null : key.equals( other.getKey() ))
+               && (value == null ? other.getValue() == null : value.equals( other.getValue() ));
+      }
+
+      public Object getKey() {
+         return keys[index];
+      }
+
+      public Object getValue() {
+         return values[index];
+      }
+
+      public int hashCode() {
+         Object key = getKey();
+         Object value = getValue();
+         return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+      }
+
+      public Object setValue( Object value ) {
+         Object previous = values[index];
+         values[index] = value;
+         return previous;
+      }
+
+      public String toString() {
+         return getKey() + "=" + getValue();
+      }
+   }
+
+   private final class EntrySet extends AbstractSet {
+      public void clear() {
+         CompactMap.this.clear();
+      }
+
+      public Iterator iterator() {
+         if( map != null ){
+            return map.entrySet()
+                  .iterator();
+         }
+         return new Iterator(){
+            private int last = -1;
+            private int next;
+
+            public boolean hasNext() {
+               return next < size;
+            }
+
+            public Object next() {
+               if( next >= size ){
+                  throw new NoSuchElementException();
+               }
+               last = next++;
+               return new Entry( last );
+            }
+
+            public void remove() {
+               if( last < 0 ){
+                  throw new IllegalStateException();
+               }
+               removeAt( last );
+               next = last;
+               last = -1;
+            }
+         };
+      }
+
+      public int size() {
+         return CompactMap.this.size();
+      }
+   }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Map with its keys in natural order that many threads may read and
+ * update at once. The keys and values are kept sorted in one array that is
+ * never changed: readers search the array they find without locking, writers
+ * take the lock and replace it with an updated copy.<br>
+ * Iterators walk the array taken when they were created, they never throw
+ * ConcurrentModificationException and do not see later updates.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+final class ConcurrentTreeMap extends AbstractMap {
+   private static final Object[] EMPTY = new Object[0];
+
+   /** keys at even positions, each followed by its value */
+   private volatile Object[] table = EMPTY;
+
+   public synchronized void clear() {
+      table = EMPTY;
+   }
+
+   public boolean containsKey( Object key ) {
+      return indexOf( table, key ) >= 0;
+   }
+
+   public Set entrySet() {
+      return new EntrySet();
+   }
+
+   public Object get( Object key ) {
+      Object[] table = this.table;
+      int index = indexOf( table, key );
+      return index >= 0 ? table[index + 1] : null;
+   }
+
+   public boolean isEmpty() {
+      return table.length == 0;
+   }
+
+   public synchronized Object put( Object key, Object value ) {
+      if( key == null ){
+         throw new NullPointerException();
+      }
+      Object[] table = this.table;
+      int index = indexOf( table, key );
+      if( index >= 0 ){
+         Object previous = table[index + 1];
+         Object[] copy = table.clone();
+         copy[index + 1] = value;
+         this.table = copy;
+         return previous;
+      }
+      index = -(index + 1);
+      Object[] copy = new Object[table.length + 2];
+      System.arraycopy( table, 0, copy, 0, index );
+      System.arraycopy( table, index, copy, index + 2, table.length - index );
+      copy[index] = key;
+      copy[index + 1] = value;
+      this.table = copy;
+      return null;
+   }
+
+   public synchronized void putAll( Map map ) {
+      for( Iterator entries = map.entrySet()
+            .iterator(); entries.hasNext(); ){
+         Map.Entry entry = (Map.Entry) entries.next();
+         put( entry.getKey(), entry.getValue() );
+      }
+   }
+
+   public synchronized Object remove( Object key ) {
+      Object[] table = this.table;
+      int index = indexOf( table, key );
+      if( index < 0 ){
+         return null;
+      }
+      Object[] copy = new Object[table.length - 2];
+      System.arraycopy( table, 0, copy, 0, index );
+      System.arraycopy( table, index + 2, copy, index, copy.length - index );
+      this.table = copy;
+      return table[index + 1];
+   }
+
+   public int size() {
+      return table.length / 2;
+   }
+
+   /**
+    * Returns the position of key in table, or -(insertion position + 1) if
+    * it is not there.
+    */
+   private static int indexOf( Object[] table, Object key ) {
+      if( key == null ){
+         return -1;
+      }
+      Comparable k = (Comparable) key;
+      int low = 0;
+      int high = table.length / 2 - 1;
+      while( low <= high ){
+         int mid = (low + high) >>> 1;
+         int c = k.compareTo( table[mid * 2] );
+         if( c == 0 ){
+            return mid * 2;
+         }else if( c > 0 ){
+            low = mid + 1;
+         }else{
+            high = mid - 1;
+         }
+      }
+      return -(low * 2 + 1);
+   }
+
+   private final class Entry implements Map.Entry {
+      private final Object key;
+      private Object value;
+
+      Entry( Object key, Object value ) {
+         this.key = key;
+         this.value = value;
+      }
+
+      public boolean equals( Object obj ) {
+         if( !(obj instanceof Map.Entry) ){
+            return false;
+         }
+         Map.Entry other = (Map.Entry) obj;
+         return key.equals( other.getKey() )
+               && (value == null ? other.getValue() == null : value.equals( other.getValue() ));
+      }
+
+      public Object getKey() {
+         return key;
+      }
+
+      public Object getValue() {
+         return value;
+      }
+
+      public int hashCode() {
+         return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+      }
+
+      public Object setValue( Object value ) {
+         Object previous = this.value;
+         this.value = value;
+         put( key, value );
+         return previous;
+      }
+
+      public String toString() {
+         return key + "=" + value;
+      }
+   }
+
+   private final class EntrySet extends AbstractSet {
+      public void clear() {
+         ConcurrentTreeMap.this.clear();
+      }
+
+      public Iterator iterator() {
+         final Object[] table = ConcurrentTreeMap.this.table;
+         return new Iterator(){
+            private int last = -1;
+            private int next;
+
+            public boolean hasNext() {
+               return next < table.length;
+            }
+
+            public Object next() {
+               if( next >= table.length ){
+                  throw new NoSuchElementException();
+               }
+               last = next;
+               next += 2;
+               return new Entry( table[last], table[last + 1] );
+            }
+
+            public void remove() {
+               if( last < 0 ){
+                  throw new IllegalStateException();
+               }
+               ConcurrentTreeMap.this.remove( table[last] );
+               last = -1;
+            }
+         };
+      }
+
+      public int size() {
+         return ConcurrentTreeMap.this.size();
+      }
+   }
+}
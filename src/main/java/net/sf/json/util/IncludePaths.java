@@ -0,0 +1,285 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.sf.json.JSONException;
+
+/**
+ * A set of paths selecting the parts of a JSON text that are kept while
+ * parsing, everything else is skipped without being turned into values.<br>
+ * A path is a sequence of property names separated by '.', array elements are
+ * selected with <code>[index]</code> or <code>[*]</code> for every element,
+ * and <code>*</code> selects every property, for example
+ * <code>items[*].id</code> or <code>meta.version</code>. A path selects the
+ * whole value it ends on, and the objects and arrays leading to it, other
+ * values found on the way are skipped.
+ *
+ * @see net.sf.json.JsonConfig#setIncludePaths(IncludePaths)
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class IncludePaths {
+   private static final String ANY = "*";
+
+   /** True if the whole value is selected */
+   private boolean all;
+   private IncludePaths anyElement;
+   private IncludePaths anyProperty;
+   private Map elements;
+   private final String[] paths;
+   private Map properties;
+
+   /**
+    * Creates an IncludePaths from a list of paths.
+    *
+    * @throws JSONException if a path is malformed
+    */
+   public IncludePaths( String[] paths ) {
+      if( paths == null ){
+         throw new IllegalArgumentException( "paths is null." );
+      }
+      this.paths = new String[paths.length];
+      System.arraycopy( paths, 0, this.paths, 0, paths.length );
+      for( int i = 0; i < paths.length; i++ ){
+         add( paths[i] );
+      }
+      normalize();
+   }
+
+   private IncludePaths() {
+      this.paths = null;
+   }
+
+   /**
+    * Returns the selection for the element at index of the current array, or
+    * null if that element is not selected.
+    */
+   public IncludePaths element( int index ) {
+      if( all ){
+         return this;
+      }
+      if( elements != null ){
+         IncludePaths child = (IncludePaths) elements.get( new Integer( index ) );
+         if( child != null ){
+            return child;
+         }
+      }
+      return anyElement;
+   }
+
+   /**
+    * Returns the paths this selection was created from.
+    */
+   public String[] getPaths() {
+      String[] copy = new String[paths.length];
+      System.arraycopy( paths, 0, copy, 0, paths.length );
+      return copy;
+   }
+
+   /**
+    * Returns true if the whole current value is selected, that is if none of
+    * its properties or elements is skipped.
+    */
+   public boolean isAll() {
+      return all;
+   }
+
+   /**
+    * Returns the selection for the property name of the current object, or
+    * null if that property is not selected.
+    */
+   public IncludePaths property( String name ) {
+      if( all ){
+         return this;
+      }
+      if( properties != null ){
+         IncludePaths child = (IncludePaths) properties.get( name );
+         if( child != null ){
+            return child;
+         }
+      }
+      return anyProperty;
+   }
+
+   private void add( String path ) {
+      if( path == null || path.length() == 0 ){
+         throw new JSONException( "Empty include path" );
+      }
+      IncludePaths node = this;
+      int i = 0;
+      int length = path.length();
+      while( i < length ){
+         char c = path.charAt( i );
+         if( c == '[' ){
+            int end = path.indexOf( ']', i );
+            if( end < 0 ){
+               throw new JSONException( "Missing ']' in include path " + path );
+            }
+            String index = path.substring( i + 1, end )
+                  .trim();
+            if( ANY.equals( index ) ){
+               if( node.anyElement == null ){
+                  node.anyElement = new IncludePaths();
+               }
+               node = node.anyElement;
+            }else{
+               Integer key;
+               try{
+                  key = Integer.valueOf( index );
+               }catch( NumberFormatException nfe ){
+                  throw new JSONException( "Invalid index '" + index + "' in include path " + path );
+               }
+               if( node.elements == null ){
+                  node.elements = new HashMap();
+               }
+               IncludePaths child = (IncludePaths) node.elements.get( key );
+               if( child == null ){
+                  child = new IncludePaths();
+                  node.elements.put( key, child );
+               }
+               node = child;
+            }
+            i = end + 1;
+            if( i < length && path.charAt( i ) == '.' ){
+               i++;
+               if( i == length ){
+                  throw new JSONException( "Include path ends with '.': " + path );
+               }
+            }
+         }else{
+            int end = i;
+            while( end < length && path.charAt( end ) != '.' && path.charAt( end ) != '[' ){
+               end++;
+            }
+            if( end == i ){
+               throw new JSONException( "Empty property name in include path " + path );
+            }
+            String name = path.substring( i, end );
+            if( ANY.equals( name ) ){
+               if( node.anyProperty == null ){
+                  node.anyProperty = new IncludePaths();
+               }
+               node = node.anyProperty;
+            }else{
+               if( node.properties == null ){
+                  node.properties = new HashMap();
+               }
+               IncludePaths child = (IncludePaths) node.properties.get( name );
+               if( child == null ){
+                  child = new IncludePaths();
+                  node.properties.put( name, child );
+               }
+               node = child;
+            }
+            i = end;
+            if( i < length && path.charAt( i ) == '.' ){
+               i++;
+               if( i == length ){
+                  throw new JSONException( "Include path ends with '.': " + path );
+               }
+            }
+         }
+      }
+      node.all = true;
+   }
+
+   /**
+    * Adds everything selected by other to this selection.
+    */
+   private void merge( IncludePaths other ) {
+      all |= other.all;
+      if( other.properties != null ){
+         if( properties == null ){
+            properties = new HashMap();
+         }
+         for( Iterator entries = other.properties.entrySet()
+               .iterator(); entries.hasNext(); ){
+            Map.Entry entry = (Map.Entry) entries.next();
+            IncludePaths child = (IncludePaths) properties.get( entry.getKey() );
+            if( child == null ){
+               child = new IncludePaths();
+               properties.put( entry.getKey(), child );
+            }
+            child.merge( (IncludePaths) entry.getValue() );
+         }
+      }
+      if( other.anyProperty != null ){
+         if( anyProperty == null ){
+            anyProperty = new IncludePaths();
+         }
+         anyProperty.merge( other.anyProperty );
+      }
+      if( other.elements != null ){
+         if( elements == null ){
+            elements = new HashMap();
+         }
+         for( Iterator entries = other.elements.entrySet()
+               .iterator(); entries.hasNext(); ){
+            Map.Entry entry = (Map.Entry) entries.next();
+            IncludePaths child = (IncludePaths) elements.get( entry.getKey() );
+            if( child == null ){
+               child = new IncludePaths();
+               elements.put( entry.getKey(), child );
+            }
+            child.merge( (IncludePaths) entry.getValue() );
+         }
+      }
+      if( other.anyElement != null ){
+         if( anyElement == null ){
+            anyElement = new IncludePaths();
+         }
+         anyElement.merge( other.anyElement );
+      }
+   }
+
+   /**
+    * Merges the wildcard selections into the named and indexed ones, so that
+    * property() and element() never have to combine two selections while
+    * parsing.
+    */
+   private void normalize() {
+      if( properties != null ){
+         for( Iterator children = properties.values()
+               .iterator(); children.hasNext(); ){
+            IncludePaths child = (IncludePaths) children.next();
+            if( anyProperty != null ){
+               child.merge( anyProperty );
+            }
+            child.normalize();
+         }
+      }
+      if( anyProperty != null ){
+         anyProperty.normalize();
+      }
+      if( elements != null ){
+         for( Iterator children = elements.values()
+               .iterator(); children.hasNext(); ){
+            IncludePaths child = (IncludePaths) children.next();
+            if( anyElement != null ){
+               child.merge( anyElement );
+            }
+            child.normalize();
+         }
+      }
+      if( anyElement != null ){
+         anyElement.normalize();
+      }
+   }
+}
@@ -15,6 +15,12 @@
  */
 package net.sf.json.util;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
 import net.sf.json.JSONNull;
@@ -49,12 +55,23 @@ SOFTWARE.
 /**
  * A JSONTokener takes a source string and extracts characters and tokens from
  * it. It is used by the JSONObject and JSONArray constructors to parse JSON
- * source strings.
+ * source strings.<br>
+ * A JSONTokener may also be created from a Reader, in which case characters
+ * are pulled through a fixed-size buffer that is refilled on demand, so the
+ * whole text never has to be held in memory at once.<br>
+ * A JSONTokener may also be created from UTF-8 encoded bytes, which are
+ * decoded one character at a time as they are consumed, without decoding the
+ * whole text into a String first.
  *
  * @author JSON.org
  * @version 4
  */
 public class JSONTokener {
+   /**
+    * Default size of the buffer used when reading from a Reader.
+    */
+   public static final int DEFAULT_BUFFER_SIZE = 8192;
+
    /**
     * Get the hex value of a character (base16).
     *
@@ -75,6 +92,95 @@ public class JSONTokener {
       return -1;
    }
 
+   /** Returned by scanNumber() if the text is not a plain JSON number */
+   static final int NUMBER_NONE = 0;
+   /** An integer of at most 18 digits, it always fits in a long */
+   static final int NUMBER_INTEGER = 1;
+   /** An integer of more than 18 digits */
+   static final int NUMBER_BIG_INTEGER = 2;
+   /** A number with a fraction or an exponent */
+   static final int NUMBER_DECIMAL = 3;
+
+   /**
+    * Classifies a number written in the plain JSON syntax, that is
+    * <code>-?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?</code>, in a single
+    * pass.
+    *
+    * @return NUMBER_INTEGER, NUMBER_BIG_INTEGER or NUMBER_DECIMAL, or
+    *         NUMBER_NONE if s is not in the plain JSON syntax.
+    */
+   static int scanNumber( String s ) {
+      int length = s.length();
+      int i = 0;
+      if( i < length && s.charAt( i ) == '-' ){
+         i++;
+      }
+      int start = i;
+      while( i < length && s.charAt( i ) >= '0' && s.charAt( i ) <= '9' ){
+         i++;
+      }
+      int digits = i - start;
+      if( digits == 0 || (digits > 1 && s.charAt( start ) == '0') ){
+         return NUMBER_NONE;
+      }
+      if( i == length ){
+         return digits > 18 ? NUMBER_BIG_INTEGER : NUMBER_INTEGER;
+      }
+      if( s.charAt( i ) == '.' ){
+         start = ++i;
+         while( i < length && s.charAt( i ) >= '0' && s.charAt( i ) <= '9' ){
+            i++;
+         }
+         if( i == start ){
+            return NUMBER_NONE;
+         }
+      }
+      if( i < length && (s.charAt( i ) == 'e' || s.charAt( i ) == 'E') ){
+         i++;
+         if( i < length && (s.charAt( i ) == '+' || s.charAt( i ) == '-') ){
+            i++;
+         }
+         start = i;
+         while( i < length && s.charAt( i ) >= '0' && s.charAt( i ) <= '9' ){
+            i++;
+         }
+         if( i == start ){
+            return NUMBER_NONE;
+         }
+      }
+      return i == length ? NUMBER_DECIMAL : NUMBER_NONE;
+   }
+
+   /**
+    * Converts a number classified by scanNumber() to an Integer, Long or
+    * Double, as the narrowest of those types that holds it.
+    */
+   static Number toNumber( String s, int kind ) {
+      switch( kind ){
+         case NUMBER_INTEGER:
+            long l = 0;
+            int i = s.charAt( 0 ) == '-' ? 1 : 0;
+            for( int length = s.length(); i < length; i++ ){
+               l = l * 10 + (s.charAt( i ) - '0');
+            }
+            if( s.charAt( 0 ) == '-' ){
+               l = -l;
+            }
+            if( l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ){
+               return Integer.valueOf( (int) l );
+            }
+            return Long.valueOf( l );
+         case NUMBER_BIG_INTEGER:
+            BigInteger bi = new BigInteger( s );
+            if( bi.bitLength() < 64 ){
+               return Long.valueOf( bi.longValue() );
+            }
+            return Double.valueOf( s );
+         default:
+            return Double.valueOf( s );
+      }
+   }
+
    /**
     * The index of the next character.
     */
@@ -85,6 +191,78 @@ public class JSONTokener {
     */
    private String mySource;
 
+   /**
+    * The source reader being tokenized, null if tokenizing a string.
+    */
+   private Reader myReader;
+
+   /**
+    * Reused by nextString() to collect characters.
+    */
+   private StringBuffer myStringBuffer;
+
+   /**
+    * The UTF-8 encoded source being tokenized, null if not tokenizing bytes.
+    * When tokenizing bytes myIndex is an absolute offset in this buffer.
+    */
+   private ByteBuffer myBytes;
+
+   /**
+    * The offset of the first byte of the source in myBytes.
+    */
+   private int myBytesStart;
+
+   /**
+    * The offset one past the last byte of the source in myBytes.
+    */
+   private int myBytesEnd;
+
+   /**
+    * The offset following the character last decoded by decode().
+    */
+   private int myDecodedEnd;
+
+   /**
+    * Holds the characters read so far that may still be needed.
+    */
+   private char[] myBuffer;
+
+   /**
+    * The index of the character stored at myBuffer[0].
+    */
+   private int myBufferStart;
+
+   /**
+    * The index one past the last character stored in myBuffer.
+    */
+   private int myBufferEnd;
+
+   /**
+    * An index that must be kept in the buffer, or -1 if there is none.
+    */
+   private int myMark = -1;
+
+   /**
+    * Whether the reader has been exhausted.
+    */
+   private boolean myEof;
+
+   /**
+    * The selection of the value being parsed, null if everything is kept.
+    */
+   private IncludePaths myIncludePaths;
+
+   /**
+    * Whether only the RFC 8259 grammar is accepted.
+    */
+   private boolean myStrict;
+
+   /**
+    * The index up to which the source string is known to follow RFC 8259,
+    * set when tokenizing the text of a LazyText.
+    */
+   private int myChecked;
+
    /**
     * Construct a JSONTokener from a string.
     *
@@ -95,30 +273,155 @@ public class JSONTokener {
       this.mySource = s;
    }
 
+   /**
+    * Construct a JSONTokener from a reader, using a buffer of the specified
+    * initial size (see DEFAULT_BUFFER_SIZE).<br>
+    * The reader is not closed by the tokener.
+    *
+    * @param reader A source reader.
+    * @param bufferSize The initial size of the buffer.
+    */
+   public JSONTokener( Reader reader, int bufferSize ) {
+      if( reader == null ){
+         throw new IllegalArgumentException( "reader is null." );
+      }
+      if( bufferSize < 1 ){
+         throw new IllegalArgumentException( "bufferSize must be greater than zero." );
+      }
+      this.myIndex = 0;
+      this.myReader = reader;
+      this.myBuffer = new char[bufferSize];
+   }
+
+   /**
+    * Construct a JSONTokener from UTF-8 encoded bytes. The bytes are not
+    * copied, they must not be modified while the tokener is in use.<br>
+    * Malformed byte sequences make the tokener throw a JSONException.
+    *
+    * @param bytes A source array.
+    * @param offset The offset of the first byte of the source.
+    * @param length The number of bytes of the source.
+    */
+   public JSONTokener( byte[] bytes, int offset, int length ) {
+      if( bytes == null ){
+         throw new IllegalArgumentException( "bytes is null." );
+      }
+      if( offset < 0 || length < 0 || offset + length > bytes.length ){
+         throw new IllegalArgumentException( "offset and length do not fit bytes." );
+      }
+      this.myBytes = ByteBuffer.wrap( bytes );
+      this.myBytesStart = offset;
+      this.myBytesEnd = offset + length;
+      this.myIndex = offset;
+   }
+
+   /**
+    * Construct a JSONTokener from UTF-8 encoded bytes held by a buffer, which
+    * may be a direct or memory mapped buffer. The bytes are not copied and the
+    * position and limit of the buffer are ignored and left untouched.<br>
+    * Malformed byte sequences make the tokener throw a JSONException.
+    *
+    * @param buffer A source buffer.
+    * @param offset The absolute offset of the first byte of the source.
+    * @param length The number of bytes of the source.
+    */
+   public JSONTokener( ByteBuffer buffer, int offset, int length ) {
+      if( buffer == null ){
+         throw new IllegalArgumentException( "buffer is null." );
+      }
+      if( offset < 0 || length < 0 || offset + length > buffer.capacity() ){
+         throw new IllegalArgumentException( "offset and length do not fit buffer." );
+      }
+      this.myBytes = buffer;
+      this.myBytesStart = offset;
+      this.myBytesEnd = offset + length;
+      this.myIndex = offset;
+   }
+
    /**
     * Back up one character. This provides a sort of lookahead capability, so
     * that you can test for a digit or letter before attempting to parse the
     * next number or identifier.
     */
    public void back() {
+      if( this.myBytes != null ){
+         backBytes();
+         return;
+      }
       if( this.myIndex > 0 ){
          this.myIndex -= 1;
       }
    }
 
+   /**
+    * Returns the selection that applies to the value being parsed, null if
+    * the parser has not set one.
+    */
+   public IncludePaths getIncludePaths() {
+      return this.myIncludePaths;
+   }
+
+   /**
+    * Returns true if the tokener only accepts the grammar of RFC 8259.
+    *
+    * @see #setStrict(boolean)
+    */
+   public boolean isStrict() {
+      return this.myStrict;
+   }
+
+   /**
+    * Returns the length of the source. When reading from a Reader this is the
+    * number of characters read so far, when reading bytes this is the number
+    * of bytes.
+    */
    public int length() {
+      if( this.myBytes != null ){
+         return this.myBytesEnd - this.myBytesStart;
+      }
+      if( this.myReader != null ){
+         return this.myBufferEnd;
+      }
       if( this.mySource == null ){
          return 0;
       }
       return this.mySource.length();
    }
 
+   /**
+    * Tests the rest of the source against a regular expression.<br>
+    * When reading from a Reader the rest of the source has to be buffered.
+    */
    public boolean matches( String pattern ) {
-      String str = this.mySource.substring( this.myIndex );
+      String str;
+      if( this.myReader != null ){
+         fill( Integer.MAX_VALUE );
+         str = new String( this.myBuffer, this.myIndex - this.myBufferStart, this.myBufferEnd
+               - this.myIndex );
+      }else if( this.myBytes != null ){
+         str = decodeBytes( this.myIndex );
+      }else{
+         str = this.mySource.substring( this.myIndex );
+      }
       return RegexpUtils.getMatcher( pattern )
             .matches( str );
    }
 
+   /**
+    * Tests if the source continues with the specified prefix at the current
+    * position, without consuming any character.<br>
+    * Unlike matches() this only looks at as many characters as the prefix has.
+    *
+    * @param prefix A string to look for.
+    * @return true if the next characters are equal to prefix.
+    */
+   public boolean startsWith( String prefix ) {
+      if( this.myReader == null && this.mySource == null && this.myBytes == null ){
+         return false;
+      }
+      return regionMatches( this.myIndex, prefix );
+   }
+
    /**
     * Determine if the source string still contains characters that next() can
     * consume.
@@ -126,6 +429,12 @@ public class JSONTokener {
     * @return true if not yet at the end of the source.
     */
    public boolean more() {
+      if( this.myBytes != null ){
+         return this.myIndex < this.myBytesEnd;
+      }
+      if( this.myReader != null ){
+         return fill( this.myIndex );
+      }
       return this.myIndex < this.mySource.length();
    }
 
@@ -135,8 +444,16 @@ public class JSONTokener {
     * @return The next character, or 0 if past the end of the source string.
     */
    public char next() {
+      if( this.myBytes != null ){
+         if( this.myIndex < this.myBytesEnd ){
+            char c = decode( this.myIndex );
+            this.myIndex = this.myDecodedEnd;
+            return c;
+         }
+         return 0;
+      }
       if( more() ){
-         char c = this.mySource.charAt( this.myIndex );
+         char c = charAt( this.myIndex );
          this.myIndex += 1;
          return c;
       }
@@ -170,6 +487,29 @@ public class JSONTokener {
    public String next( int n ) {
       int i = this.myIndex;
       int j = i + n;
+      if( this.myBytes != null ){
+         char[] chars = new char[n];
+         for( int k = 0; k < n; k++ ){
+            if( this.myIndex >= this.myBytesEnd ){
+               this.myIndex = i;
+               throw syntaxError( "Substring bounds error" );
+            }
+            chars[k] = next();
+         }
+         // like a string source, a character must follow
+         if( this.myIndex >= this.myBytesEnd ){
+            this.myIndex = i;
+            throw syntaxError( "Substring bounds error" );
+         }
+         return new String( chars );
+      }
+      if( this.myReader != null ){
+         if( !fill( j ) ){
+            throw syntaxError( "Substring bounds error" );
+         }
+         this.myIndex += n;
+         return new String( this.myBuffer, i - this.myBufferStart, n );
+      }
       if( j >= this.mySource.length() ){
          throw syntaxError( "Substring bounds error" );
       }
@@ -185,6 +525,9 @@ public class JSONTokener {
     * @return A character, or 0 if there are no more characters.
     */
    public char nextClean() {
+      if( this.myStrict ){
+         return nextCleanStrict();
+      }
       for( ;; ){
          char c = next();
          if( c == '/' ){
@@ -222,6 +565,36 @@ public class JSONTokener {
       }
    }
 
+   /**
+    * Return the next object key. Quoted keys are read as with
+    * nextString(char), other keys as with nextValue(JsonConfig).<br>
+    * If the JsonConfig has a KeyCache the key is canonicalized through it,
+    * and a quoted key that is already cached is returned without creating a
+    * new String.
+    *
+    * @param jsonConfig the configuration used to read the key
+    * @return A String.
+    * @throws JSONException If syntax error.
+    */
+   public String nextKey( JsonConfig jsonConfig ) {
+      KeyCache keyCache = jsonConfig.getKeyCache();
+      char c = nextClean();
+      if( this.myStrict ){
+         if( c != '"' ){
+            throw syntaxError( "Expected a string key" );
+         }
+         return nextStringStrict( keyCache );
+      }
+      if( c == '"' || c == '\'' ){
+         return nextString( c, keyCache );
+      }
+      if( c != 0 ){
+         back();
+      }
+      String key = nextValue( jsonConfig ).toString();
+      return keyCache != null ? keyCache.intern( key ) : key;
+   }
+
    /**
     * Return the characters up to the next close quote character. Backslash
     * processing is done. The formal JSON format does not allow strings in
@@ -233,50 +606,7 @@ public class JSONTokener {
     * @throws JSONException Unterminated string.
     */
    public String nextString( char quote ) {
-      char c;
-      StringBuffer sb = new StringBuffer();
-      for( ;; ){
-         c = next();
-         switch( c ){
-            case 0:
-            case '\n':
-            case '\r':
-               throw syntaxError( "Unterminated string" );
-            case '\\':
-               c = next();
-               switch( c ){
-                  case 'b':
-                     sb.append( '\b' );
-                     break;
-                  case 't':
-                     sb.append( '\t' );
-                     break;
-                  case 'n':
-                     sb.append( '\n' );
-                     break;
-                  case 'f':
-                     sb.append( '\f' );
-                     break;
-                  case 'r':
-                     sb.append( '\r' );
-                     break;
-                  case 'u':
-                     sb.append( (char) Integer.parseInt( next( 4 ), 16 ) );
-                     break;
-                  case 'x':
-                     sb.append( (char) Integer.parseInt( next( 2 ), 16 ) );
-                     break;
-                  default:
-                     sb.append( c );
-               }
-               break;
-            default:
-               if( c == quote ){
-                  return sb.toString();
-               }
-               sb.append( c );
-         }
-      }
+      return nextString( quote, null );
    }
 
    /**
@@ -343,6 +673,9 @@ public class JSONTokener {
     * @return An object.
     */
    public Object nextValue( JsonConfig jsonConfig ) {
+      if( this.myStrict ){
+         return nextValueStrict( jsonConfig );
+      }
       char c = nextClean();
       String s;
 
@@ -373,7 +706,9 @@ public class JSONTokener {
          sb.append( c );
          c = next();
       }
-      back();
+      if( c != 0 ){
+         back();
+      }
 
       /*
        * If it is true, false, or null, return the proper value.
@@ -395,14 +730,22 @@ public class JSONTokener {
       }
 
       /*
-       * If it might be a number, try converting it. We support the 0- and 0x-
-       * conventions. If a number cannot be produced, then the value will just
-       * be a string. Note that the 0-, 0x-, plus, and implied string
+       * If it might be a number, try converting it. Numbers in the plain JSON
+       * syntax are classified in a single pass. We also support the 0- and
+       * 0x- conventions. If a number cannot be produced, then the value will
+       * just be a string. Note that the 0-, 0x-, plus, and implied string
        * conventions are non-standard. A JSON parser is free to accept non-JSON
        * forms as long as it accepts all correct JSON forms.
        */
 
       if( (b >= '0' && b <= '9') || b == '.' || b == '-' || b == '+' ){
+         int kind = scanNumber( s );
+         if( kind != NUMBER_NONE ){
+            if( jsonConfig.isLazyNumbers() ){
+               return new LazyNumber( s, kind );
+            }
+            return toNumber( s, kind );
+         }
          if( b == '0' ){
             if( s.length() > 2 && (s.charAt( 1 ) == 'x' || s.charAt( 1 ) == 'X') ){
                try{
@@ -454,17 +797,54 @@ public class JSONTokener {
     * @return The next character, or 0 if past the end of the source string.
     */
    public char peek() {
+      if( this.myBytes != null ){
+         return this.myIndex < this.myBytesEnd ? decode( this.myIndex ) : 0;
+      }
       if( more() ){
-         char c = this.mySource.charAt( this.myIndex );
+         char c = charAt( this.myIndex );
          return c;
       }
       return 0;
    }
 
+   /**
+    * Moves back to the start of the source.
+    *
+    * @throws JSONException if reading from a Reader and the start of the
+    *         source is no longer buffered.
+    */
    public void reset() {
+      if( this.myBytes != null ){
+         this.myIndex = this.myBytesStart;
+         return;
+      }
+      if( this.myBufferStart > 0 ){
+         throw new JSONException( "Can't reset, the start of the reader has been discarded" );
+      }
       this.myIndex = 0;
    }
 
+   /**
+    * Sets the selection that applies to the next value, used by JSONObject and
+    * JSONArray to carry the include paths of JsonConfig down while parsing.
+    */
+   public void setIncludePaths( IncludePaths includePaths ) {
+      this.myIncludePaths = includePaths;
+   }
+
+   /**
+    * Sets if the tokener only accepts the grammar of RFC 8259. When strict,
+    * nextClean() skips only spaces, tabs and line breaks, nextKey() only reads
+    * double quoted strings, and nextValue() only reads double quoted strings
+    * with the standard escapes, numbers in the plain JSON syntax, objects,
+    * arrays and the literals true, false and null. Anything else is a syntax
+    * error.<br>
+    * Used by JSONObject and JSONArray when JsonConfig.isStrict() is true.
+    */
+   public void setStrict( boolean strict ) {
+      this.myStrict = strict;
+   }
+
    /**
     * Skip characters until past the requested string. If it is not found, we
     * are left at the end of the source.
@@ -472,6 +852,28 @@ public class JSONTokener {
     * @param to A string to skip past.
     */
    public void skipPast( String to ) {
+      if( this.myBytes != null ){
+         while( more() ){
+            if( regionMatches( this.myIndex, to ) ){
+               for( int i = 0; i < to.length(); i++ ){
+                  next();
+               }
+               return;
+            }
+            next();
+         }
+         return;
+      }
+      if( this.myReader != null ){
+         while( more() ){
+            if( regionMatches( this.myIndex, to ) ){
+               this.myIndex += to.length();
+               return;
+            }
+            this.myIndex += 1;
+         }
+         return;
+      }
       this.myIndex = this.mySource.indexOf( to, this.myIndex );
       if( this.myIndex < 0 ){
          this.myIndex = this.mySource.length();
@@ -491,17 +893,60 @@ public class JSONTokener {
    public char skipTo( char to ) {
       char c;
       int index = this.myIndex;
-      do{
-         c = next();
-         if( c == 0 ){
-            this.myIndex = index;
-            return c;
-         }
-      }while( c != to );
+      this.myMark = index;
+      try{
+         do{
+            c = next();
+            if( c == 0 ){
+               this.myIndex = index;
+               return c;
+            }
+         }while( c != to );
+      }finally{
+         this.myMark = -1;
+      }
       back();
       return c;
    }
 
+   /**
+    * Skips the next value without building it. Strings are scanned for their
+    * closing quote and objects and arrays for their closing bracket, their
+    * contents are not validated.
+    *
+    * @throws JSONException If the value is missing or not terminated.
+    */
+   public void skipValue() {
+      char c = nextClean();
+      switch( c ){
+         case 0:
+            throw syntaxError( "Missing value." );
+         case '"':
+         case '\'':
+            skipString( c );
+            return;
+         case '{':
+         case '[':
+            skipNested();
+            return;
+         default:
+            // empty
+      }
+      if( c < ' ' || ",:]}/\\\"[;=#".indexOf( c ) >= 0 ){
+         throw syntaxError( "Missing value." );
+      }
+      back();
+      boolean function = startsWith( "function" );
+      do{
+         c = next();
+      }while( c >= ' ' && ",:]}/\\\"[{;=#".indexOf( c ) < 0 );
+      if( function && c == '{' ){
+         skipNested();
+      }else if( c != 0 ){
+         back();
+      }
+   }
+
    /**
     * Make a JSONException to signal a syntax error.
     *
@@ -518,6 +963,572 @@ public class JSONTokener {
     * @return " at character [this.myIndex] of [this.mySource]"
     */
    public String toString() {
+      if( this.myBytes != null ){
+         return " at byte " + (this.myIndex - this.myBytesStart) + " of "
+               + decodeBytes( this.myBytesStart );
+      }
+      if( this.myReader != null ){
+         return " at character " + this.myIndex + " of "
+               + new String( this.myBuffer, 0, this.myBufferEnd - this.myBufferStart );
+      }
       return " at character " + this.myIndex + " of " + this.mySource;
    }
+
+   /**
+    * Returns the index up to which the source string is known to follow
+    * RFC 8259.
+    */
+   int getChecked() {
+      return this.myChecked;
+   }
+
+   /**
+    * Returns the index of the next character.
+    */
+   int getIndex() {
+      return this.myIndex;
+   }
+
+   /**
+    * Returns the source string, or null if not tokenizing a string.
+    */
+   String getSource() {
+      if( this.myReader != null || this.myBytes != null ){
+         return null;
+      }
+      return this.mySource;
+   }
+
+   /**
+    * Keeps the characters from the current position on buffered until
+    * unmark() or rewind() is called, so that rewind() can go back to it.
+    */
+   void mark() {
+      this.myMark = this.myIndex;
+   }
+
+   /**
+    * Moves back to the position saved by mark() and clears the mark.
+    */
+   void rewind() {
+      if( this.myMark >= 0 ){
+         this.myIndex = this.myMark;
+         this.myMark = -1;
+      }
+   }
+
+   /**
+    * Sets the index up to which the source string is known to follow
+    * RFC 8259.
+    */
+   void setChecked( int checked ) {
+      this.myChecked = checked;
+   }
+
+   /**
+    * Moves to an index of the source string, used by StructuralIndex to parse
+    * a value in place.
+    */
+   void seek( int index ) {
+      this.myIndex = index;
+   }
+
+   /**
+    * Clears the position saved by mark().
+    */
+   void unmark() {
+      this.myMark = -1;
+   }
+
+   /**
+    * Returns the next character that is not RFC 8259 whitespace, or 0 at the
+    * end of the source.
+    */
+   private char nextCleanStrict() {
+      if( this.myReader == null && this.myBytes == null ){
+         String source = this.mySource;
+         int length = source.length();
+         for( int i = this.myIndex; i < length; i++ ){
+            char c = source.charAt( i );
+            if( c != ' ' && c != '\n' && c != '\r' && c != '\t' ){
+               this.myIndex = i + 1;
+               return c;
+            }
+         }
+         this.myIndex = length;
+         return 0;
+      }
+      for( ;; ){
+         char c = next();
+         if( c != ' ' && c != '\n' && c != '\r' && c != '\t' ){
+            return c;
+         }
+      }
+   }
+
+   /**
+    * Reads a double quoted string whose opening quote was just read, accepting
+    * only the escapes of RFC 8259, and canonicalizes it through keyCache if it
+    * is not null.
+    */
+   private String nextStringStrict( KeyCache keyCache ) {
+      if( this.myReader == null && this.myBytes == null ){
+         // strings without escapes are taken from the source as they are
+         String source = this.mySource;
+         int length = source.length();
+         for( int i = this.myIndex; i < length; i++ ){
+            char c = source.charAt( i );
+            if( c == '"' ){
+               String str = source.substring( this.myIndex, i );
+               this.myIndex = i + 1;
+               return keyCache != null ? keyCache.intern( str ) : str;
+            }
+            if( c == '\\' || c < ' ' ){
+               break;
+            }
+         }
+      }
+      StringBuffer sb = this.myStringBuffer;
+      if( sb == null ){
+         sb = this.myStringBuffer = new StringBuffer();
+      }else{
+         sb.setLength( 0 );
+      }
+      for( ;; ){
+         char c = next();
+         switch( c ){
+            case 0:
+               throw syntaxError( "Unterminated string" );
+            case '"':
+               return keyCache != null ? keyCache.intern( sb ) : sb.toString();
+            case '\\':
+               c = next();
+               switch( c ){
+                  case '"':
+                  case '\\':
+                  case '/':
+                     sb.append( c );
+                     break;
+                  case 'b':
+                     sb.append( '\b' );
+                     break;
+                  case 't':
+                     sb.append( '\t' );
+                     break;
+                  case 'n':
+                     sb.append( '\n' );
+                     break;
+                  case 'f':
+                     sb.append( '\f' );
+                     break;
+                  case 'r':
+                     sb.append( '\r' );
+                     break;
+                  case 'u':
+                     int code = 0;
+                     for( int i = 0; i < 4; i++ ){
+                        int digit = dehexchar( next() );
+                        if( digit < 0 ){
+                           throw syntaxError( "Illegal unicode escape" );
+                        }
+                        code = (code << 4) + digit;
+                     }
+                     sb.append( (char) code );
+                     break;
+                  default:
+                     throw syntaxError( "Illegal escape" );
+               }
+               break;
+            default:
+               if( c < ' ' ){
+                  throw syntaxError( "Unescaped control character in string" );
+               }
+               sb.append( c );
+         }
+      }
+   }
+
+   /**
+    * Reads the next value accepting only the grammar of RFC 8259, see
+    * setStrict(boolean).
+    */
+   private Object nextValueStrict( JsonConfig jsonConfig ) {
+      char c = nextCleanStrict();
+      switch( c ){
+         case '"':
+            return nextStringStrict( null );
+         case '{':
+            back();
+            return JSONObject.fromObject( this, jsonConfig );
+         case '[':
+            back();
+            return JSONArray.fromObject( this, jsonConfig );
+         case 't':
+            nextLiteral( "rue" );
+            return Boolean.TRUE;
+         case 'f':
+            nextLiteral( "alse" );
+            return Boolean.FALSE;
+         case 'n':
+            nextLiteral( "ull" );
+            return JSONNull.getInstance();
+         case 0:
+            throw syntaxError( "Missing value." );
+         default:
+            // empty
+      }
+      if( c != '-' && (c < '0' || c > '9') ){
+         throw syntaxError( "Unexpected character '" + c + "'" );
+      }
+      String s;
+      if( this.myReader == null && this.myBytes == null ){
+         String source = this.mySource;
+         int length = source.length();
+         int start = this.myIndex - 1;
+         int i = this.myIndex;
+         while( i < length && isNumberChar( source.charAt( i ) ) ){
+            i++;
+         }
+         s = source.substring( start, i );
+         this.myIndex = i;
+      }else{
+         StringBuffer sb = new StringBuffer();
+         while( isNumberChar( c ) ){
+            sb.append( c );
+            c = next();
+         }
+         if( c != 0 ){
+            back();
+         }
+         s = sb.toString();
+      }
+      int kind = scanNumber( s );
+      if( kind == NUMBER_NONE ){
+         throw syntaxError( "Invalid number '" + s + "'" );
+      }
+      if( jsonConfig.isLazyNumbers() ){
+         return new LazyNumber( s, kind );
+      }
+      return toNumber( s, kind );
+   }
+
+   /**
+    * Reads the rest of a literal whose first character was just read.
+    */
+   private void nextLiteral( String rest ) {
+      for( int i = 0; i < rest.length(); i++ ){
+         if( next() != rest.charAt( i ) ){
+            throw syntaxError( "Unexpected literal" );
+         }
+      }
+   }
+
+   private static boolean isNumberChar( char c ) {
+      return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+   }
+
+   /**
+    * Reads a string up to the closing quote, see nextString(char), and
+    * canonicalizes it through keyCache if it is not null.
+    */
+   private String nextString( char quote, KeyCache keyCache ) {
+      char c;
+      StringBuffer sb = this.myStringBuffer;
+      if( sb == null ){
+         sb = this.myStringBuffer = new StringBuffer();
+      }else{
+         sb.setLength( 0 );
+      }
+      for( ;; ){
+         c = next();
+         switch( c ){
+            case 0:
+            case '\n':
+            case '\r':
+               throw syntaxError( "Unterminated string" );
+            case '\\':
+               c = next();
+               switch( c ){
+                  case 'b':
+                     sb.append( '\b' );
+                     break;
+                  case 't':
+                     sb.append( '\t' );
+                     break;
+                  case 'n':
+                     sb.append( '\n' );
+                     break;
+                  case 'f':
+                     sb.append( '\f' );
+                     break;
+                  case 'r':
+                     sb.append( '\r' );
+                     break;
+                  case 'u':
+                     sb.append( unhex( next( 4 ) ) );
+                     break;
+                  case 'x':
+                     sb.append( unhex( next( 2 ) ) );
+                     break;
+                  default:
+                     sb.append( c );
+               }
+               break;
+            default:
+               if( c == quote ){
+                  return keyCache != null ? keyCache.intern( sb ) : sb.toString();
+               }
+               sb.append( c );
+         }
+      }
+   }
+
+   /**
+    * Skips up to the bracket closing the one just read, and over strings and
+    * comments on the way.
+    */
+   private void skipNested() {
+      int depth = 1;
+      while( depth > 0 ){
+         char c = nextClean();
+         switch( c ){
+            case 0:
+               throw syntaxError( "Unbalanced '{' or '['" );
+            case '"':
+            case '\'':
+               skipString( c );
+               break;
+            case '{':
+            case '[':
+               depth++;
+               break;
+            case '}':
+            case ']':
+               depth--;
+               break;
+            default:
+               // empty
+         }
+      }
+   }
+
+   /**
+    * Skips up to the closing quote of a string, see nextString(char).
+    */
+   private void skipString( char quote ) {
+      for( ;; ){
+         char c = next();
+         switch( c ){
+            case 0:
+            case '\n':
+            case '\r':
+               throw syntaxError( "Unterminated string" );
+            case '\\':
+               next();
+               break;
+            default:
+               if( c == quote ){
+                  return;
+               }
+         }
+      }
+   }
+
+   /**
+    * Returns the character whose code is written by the hexadecimal digits of
+    * an escape sequence.
+    *
+    * @throws JSONException if a digit is not hexadecimal.
+    */
+   private char unhex( String digits ) {
+      int code = 0;
+      for( int i = 0; i < digits.length(); i++ ){
+         int digit = dehexchar( digits.charAt( i ) );
+         if( digit < 0 ){
+            throw syntaxError( "Illegal escape" );
+         }
+         code = (code << 4) + digit;
+      }
+      return (char) code;
+   }
+
+   /**
+    * Moves myIndex back over the last decoded character. The low surrogate of
+    * a four byte sequence lives at the offset following its first byte.
+    */
+   private void backBytes() {
+      int index = this.myIndex;
+      if( index <= this.myBytesStart ){
+         return;
+      }
+      int i = index - 1;
+      while( i > this.myBytesStart && (this.myBytes.get( i ) & 0xC0) == 0x80 ){
+         i--;
+      }
+      if( (this.myBytes.get( i ) & 0xF8) == 0xF0 && index - i == 4 ){
+         this.myIndex = i + 1;
+      }else{
+         this.myIndex = i;
+      }
+   }
+
+   /**
+    * Decodes the UTF-8 character at the specified byte offset and stores the
+    * offset of the following character in myDecodedEnd. Characters outside
+    * the BMP are returned as two chars, the first one for the offset of their
+    * leading byte and the second one for the offset that follows it.
+    */
+   private char decode( int index ) {
+      ByteBuffer bytes = this.myBytes;
+      int b = bytes.get( index );
+      if( b >= 0 ){
+         this.myDecodedEnd = index + 1;
+         return (char) b;
+      }
+      int cp;
+      switch( (b >> 4) & 0x0F ){
+         case 0x0C:
+         case 0x0D:
+            cp = ((b & 0x1F) << 6) | continuation( index + 1 );
+            if( cp < 0x80 ){
+               throw syntaxError( "Malformed UTF-8" );
+            }
+            this.myDecodedEnd = index + 2;
+            return (char) cp;
+         case 0x0E:
+            cp = ((b & 0x0F) << 12) | (continuation( index + 1 ) << 6) | continuation( index + 2 );
+            if( cp < 0x800 || (cp >= 0xD800 && cp <= 0xDFFF) ){
+               throw syntaxError( "Malformed UTF-8" );
+            }
+            this.myDecodedEnd = index + 3;
+            return (char) cp;
+         case 0x0F:
+            cp = decode4( index ) - 0x10000;
+            this.myDecodedEnd = index + 1;
+            return (char) (0xD800 + (cp >> 10));
+         default:
+            // a continuation byte, only valid as the low surrogate position
+            if( index - 1 < this.myBytesStart || (bytes.get( index - 1 ) & 0xF8) != 0xF0 ){
+               throw syntaxError( "Malformed UTF-8" );
+            }
+            cp = decode4( index - 1 ) - 0x10000;
+            this.myDecodedEnd = index + 3;
+            return (char) (0xDC00 + (cp & 0x3FF));
+      }
+   }
+
+   /**
+    * Decodes the bytes from the specified offset to the end of the source,
+    * replacing malformed sequences.
+    */
+   private String decodeBytes( int index ) {
+      ByteBuffer bytes = this.myBytes.duplicate();
+      bytes.limit( this.myBytesEnd );
+      bytes.position( index );
+      return Charset.forName( "UTF-8" )
+            .decode( bytes )
+            .toString();
+   }
+
+   private int decode4( int index ) {
+      int b = this.myBytes.get( index );
+      if( (b & 0xF8) != 0xF0 ){
+         throw syntaxError( "Malformed UTF-8" );
+      }
+      int cp = ((b & 0x07) << 18) | (continuation( index + 1 ) << 12)
+            | (continuation( index + 2 ) << 6) | continuation( index + 3 );
+      if( cp < 0x10000 || cp > 0x10FFFF ){
+         throw syntaxError( "Malformed UTF-8" );
+      }
+      return cp;
+   }
+
+   private int continuation( int index ) {
+      if( index >= this.myBytesEnd || (this.myBytes.get( index ) & 0xC0) != 0x80 ){
+         throw syntaxError( "Malformed UTF-8" );
+      }
+      return this.myBytes.get( index ) & 0x3F;
+   }
+
+   /**
+    * Returns the character at the specified index, which must have been made
+    * available by a previous call to more() or fill().
+    */
+   private char charAt( int index ) {
+      if( this.myReader != null ){
+         return this.myBuffer[index - this.myBufferStart];
+      }
+      return this.mySource.charAt( index );
+   }
+
+   /**
+    * Reads from the reader until the character at the specified index is
+    * buffered. Characters before the previous one and before the mark are
+    * discarded when the buffer is full, otherwise the buffer is grown.
+    *
+    * @return true if the index is available, false if the reader was
+    *         exhausted first.
+    */
+   private boolean fill( int index ) {
+      while( index >= this.myBufferEnd ){
+         if( this.myEof ){
+            return false;
+         }
+         int used = this.myBufferEnd - this.myBufferStart;
+         if( used == this.myBuffer.length ){
+            int keep = this.myIndex - 1;
+            if( this.myMark >= 0 && this.myMark < keep ){
+               keep = this.myMark;
+            }
+            int offset = keep - this.myBufferStart;
+            if( offset > 0 ){
+               System.arraycopy( this.myBuffer, offset, this.myBuffer, 0, used - offset );
+               this.myBufferStart = keep;
+               used -= offset;
+            }else{
+               char[] buffer = new char[this.myBuffer.length * 2];
+               System.arraycopy( this.myBuffer, 0, buffer, 0, used );
+               this.myBuffer = buffer;
+            }
+         }
+         try{
+            int n = this.myReader.read( this.myBuffer, used, this.myBuffer.length - used );
+            if( n < 0 ){
+               this.myEof = true;
+            }else{
+               this.myBufferEnd += n;
+            }
+         }catch( IOException ioe ){
+            throw new JSONException( ioe );
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Tests if the source contains the specified string at the specified index.
+    */
+   private boolean regionMatches( int index, String s ) {
+      if( this.myBytes != null ){
+         for( int i = 0; i < s.length(); i++ ){
+            if( index >= this.myBytesEnd || decode( index ) != s.charAt( i ) ){
+               return false;
+            }
+            index = this.myDecodedEnd;
+         }
+         return true;
+      }
+      if( this.myReader == null ){
+         return this.mySource.startsWith( s, index );
+      }
+      if( !fill( index + s.length() - 1 ) ){
+         return false;
+      }
+      for( int i = 0; i < s.length(); i++ ){
+         if( this.myBuffer[index - this.myBufferStart + i] != s.charAt( i ) ){
+            return false;
+         }
+      }
+      return true;
+   }
 }
\ No newline at end of file
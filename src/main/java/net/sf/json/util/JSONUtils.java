@@ -36,8 +36,6 @@ import net.sf.json.JSONNull;
 import net.sf.json.JSONObject;
 import net.sf.json.JSONString;
 import net.sf.json.JsonConfig;
-import net.sf.json.regexp.RegexpMatcher;
-import net.sf.json.regexp.RegexpUtils;
 
 import org.apache.commons.beanutils.DynaBean;
 
@@ -53,20 +51,11 @@ public final class JSONUtils {
    /** Constant for char ' */
    public static final String SINGLE_QUOTE = "'";
 
-   private static RegexpMatcher FUNCTION_HEADER_MATCHER;
-   private static final String FUNCTION_HEADER_PATTERN = "^function[ ]?\\(.*\\)$";
-   private static RegexpMatcher FUNCTION_MACTHER;
-   private static RegexpMatcher FUNCTION_PARAMS_MATCHER;
-   private static final String FUNCTION_PARAMS_PATTERN = "^function[ ]?\\((.*?)\\)$";
-   private static final String FUNCTION_PATTERN = "^function[ ]?\\(.*\\)[ ]?\\{.*\\}$";
+   private static final String FUNCTION_PREFIX = "function";
 
    private static final MorpherRegistry morpherRegistry = new MorpherRegistry();
 
    static{
-      FUNCTION_HEADER_MATCHER = RegexpUtils.getMatcher( FUNCTION_HEADER_PATTERN );
-      FUNCTION_PARAMS_MATCHER = RegexpUtils.getMatcher( FUNCTION_PARAMS_PATTERN );
-      FUNCTION_MACTHER = RegexpUtils.getMatcher( FUNCTION_PATTERN );
-
       // register standard morphers
       MorphUtils.registerStandardMorphers( morpherRegistry );
    }
@@ -128,7 +117,10 @@ public final class JSONUtils {
     * Returns the params of a function literal.
     */
    public static String getFunctionParams( String function ) {
-      return FUNCTION_PARAMS_MATCHER.getGroupIfMatches( function, 1 );
+      if( !isFunctionHeader( function ) ){
+         return "";
+      }
+      return function.substring( functionHeaderLength( function ), function.length() - 1 );
    }
 
    /**
@@ -208,9 +200,12 @@ public final class JSONUtils {
     * If null it will return JSONNull.getInstance().hashCode().<br>
     * If value is JSON, JSONFunction or String, value.hashCode is returned,
     * otherwise the value is transformed to a String an its hashcode is
-    * returned.
+    * returned. A LazyNumber hashes as the Number it converts to.
     */
    public static int hashCode( Object value ) {
+      if( value instanceof LazyNumber ){
+         value = ((LazyNumber) value).getNumber();
+      }
       if( value == null ){
          return JSONNull.getInstance()
                .hashCode();
@@ -275,7 +270,23 @@ public final class JSONUtils {
    public static boolean isFunction( Object obj ) {
       if( obj instanceof String ){
          String str = (String) obj;
-         return FUNCTION_MACTHER.matches( str );
+         int start = functionHeaderLength( str );
+         int last = str.length() - 1;
+         if( start < 0 || str.charAt( last ) != '}' ){
+            return false;
+         }
+         for( int i = start; i < last; i++ ){
+            if( str.charAt( i ) == ')' ){
+               int j = i + 1;
+               if( j < last && str.charAt( j ) == ' ' ){
+                  j++;
+               }
+               if( j < last && str.charAt( j ) == '{' ){
+                  return true;
+               }
+            }
+         }
+         return false;
       }
       if( obj instanceof JSONFunction ){
          return true;
@@ -290,7 +301,8 @@ public final class JSONUtils {
    public static boolean isFunctionHeader( Object obj ) {
       if( obj instanceof String ){
          String str = (String) obj;
-         return FUNCTION_HEADER_MATCHER.matches( str );
+         int start = functionHeaderLength( str );
+         return start >= 0 && start < str.length() && str.charAt( str.length() - 1 ) == ')';
       }
       return false;
    }
@@ -726,6 +738,37 @@ public final class JSONUtils {
       }
    }
 
+   /**
+    * Returns the length of the "function(" or "function (" prefix of str, or
+    * -1 if str does not start with it or spans more than one line, as the
+    * function patterns do not match line terminators.
+    */
+   private static int functionHeaderLength( String str ) {
+      if( !str.startsWith( FUNCTION_PREFIX ) ){
+         return -1;
+      }
+      int i = FUNCTION_PREFIX.length();
+      if( i < str.length() && str.charAt( i ) == ' ' ){
+         i++;
+      }
+      if( i >= str.length() || str.charAt( i ) != '(' ){
+         return -1;
+      }
+      for( int j = i + 1; j < str.length(); j++ ){
+         switch( str.charAt( j ) ){
+            case '\n':
+            case '\r':
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+               return -1;
+            default:
+               // empty
+         }
+      }
+      return i + 1;
+   }
+
    /**
     * Finds out if n represents a BigInteger
     *
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONException;
+import net.sf.json.JSONSerializer;
+import net.sf.json.JsonConfig;
+
+/**
+ * Reads JSON Lines (also known as newline delimited JSON) text, where every
+ * line holds one JSON value, one record at a time.<br>
+ * Blank lines are skipped. When created with an ExecutorService the lines
+ * ahead of the current one are parsed by tasks on the executor, records are
+ * still returned in the order of their lines.
+ *
+ * <pre>
+ * JsonLinesReader reader = new JsonLinesReader( new File( "events.jsonl" ),
+ *       new JsonConfig() );
+ * try{
+ *    for( JSON record = reader.read(); record != null; record = reader.read() ){
+ *       ...
+ *    }
+ * }finally{
+ *    reader.close();
+ * }</pre>
+ *
+ * @see JsonLinesWriter
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class JsonLinesReader implements Closeable {
+   /** Default number of lines parsed ahead in parallel mode */
+   public static final int DEFAULT_WINDOW = 256;
+
+   private final ExecutorService executor;
+   private final LinkedList futures = new LinkedList();
+   private final JsonConfig jsonConfig;
+   private int lineNumber;
+   private final BufferedReader reader;
+   private final int window;
+
+   /**
+    * Creates a JsonLinesReader that reads UTF-8 encoded lines from a file.
+    * The file is closed by close().
+    */
+   public JsonLinesReader( File file, JsonConfig jsonConfig ) throws IOException {
+      this( new InputStreamReader( new FileInputStream( file ), "UTF-8" ), jsonConfig );
+   }
+
+   /**
+    * Creates a JsonLinesReader that parses lines with a default JsonConfig.
+    */
+   public JsonLinesReader( Reader reader ) {
+      this( reader, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JsonLinesReader that parses lines with jsonConfig.
+    */
+   public JsonLinesReader( Reader reader, JsonConfig jsonConfig ) {
+      this( reader, jsonConfig, null, 1 );
+   }
+
+   /**
+    * Creates a JsonLinesReader that parses up to window lines ahead in
+    * parallel on executor. The executor is not shut down by close().
+    */
+   public JsonLinesReader( Reader reader, JsonConfig jsonConfig, ExecutorService executor,
+         int window ) {
+      if( reader == null ){
+         throw new IllegalArgumentException( "reader is null." );
+      }
+      if( window < 1 ){
+         throw new IllegalArgumentException( "window must be greater than zero." );
+      }
+      this.reader = reader instanceof BufferedReader ? (BufferedReader) reader
+            : new BufferedReader( reader );
+      this.jsonConfig = jsonConfig == null ? new JsonConfig() : jsonConfig;
+      this.executor = executor;
+      this.window = window;
+   }
+
+   /**
+    * Closes the underlying reader and cancels the lines being parsed ahead.
+    */
+   public void close() throws IOException {
+      while( !futures.isEmpty() ){
+         ((Future) futures.removeFirst()).cancel( true );
+      }
+      reader.close();
+   }
+
+   /**
+    * Returns the number of the last line read, starting at 1. In parallel
+    * mode it may be ahead of the line of the last record returned.
+    */
+   public int getLineNumber() {
+      return lineNumber;
+   }
+
+   /**
+    * Returns the next record, or null at the end of the text.
+    *
+    * @throws JSONException if a line is not a proper JSON value, or the
+    *         current thread is interrupted while waiting for a record.
+    */
+   public JSON read() throws IOException {
+      if( executor == null ){
+         String line = nextLine();
+         return line != null ? parse( line, lineNumber, jsonConfig ) : null;
+      }
+
+      while( futures.size() < window ){
+         final String line = nextLine();
+         if( line == null ){
+            break;
+         }
+         final int number = lineNumber;
+         futures.add( executor.submit( new Callable(){
+            public Object call() throws Exception {
+               return parse( line, number, jsonConfig );
+            }
+         } ) );
+      }
+      if( futures.isEmpty() ){
+         return null;
+      }
+      try{
+         return (JSON) ((Future) futures.removeFirst()).get();
+      }catch( InterruptedException ie ){
+         Thread.currentThread()
+               .interrupt();
+         throw new JSONException( ie );
+      }catch( ExecutionException ee ){
+         Throwable cause = ee.getCause();
+         if( cause instanceof JSONException ){
+            throw (JSONException) cause;
+         }
+         throw new JSONException( cause );
+      }
+   }
+
+   private static JSON parse( String line, int number, JsonConfig jsonConfig ) {
+      try{
+         return JSONSerializer.toJSON( line, jsonConfig );
+      }catch( JSONException jsone ){
+         throw new JSONException( "Invalid record at line " + number + ": " + jsone.getMessage(),
+               jsone );
+      }
+   }
+
+   /**
+    * Reads and trims the next line that is not blank, or returns null at the
+    * end.
+    */
+   private String nextLine() throws IOException {
+      for( ;; ){
+         String line = reader.readLine();
+         if( line == null ){
+            return null;
+         }
+         lineNumber++;
+         line = line.trim();
+         if( line.length() > 0 ){
+            return line;
+         }
+      }
+   }
+}
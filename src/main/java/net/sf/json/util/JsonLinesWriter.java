@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONException;
+import net.sf.json.JSONSerializer;
+import net.sf.json.JsonConfig;
+
+/**
+ * Writes records as JSON Lines (also known as newline delimited JSON) text,
+ * one JSON value per line.<br>
+ * Records are serialized into a buffer that is reused for every record and
+ * written to the underlying writer when it fills up. When created with an
+ * ExecutorService records are converted and serialized by tasks on the
+ * executor and written in the order they were given, up to window records
+ * are pending at any time. Records must not be modified until flush() or
+ * close() return.
+ *
+ * @see JsonLinesReader
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class JsonLinesWriter implements Closeable, Flushable {
+   /** Default number of records serialized ahead in parallel mode */
+   public static final int DEFAULT_WINDOW = 256;
+
+   private final ExecutorService executor;
+   private final LinkedList futures = new LinkedList();
+   private final JsonConfig jsonConfig;
+   private final int window;
+   private final Writer writer;
+
+   /**
+    * Creates a JsonLinesWriter that converts records with a default
+    * JsonConfig.
+    */
+   public JsonLinesWriter( Writer writer ) {
+      this( writer, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JsonLinesWriter that converts records with jsonConfig.
+    */
+   public JsonLinesWriter( Writer writer, JsonConfig jsonConfig ) {
+      this( writer, jsonConfig, null, 1 );
+   }
+
+   /**
+    * Creates a JsonLinesWriter that converts and serializes up to window
+    * records in parallel on executor. The executor is not shut down by
+    * close().
+    */
+   public JsonLinesWriter( Writer writer, JsonConfig jsonConfig, ExecutorService executor,
+         int window ) {
+      if( writer == null ){
+         throw new IllegalArgumentException( "writer is null." );
+      }
+      if( window < 1 ){
+         throw new IllegalArgumentException( "window must be greater than zero." );
+      }
+      this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter( writer );
+      this.jsonConfig = jsonConfig == null ? new JsonConfig() : jsonConfig;
+      this.executor = executor;
+      this.window = window;
+   }
+
+   /**
+    * Writes the pending records and closes the underlying writer.
+    */
+   public void close() throws IOException {
+      try{
+         drain( 0 );
+      }finally{
+         writer.close();
+      }
+   }
+
+   /**
+    * Writes the pending records and flushes the underlying writer.
+    */
+   public void flush() throws IOException {
+      drain( 0 );
+      writer.flush();
+   }
+
+   /**
+    * Converts a record with JSONSerializer.toJSON() and writes it on its own
+    * line.
+    *
+    * @throws JSONException if the record can not be converted, or the current
+    *         thread is interrupted while waiting for a pending record.
+    */
+   public void write( final Object record ) throws IOException {
+      if( executor == null ){
+         toJSON( record, jsonConfig ).write( writer );
+         writer.write( '\n' );
+         return;
+      }
+
+      futures.add( executor.submit( new Callable(){
+         public Object call() throws Exception {
+            return toJSON( record, jsonConfig ).toString();
+         }
+      } ) );
+      drain( window );
+   }
+
+   private static JSON toJSON( Object record, JsonConfig jsonConfig ) {
+      if( record instanceof JSON ){
+         return (JSON) record;
+      }
+      return JSONSerializer.toJSON( record, jsonConfig );
+   }
+
+   /**
+    * Writes the pending records in order until no more than max are left.
+    */
+   private void drain( int max ) throws IOException {
+      while( futures.size() > max ){
+         String line;
+         try{
+            line = (String) ((Future) futures.removeFirst()).get();
+         }catch( InterruptedException ie ){
+            Thread.currentThread()
+                  .interrupt();
+            throw new JSONException( ie );
+         }catch( ExecutionException ee ){
+            Throwable cause = ee.getCause();
+            if( cause instanceof JSONException ){
+               throw (JSONException) cause;
+            }
+            throw new JSONException( cause );
+         }
+         writer.write( line );
+         writer.write( '\n' );
+      }
+   }
+}
@@ -0,0 +1,653 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+import net.sf.json.JSONException;
+import net.sf.json.JSONFunction;
+import net.sf.json.JSONNull;
+import net.sf.json.JsonConfig;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A pull parser that walks JSON text one token at a time, without building
+ * JSONObject or JSONArray instances.<br>
+ * It follows the same grammar as JSONObject and JSONArray, lenient features
+ * included: comments, single quoted and unquoted strings, '=' and '=>' as key
+ * separators, ';' as value separator, empty array elements, trailing
+ * separators and functions. Several values may follow each other at the top
+ * level.<br>
+ * When created from a Reader only the characters of the current token are
+ * kept in memory, so arbitrarily large texts can be processed, for example
+ *
+ * <pre>
+ * JsonReader reader = new JsonReader( new FileReader( "export.json" ) );
+ * reader.nextToken(); // START_ARRAY
+ * while( reader.nextToken() == JsonReader.START_OBJECT ){
+ *    ... // handle one record, call skipChildren() to ignore it
+ * }</pre>
+ *
+ * parse(JsonEventListener) drives a JsonEventListener with the same events
+ * JSONObject and JSONArray trigger while building a tree.<br>
+ * A JsonReader created with the no-argument constructor does not read its
+ * input, it is fed chunks of input as they arrive with feed() and never
+ * blocks: when a token is not complete yet nextToken() returns NOT_AVAILABLE
+ * and the token is read again once more input has been fed. endOfInput()
+ * tells the reader that no more input will come.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class JsonReader {
+   /** Returned after the last value of the text has been read */
+   public static final int END_DOCUMENT = 0;
+   /** '{' */
+   public static final int START_OBJECT = 1;
+   /** '}' */
+   public static final int END_OBJECT = 2;
+   /** '[' */
+   public static final int START_ARRAY = 3;
+   /** ']' */
+   public static final int END_ARRAY = 4;
+   /** The name of an object property */
+   public static final int FIELD_NAME = 5;
+   /** A quoted or unquoted string value */
+   public static final int VALUE_STRING = 6;
+   /** An Integer, Long or Double value */
+   public static final int VALUE_NUMBER = 7;
+   /** true */
+   public static final int VALUE_TRUE = 8;
+   /** false */
+   public static final int VALUE_FALSE = 9;
+   /** null, also returned for empty array elements */
+   public static final int VALUE_NULL = 10;
+   /** A JSONFunction value */
+   public static final int VALUE_FUNCTION = 11;
+   /** Returned when more input has to be fed before the next token is known */
+   public static final int NOT_AVAILABLE = -2;
+
+   /** No token has been read yet */
+   private static final int NONE = -1;
+
+   /** Expecting the first key of an object or element of an array */
+   private static final int STATE_FIRST = 0;
+   /** Expecting a separator or the end of the current object or array */
+   private static final int STATE_NEXT = 1;
+   /** Expecting the value of a property */
+   private static final int STATE_VALUE = 2;
+
+   private Feed feed;
+   private int[] indexes;
+   private JsonConfig jsonConfig;
+   private String[] keys;
+   /** 'o' for objects and 'a' for arrays */
+   private char[] stack = new char[16];
+   private int depth;
+   private int state = STATE_FIRST;
+   private String text;
+   private int token = NONE;
+   private JSONTokener tokener;
+   private Object value;
+
+   /**
+    * Creates a JsonReader that takes its input from feed(), see
+    * NOT_AVAILABLE.
+    */
+   public JsonReader() {
+      this.feed = new Feed();
+      this.tokener = new JSONTokener( feed, JSONTokener.DEFAULT_BUFFER_SIZE );
+      this.jsonConfig = new JsonConfig();
+   }
+
+   /**
+    * Creates a JsonReader that takes its input from a JSONTokener.
+    */
+   public JsonReader( JSONTokener tokener ) {
+      this( tokener, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JsonReader that takes its input from a JSONTokener.
+    *
+    * @param tokener the source of characters
+    * @param jsonConfig the configuration used to read values
+    */
+   public JsonReader( JSONTokener tokener, JsonConfig jsonConfig ) {
+      if( tokener == null ){
+         throw new IllegalArgumentException( "tokener is null." );
+      }
+      this.tokener = tokener;
+      this.jsonConfig = jsonConfig != null ? jsonConfig : new JsonConfig();
+   }
+
+   /**
+    * Creates a JsonReader that takes its input from a Reader.<br>
+    * The reader is not closed by the JsonReader.
+    */
+   public JsonReader( Reader reader ) {
+      this( new JSONTokener( reader, JSONTokener.DEFAULT_BUFFER_SIZE ) );
+   }
+
+   /**
+    * Tells a JsonReader created with the no-argument constructor that all the
+    * input has been fed.
+    *
+    * @throws JSONException if the bytes fed so far end with an incomplete
+    *         UTF-8 sequence.
+    */
+   public void endOfInput() {
+      if( feed == null ){
+         throw new JSONException( "This JsonReader is not fed" );
+      }
+      feed.close();
+   }
+
+   /**
+    * Feeds UTF-8 encoded bytes to a JsonReader created with the no-argument
+    * constructor. All the remaining bytes of the buffer are consumed, a
+    * character split across two buffers is decoded when the second one is
+    * fed.
+    *
+    * @throws JSONException if the bytes are not valid UTF-8 or endOfInput()
+    *         has been called.
+    */
+   public void feed( ByteBuffer bytes ) {
+      if( feed == null ){
+         throw new JSONException( "This JsonReader is not fed" );
+      }
+      feed.write( bytes );
+   }
+
+   /**
+    * Feeds characters to a JsonReader created with the no-argument
+    * constructor. The characters are copied.
+    *
+    * @throws JSONException if endOfInput() has been called.
+    */
+   public void feed( char[] chars, int offset, int length ) {
+      if( feed == null ){
+         throw new JSONException( "This JsonReader is not fed" );
+      }
+      feed.write( chars, offset, length );
+   }
+
+   /**
+    * Returns the last token returned by nextToken(), or -1 if nextToken() has
+    * not been called yet.
+    */
+   public int getCurrentToken() {
+      return token;
+   }
+
+   /**
+    * Returns the number of objects and arrays that enclose the next token.
+    */
+   public int getDepth() {
+      return depth;
+   }
+
+   /**
+    * Returns the text of the current token. That is the name for FIELD_NAME,
+    * the string representation of the value for VALUE_* tokens and the
+    * delimiter for START_* and END_* tokens.
+    */
+   public String getText() {
+      return text;
+   }
+
+   /**
+    * Returns the value of the current token as it would be stored in a
+    * JSONObject or JSONArray: a String, Integer, Long, Double, Boolean,
+    * JSONNull or JSONFunction.<br>
+    * Returns null for FIELD_NAME, START_*, END_* and END_DOCUMENT.
+    */
+   public Object getValue() {
+      return value;
+   }
+
+   /**
+    * Reads the next token.
+    *
+    * @return one of START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY,
+    *         FIELD_NAME, VALUE_* or END_DOCUMENT, or NOT_AVAILABLE if the
+    *         reader is fed and needs more input.
+    * @throws JSONException if the text is not valid.
+    */
+   public int nextToken() {
+      if( token == END_DOCUMENT ){
+         return token;
+      }
+      text = null;
+      value = null;
+      if( feed == null ){
+         return token = readToken();
+      }
+
+      tokener.mark();
+      try{
+         token = readToken();
+         tokener.unmark();
+         return token;
+      }catch( JSONException jsone ){
+         if( !feed.starved ){
+            throw jsone;
+         }
+         feed.starved = false;
+         tokener.rewind();
+         text = null;
+         value = null;
+         return token = NOT_AVAILABLE;
+      }
+   }
+
+   /**
+    * Reads the rest of the text and reports it to a JsonEventListener, without
+    * building JSONObject or JSONArray instances.<br>
+    * Events are triggered in the same order as when a tree is built, but since
+    * no tree is kept the value reported by onPropertySet and onElementAdded is
+    * null for objects and arrays, and 'accumulated' is always false. Errors are
+    * reported with onError before being thrown.<br>
+    * A fed reader returns as soon as it needs more input, parse() has to be
+    * called again after the next feed().
+    *
+    * @param listener the listener that receives the events
+    * @throws JSONException if the text is not valid.
+    */
+   public void parse( JsonEventListener listener ) {
+      if( listener == null ){
+         throw new IllegalArgumentException( "listener is null." );
+      }
+      if( keys == null ){
+         keys = new String[stack.length];
+         indexes = new int[stack.length];
+      }
+      try{
+         for( ;; ){
+            int t = nextToken();
+            if( t == END_DOCUMENT || t == NOT_AVAILABLE ){
+               return;
+            }
+            if( depth > keys.length ){
+               String[] k = new String[stack.length];
+               System.arraycopy( keys, 0, k, 0, keys.length );
+               keys = k;
+               int[] i = new int[stack.length];
+               System.arraycopy( indexes, 0, i, 0, indexes.length );
+               indexes = i;
+            }
+            Object v = null;
+            switch( t ){
+               case START_OBJECT:
+                  listener.onObjectStart();
+                  indexes[depth - 1] = 0;
+                  continue;
+               case START_ARRAY:
+                  listener.onArrayStart();
+                  indexes[depth - 1] = 0;
+                  continue;
+               case FIELD_NAME:
+                  keys[depth - 1] = text;
+                  continue;
+               case END_OBJECT:
+                  listener.onObjectEnd();
+                  break;
+               case END_ARRAY:
+                  listener.onArrayEnd();
+                  break;
+               default:
+                  v = value;
+            }
+            if( depth > 0 ){
+               if( stack[depth - 1] == 'o' ){
+                  listener.onPropertySet( keys[depth - 1], v, false );
+               }else{
+                  listener.onElementAdded( indexes[depth - 1]++, v );
+               }
+            }
+         }
+      }catch( JSONException jsone ){
+         listener.onError( jsone );
+         throw jsone;
+      }
+   }
+
+   /**
+    * Skips the children of the current START_OBJECT or START_ARRAY token,
+    * leaving the reader on the matching END_OBJECT or END_ARRAY token. Does
+    * nothing for any other token.<br>
+    * A fed reader must have been fed the whole object or array already.
+    *
+    * @throws JSONException if the text is not valid or not complete.
+    */
+   public void skipChildren() {
+      if( token != START_OBJECT && token != START_ARRAY ){
+         return;
+      }
+      int level = 1;
+      while( level > 0 ){
+         switch( nextToken() ){
+            case START_OBJECT:
+            case START_ARRAY:
+               level++;
+               break;
+            case END_OBJECT:
+            case END_ARRAY:
+               level--;
+               break;
+            case END_DOCUMENT:
+               throw tokener.syntaxError( "Unexpected end of text" );
+            case NOT_AVAILABLE:
+               throw new JSONException( "Can't skip children, more input is needed" );
+            default:
+               // keep going
+         }
+      }
+   }
+
+   private int pop( String delimiter ) {
+      depth--;
+      state = STATE_NEXT;
+      text = delimiter;
+      return delimiter.equals( "}" ) ? END_OBJECT : END_ARRAY;
+   }
+
+   private int push( char mode, String delimiter ) {
+      if( depth == stack.length ){
+         char[] s = new char[stack.length * 2];
+         System.arraycopy( stack, 0, s, 0, depth );
+         stack = s;
+      }
+      stack[depth++] = mode;
+      state = STATE_FIRST;
+      text = delimiter;
+      return mode == 'o' ? START_OBJECT : START_ARRAY;
+   }
+
+   private String readFunctionText( Object header ) {
+      int i = 0;
+      StringBuffer sb = new StringBuffer();
+      for( ;; ){
+         char ch = tokener.next();
+         if( ch == 0 ){
+            break;
+         }
+         if( ch == '{' ){
+            i++;
+         }
+         if( ch == '}' ){
+            i--;
+         }
+         sb.append( ch );
+         if( i == 0 ){
+            break;
+         }
+      }
+      if( i != 0 ){
+         throw tokener.syntaxError( "Unbalanced '{' or '}' on prop: " + header );
+      }
+      // trim '{' at start and '}' at end
+      String functionText = sb.toString();
+      return functionText.substring( 1, functionText.length() - 1 )
+            .trim();
+   }
+
+   private int readKey() {
+      char c = tokener.nextClean();
+      if( c == '{' || c == '[' ){
+         throw tokener.syntaxError( "Expected a key" );
+      }
+      tokener.back();
+      text = tokener.nextKey( jsonConfig );
+
+      /*
+       * The key is followed by ':'. We will also tolerate '=' or '=>'.
+       */
+
+      c = tokener.nextClean();
+      if( c == '=' ){
+         if( tokener.next() != '>' ){
+            tokener.back();
+         }
+      }else if( c != ':' ){
+         throw tokener.syntaxError( "Expected a ':' after a key" );
+      }
+      state = STATE_VALUE;
+      return FIELD_NAME;
+   }
+
+   private int readToken() {
+      char c;
+      if( depth == 0 ){
+         c = tokener.nextClean();
+         if( c == 0 ){
+            return END_DOCUMENT;
+         }
+         tokener.back();
+         return readValue();
+      }
+
+      if( stack[depth - 1] == 'o' ){
+         switch( state ){
+            case STATE_VALUE:
+               return readValue();
+            case STATE_FIRST:
+               c = tokener.nextClean();
+               if( c == '}' ){
+                  return pop( "}" );
+               }
+               if( c == 0 ){
+                  throw tokener.syntaxError( "A JSONObject text must end with '}'" );
+               }
+               tokener.back();
+               return readKey();
+            default:
+               c = tokener.nextClean();
+               if( c == ',' || c == ';' ){
+                  c = tokener.nextClean();
+                  if( c == '}' ){
+                     return pop( "}" );
+                  }
+                  if( c == 0 ){
+                     throw tokener.syntaxError( "A JSONObject text must end with '}'" );
+                  }
+                  tokener.back();
+                  return readKey();
+               }
+               if( c == '}' ){
+                  return pop( "}" );
+               }
+               throw tokener.syntaxError( "Expected a ',' or '}'" );
+         }
+      }
+
+      c = tokener.nextClean();
+      if( state == STATE_NEXT ){
+         if( c == ']' ){
+            return pop( "]" );
+         }
+         if( c != ',' && c != ';' ){
+            throw tokener.syntaxError( "Expected a ',' or ']'" );
+         }
+         c = tokener.nextClean();
+      }
+      switch( c ){
+         case ']':
+            return pop( "]" );
+         case ',':
+            tokener.back();
+            state = STATE_NEXT;
+            text = "null";
+            value = JSONNull.getInstance();
+            return VALUE_NULL;
+         case 0:
+            throw tokener.syntaxError( "A JSONArray text must end with ']'" );
+         default:
+            tokener.back();
+            return readValue();
+      }
+   }
+
+   private int readValue() {
+      char c = tokener.nextClean();
+      switch( c ){
+         case 0:
+            throw tokener.syntaxError( "Missing value." );
+         case '{':
+            return push( 'o', "{" );
+         case '[':
+            return push( 'a', "[" );
+         case '"':
+         case '\'':
+            text = tokener.nextString( c );
+            value = text;
+            state = STATE_NEXT;
+            return VALUE_STRING;
+         default:
+            tokener.back();
+      }
+
+      Object v = tokener.nextValue( jsonConfig );
+      int t;
+      if( v instanceof Number ){
+         text = v.toString();
+         value = v;
+         t = VALUE_NUMBER;
+      }else if( v instanceof Boolean ){
+         text = v.toString();
+         value = v;
+         t = ((Boolean) v).booleanValue() ? VALUE_TRUE : VALUE_FALSE;
+      }else if( v instanceof JSONNull ){
+         text = "null";
+         value = v;
+         t = VALUE_NULL;
+      }else if( JSONUtils.isFunctionHeader( v ) ){
+         String params = JSONUtils.getFunctionParams( (String) v );
+         JSONFunction function = new JSONFunction( (params != null) ? StringUtils.split( params,
+               "," ) : null, readFunctionText( v ) );
+         text = function.toString();
+         value = function;
+         t = VALUE_FUNCTION;
+      }else{
+         text = String.valueOf( v );
+         value = text;
+         t = VALUE_STRING;
+      }
+      state = STATE_NEXT;
+      return t;
+   }
+
+   /**
+    * The Reader a fed JsonReader reads from. It holds the characters that have
+    * been fed but not read yet, and fails instead of blocking when there are
+    * none.
+    */
+   private static class Feed extends Reader {
+      private char[] buffer = new char[JSONTokener.DEFAULT_BUFFER_SIZE];
+      private boolean closed;
+      private CharsetDecoder decoder;
+      private int end;
+      private ByteBuffer pending;
+      private int start;
+      /** Whether a read failed because no input was available */
+      private boolean starved;
+
+      public void close() {
+         if( pending != null && pending.hasRemaining() ){
+            throw new JSONException( "Incomplete UTF-8 sequence at the end of the input" );
+         }
+         closed = true;
+      }
+
+      public int read( char[] cbuf, int off, int len ) throws IOException {
+         if( start == end ){
+            if( closed ){
+               return -1;
+            }
+            starved = true;
+            throw new IOException( "No input available" );
+         }
+         int n = Math.min( len, end - start );
+         System.arraycopy( buffer, start, cbuf, off, n );
+         start += n;
+         return n;
+      }
+
+      void write( ByteBuffer bytes ) {
+         checkOpen();
+         if( decoder == null ){
+            decoder = Charset.forName( "UTF-8" )
+                  .newDecoder();
+         }
+         ByteBuffer in = bytes;
+         if( pending != null && pending.hasRemaining() ){
+            in = ByteBuffer.allocate( pending.remaining() + bytes.remaining() );
+            in.put( pending )
+                  .put( bytes )
+                  .flip();
+         }
+         // UTF-8 never needs more chars than bytes
+         CharBuffer out = CharBuffer.allocate( in.remaining() );
+         CoderResult result = decoder.decode( in, out, false );
+         if( result.isError() ){
+            try{
+               result.throwException();
+            }catch( CharacterCodingException cce ){
+               throw new JSONException( cce );
+            }
+         }
+         if( in.hasRemaining() ){
+            pending = ByteBuffer.allocate( in.remaining() );
+            pending.put( in )
+                  .flip();
+         }else{
+            pending = null;
+         }
+         write( out.array(), 0, out.position() );
+      }
+
+      void write( char[] chars, int offset, int length ) {
+         checkOpen();
+         if( end + length > buffer.length ){
+            int used = end - start;
+            char[] b = buffer;
+            if( used + length > buffer.length ){
+               b = new char[Math.max( buffer.length * 2, used + length )];
+            }
+            System.arraycopy( buffer, start, b, 0, used );
+            buffer = b;
+            start = 0;
+            end = used;
+         }
+         System.arraycopy( chars, offset, buffer, end, length );
+         end += length;
+      }
+
+      private void checkOpen() {
+         if( closed ){
+            throw new JSONException( "Can't feed input after endOfInput()" );
+         }
+      }
+   }
+}
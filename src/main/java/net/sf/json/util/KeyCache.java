@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+/**
+ * A bounded cache of object keys, used while parsing to return the same String
+ * instance for keys that repeat across objects and documents.<br>
+ * The cache has a fixed number of slots, a key replaces whatever key was
+ * stored in its slot, so the cache never grows. It does not lock and may be
+ * shared by several parsers and threads.
+ *
+ * @see net.sf.json.JsonConfig#setKeyCache(KeyCache)
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class KeyCache {
+   /** Default number of slots */
+   public static final int DEFAULT_SIZE = 1024;
+   /** Default length of the longest key that is cached */
+   public static final int DEFAULT_MAX_KEY_LENGTH = 64;
+
+   private final String[] keys;
+   private final int mask;
+   private final int maxKeyLength;
+
+   /**
+    * Creates a KeyCache with DEFAULT_SIZE slots for keys of up to
+    * DEFAULT_MAX_KEY_LENGTH characters.
+    */
+   public KeyCache() {
+      this( DEFAULT_SIZE, DEFAULT_MAX_KEY_LENGTH );
+   }
+
+   /**
+    * Creates a KeyCache.
+    *
+    * @param size the number of slots, rounded up to a power of two
+    * @param maxKeyLength the length of the longest key that is cached
+    */
+   public KeyCache( int size, int maxKeyLength ) {
+      if( size < 1 ){
+         throw new IllegalArgumentException( "size must be greater than zero." );
+      }
+      int n = 1;
+      while( n < size ){
+         n <<= 1;
+      }
+      this.keys = new String[n];
+      this.mask = n - 1;
+      this.maxKeyLength = maxKeyLength;
+   }
+
+   /**
+    * Removes all the cached keys.
+    */
+   public void clear() {
+      for( int i = 0; i < keys.length; i++ ){
+         keys[i] = null;
+      }
+   }
+
+   /**
+    * Returns the cached String with the same characters as chars, caching a
+    * new one if there is none. No String is created when the key is cached.
+    */
+   public String intern( CharSequence chars ) {
+      int length = chars.length();
+      if( length > maxKeyLength ){
+         return chars.toString();
+      }
+      int h = 0;
+      for( int i = 0; i < length; i++ ){
+         h = 31 * h + chars.charAt( i );
+      }
+      int slot = (h ^ (h >>> 16)) & mask;
+      String key = keys[slot];
+      if( key != null && key.length() == length && key.hashCode() == h && key.contentEquals( chars ) ){
+         return key;
+      }
+      key = chars.toString();
+      keys[slot] = key;
+      return key;
+   }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import net.sf.json.JSONException;
+
+/**
+ * A number parsed from JSON text that keeps its text and is converted to an
+ * Integer, Long or Double only the first time its value is requested.<br>
+ * JSONTokener produces LazyNumbers when JsonConfig.isLazyNumbers() is true.
+ * A LazyNumber is equal to the Integer, Long or Double it converts to, the
+ * opposite does not hold as those classes only equal their own type.<br>
+ * toString() returns the original text, but JSONObjects and JSONArrays write
+ * the value it converts to, so 2.50 is written as 2.5.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class LazyNumber extends Number {
+   private static final long serialVersionUID = -5218542318573619418L;
+
+   private final int kind;
+   private transient Number number;
+   private final String text;
+
+   /**
+    * Creates a LazyNumber from a number written in the plain JSON syntax.
+    *
+    * @throws JSONException if text is not a plain JSON number or converts to
+    *         a non-finite Double
+    */
+   public LazyNumber( String text ) {
+      this( text, text == null ? JSONTokener.NUMBER_NONE : JSONTokener.scanNumber( text ) );
+   }
+
+   LazyNumber( String text, int kind ) {
+      if( kind == JSONTokener.NUMBER_NONE ){
+         throw new JSONException( "Not a JSON number: " + text );
+      }
+      this.text = text;
+      this.kind = kind;
+      if( mayOverflow() ){
+         JSONUtils.testValidity( getNumber() );
+      }
+   }
+
+   public double doubleValue() {
+      return getNumber().doubleValue();
+   }
+
+   public boolean equals( Object obj ) {
+      if( obj == this ){
+         return true;
+      }
+      if( obj instanceof LazyNumber ){
+         return getNumber().equals( ((LazyNumber) obj).getNumber() );
+      }
+      return getNumber().equals( obj );
+   }
+
+   public float floatValue() {
+      return getNumber().floatValue();
+   }
+
+   /**
+    * Returns the Integer, Long or Double this number converts to.
+    */
+   public Number getNumber() {
+      if( number == null ){
+         number = JSONTokener.toNumber( text, kind );
+      }
+      return number;
+   }
+
+   public int hashCode() {
+      return getNumber().hashCode();
+   }
+
+   public int intValue() {
+      return getNumber().intValue();
+   }
+
+   public long longValue() {
+      return getNumber().longValue();
+   }
+
+   /**
+    * Returns the text this number was parsed from.
+    */
+   public String toString() {
+      return text;
+   }
+
+   /**
+    * Returns true if the Double this number converts to may be infinite,
+    * which needs an exponent or more than 300 digits.
+    */
+   private boolean mayOverflow() {
+      return kind != JSONTokener.NUMBER_INTEGER
+            && (text.length() > 300 || text.indexOf( 'e' ) >= 0 || text.indexOf( 'E' ) >= 0);
+   }
+}
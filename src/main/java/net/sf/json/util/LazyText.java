@@ -0,0 +1,396 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The text of a JSON value that has not been parsed yet, kept as offsets in
+ * the source string, see JsonConfig.setLazyTree().<br>
+ * The text is checked against the grammar of RFC 8259 when it is skipped.
+ * Used by JSONObject and JSONArray to parse their contents on first use and
+ * to write themselves verbatim while they are untouched, if the text is
+ * exactly what parsing keeps, see isExact(). Whitespace between tokens is
+ * left out when the text is written.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public final class LazyText {
+   /**
+    * Skips the next value of tokener if it begins with open and returns its
+    * text. Returns null and consumes nothing if the value begins with another
+    * character or if tokener does not read from a string.
+    *
+    * @throws net.sf.json.JSONException if the value is not terminated, does
+    *         not follow RFC 8259 or has a number too large for a Double.
+    */
+   public static LazyText skip( JSONTokener tokener, char open ) {
+      String source = tokener.getSource();
+      if( source == null ){
+         return null;
+      }
+      char c = tokener.nextClean();
+      tokener.back();
+      if( c != open ){
+         return null;
+      }
+      int start = tokener.getIndex();
+      tokener.skipValue();
+      LazyText text = new LazyText( source, start, tokener.getIndex() );
+      // the text of an enclosing LazyText has been checked already
+      if( text.end > tokener.getChecked() && !text.scan( null ) ){
+         tokener.seek( start );
+         throw tokener.syntaxError( "Invalid JSON text." );
+      }
+      return text;
+   }
+
+   private final int end;
+   /** 0 until isExact() is called, then 1 if the text is exact, -1 if not */
+   private int exact;
+   private final String source;
+   /** false once a scan found no whitespace between tokens */
+   private boolean spaced = true;
+   private final int start;
+
+   private LazyText( String source, int start, int end ) {
+      this.source = source;
+      this.start = start;
+      this.end = end;
+   }
+
+   /**
+    * Returns true if parsing the text in strict mode keeps every member and
+    * element as written, so that writing the text verbatim is the same as
+    * writing the parsed value up to whitespace and the order of keys.<br>
+    * That is the case if the text follows the grammar of RFC 8259, no object
+    * repeats a key or has a key in exclusions, no string holds a function and
+    * no number is too large for a Double.
+    */
+   public boolean isExact( Collection exclusions ) {
+      if( exact == 0 ){
+         exact = scan( exclusions ) ? 1 : -1;
+      }
+      return exact > 0;
+   }
+
+   /**
+    * Returns a JSONTokener positioned at the start of the text.
+    */
+   public JSONTokener newTokener() {
+      JSONTokener tokener = new JSONTokener( source );
+      tokener.seek( start );
+      tokener.setChecked( end );
+      return tokener;
+   }
+
+   /**
+    * Returns the text without whitespace between tokens.
+    */
+   public String toString() {
+      if( !spaced ){
+         return source.substring( start, end );
+      }
+      StringWriter writer = new StringWriter( end - start );
+      try{
+         write( writer );
+      }catch( IOException ioe ){
+         // a StringWriter does not throw
+      }
+      return writer.toString();
+   }
+
+   /**
+    * Writes the text as it appears in the source, without whitespace between
+    * tokens.
+    */
+   public void write( Writer writer ) throws IOException {
+      if( !spaced ){
+         writer.write( source, start, end - start );
+         return;
+      }
+      int from = start;
+      boolean quoted = false;
+      for( int i = start; i < end; i++ ){
+         char c = source.charAt( i );
+         if( quoted ){
+            if( c == '\\' ){
+               i++;
+            }else if( c == '"' ){
+               quoted = false;
+            }
+         }else if( c == '"' ){
+            quoted = true;
+         }else if( c == ' ' || c == '\t' || c == '\r' || c == '\n' ){
+            if( i > from ){
+               writer.write( source, from, i - from );
+            }
+            from = i + 1;
+         }
+      }
+      if( end > from ){
+         writer.write( source, from, end - from );
+      }
+   }
+
+   /**
+    * Returns the value of the string whose quotes are at from and to - 1.
+    */
+   private String decode( int from, int to ) {
+      int escape = source.indexOf( '\\', from );
+      if( escape < 0 || escape >= to - 1 ){
+         return source.substring( from + 1, to - 1 );
+      }
+      StringBuffer sb = new StringBuffer( to - from );
+      for( int i = from + 1; i < to - 1; i++ ){
+         char c = source.charAt( i );
+         if( c != '\\' ){
+            sb.append( c );
+            continue;
+         }
+         c = source.charAt( ++i );
+         switch( c ){
+            case 'b':
+               sb.append( '\b' );
+               break;
+            case 'f':
+               sb.append( '\f' );
+               break;
+            case 'n':
+               sb.append( '\n' );
+               break;
+            case 'r':
+               sb.append( '\r' );
+               break;
+            case 't':
+               sb.append( '\t' );
+               break;
+            case 'u':
+               sb.append( (char) Integer.parseInt( source.substring( i + 1, i + 5 ), 16 ) );
+               i += 4;
+               break;
+            default:
+               sb.append( c );
+         }
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Reads the key of an object member at i, followed by ':', and records it
+    * in the keys of the object at the top of keys unless exclusions is null.
+    * Returns the index of the value, or -1 if the key is not exact.
+    */
+   private int key( int i, ArrayList keys, Collection exclusions ) {
+      int to = string( i );
+      if( to < 0 ){
+         return -1;
+      }
+      int colon = whitespace( to );
+      if( colon >= end || source.charAt( colon ) != ':' ){
+         return -1;
+      }
+      if( exclusions == null ){
+         return whitespace( colon + 1 );
+      }
+      String key = decode( i, to );
+      if( exclusions.contains( key ) ){
+         return -1;
+      }
+      int top = keys.size() - 1;
+      Object seen = keys.get( top );
+      if( seen == null ){
+         keys.set( top, key );
+      }else if( seen instanceof String ){
+         if( seen.equals( key ) ){
+            return -1;
+         }
+         Set set = new HashSet();
+         set.add( seen );
+         set.add( key );
+         keys.set( top, set );
+      }else if( !((Set) seen).add( key ) ){
+         return -1;
+      }
+      return whitespace( colon + 1 );
+   }
+
+   /**
+    * Reads the number, true, false or null at i. Returns the index after it,
+    * or -1 if it is not valid or too large for a Double.
+    */
+   private int literal( int i ) {
+      int to = i;
+      while( to < end && " \t\r\n,]}".indexOf( source.charAt( to ) ) < 0 ){
+         to++;
+      }
+      String literal = source.substring( i, to );
+      if( literal.equals( "true" ) || literal.equals( "false" ) || literal.equals( "null" ) ){
+         return to;
+      }
+      int kind = JSONTokener.scanNumber( literal );
+      if( kind == JSONTokener.NUMBER_NONE ){
+         return -1;
+      }
+      if( kind != JSONTokener.NUMBER_INTEGER
+            && (literal.length() > 300 || literal.indexOf( 'e' ) >= 0 || literal.indexOf( 'E' ) >= 0) ){
+         Number number = JSONTokener.toNumber( literal, kind );
+         if( number instanceof Double && ((Double) number).isInfinite() ){
+            return -1;
+         }
+      }
+      return to;
+   }
+
+   /**
+    * Returns true if the text follows RFC 8259 with no number too large for a
+    * Double and, unless exclusions is null, is exact, see isExact().
+    */
+   private boolean scan( Collection exclusions ) {
+      spaced = false;
+      if( !tokens( exclusions ) ){
+         spaced = true;
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Reads the string at i. Returns the index after its closing quote, or -1
+    * if it is not a string of RFC 8259.
+    */
+   private int string( int i ) {
+      if( i >= end || source.charAt( i ) != '"' ){
+         return -1;
+      }
+      for( i++; i < end; i++ ){
+         char c = source.charAt( i );
+         if( c == '"' ){
+            return i + 1;
+         }else if( c < ' ' ){
+            return -1;
+         }else if( c == '\\' ){
+            if( ++i >= end ){
+               return -1;
+            }
+            c = source.charAt( i );
+            if( c == 'u' ){
+               if( i + 4 >= end ){
+                  return -1;
+               }
+               for( int j = i + 1; j <= i + 4; j++ ){
+                  if( "0123456789abcdefABCDEF".indexOf( source.charAt( j ) ) < 0 ){
+                     return -1;
+                  }
+               }
+               i += 4;
+            }else if( "\"\\/bfnrt".indexOf( c ) < 0 ){
+               return -1;
+            }
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Reads the tokens of the text, see scan().
+    */
+   private boolean tokens( Collection exclusions ) {
+      StringBuffer open = new StringBuffer();
+      // for each open object: null, its only key or the Set of its keys
+      ArrayList keys = new ArrayList();
+      int i = whitespace( start );
+      boolean value = true;
+      for( ;; ){
+         if( value ){
+            if( i >= end ){
+               return false;
+            }
+            char c = source.charAt( i );
+            if( c == '{' || c == '[' ){
+               open.append( c );
+               keys.add( null );
+               i = whitespace( i + 1 );
+               if( i < end && source.charAt( i ) == (c == '{' ? '}' : ']') ){
+                  open.setLength( open.length() - 1 );
+                  keys.remove( keys.size() - 1 );
+                  i++;
+                  value = false;
+               }else if( c == '{' ){
+                  i = key( i, keys, exclusions );
+               }
+            }else if( c == '"' ){
+               int to = string( i );
+               if( to > 0 && exclusions != null
+                     && (source.charAt( i + 1 ) == 'f' || source.charAt( i + 1 ) == '\\')
+                     && JSONUtils.isFunction( decode( i, to ) ) ){
+                  return false;
+               }
+               i = to;
+               value = false;
+            }else{
+               i = literal( i );
+               value = false;
+            }
+            if( i < 0 ){
+               return false;
+            }
+         }else{
+            i = whitespace( i );
+            int depth = open.length();
+            if( depth == 0 ){
+               return i == end;
+            }
+            char top = open.charAt( depth - 1 );
+            if( i < end && source.charAt( i ) == ',' ){
+               i = whitespace( i + 1 );
+               if( top == '{' ){
+                  i = key( i, keys, exclusions );
+                  if( i < 0 ){
+                     return false;
+                  }
+               }
+               value = true;
+            }else if( i < end && source.charAt( i ) == (top == '{' ? '}' : ']') ){
+               open.setLength( depth - 1 );
+               keys.remove( depth - 1 );
+               i++;
+            }else{
+               return false;
+            }
+         }
+      }
+   }
+
+   private int whitespace( int i ) {
+      while( i < end ){
+         char c = source.charAt( i );
+         if( c != ' ' && c != '\t' && c != '\r' && c != '\n' ){
+            break;
+         }
+         spaced = true;
+         i++;
+      }
+      return i;
+   }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Base class for creating the Map where a JSONObject keeps its properties.<br>
+ * <ul>
+ * <li>SORTED - keys in natural order, like a TreeMap. This is the default.</li>
+ * <li>INSERTION_ORDER - keys in the order they were added, like a
+ * LinkedHashMap.</li>
+ * <li>HASH - keys in no particular order, like a HashMap.</li>
+ * <li>CONCURRENT - keys in natural order, for objects shared by many threads.
+ * Readers never block, every update copies the keys and values.</li>
+ * </ul>
+ * The maps of HASH, INSERTION_ORDER and SORTED keep up to 8 keys and their
+ * values in arrays, and switch to a HashMap, LinkedHashMap or TreeMap when a
+ * key is added beyond that. HASH iterates in insertion order up to then, and
+ * in no particular order after the switch.<br>
+ * The order of the map is the order of keys(), names() and toString().
+ * writeCanonical() always writes the keys sorted.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public abstract class ObjectMapFactory {
+   /** Keys in natural order, safe for use by many threads at once */
+   public static final ObjectMapFactory CONCURRENT = new ObjectMapFactory(){
+      public boolean isConcurrent() {
+         return true;
+      }
+
+      public Map newMap() {
+         return new ConcurrentTreeMap();
+      }
+   };
+   /** Keys in no particular order, constant time lookups */
+   public static final ObjectMapFactory HASH = new ObjectMapFactory(){
+      public Map newMap() {
+         return new CompactMap( CompactMap.HASH );
+      }
+   };
+   /** Keys in the order they were added, constant time lookups */
+   public static final ObjectMapFactory INSERTION_ORDER = new ObjectMapFactory(){
+      public Map newMap() {
+         return new CompactMap( CompactMap.INSERTION_ORDER );
+      }
+   };
+   /** Keys in natural order */
+   public static final ObjectMapFactory SORTED = new ObjectMapFactory(){
+      public Map newMap() {
+         return new CompactMap( CompactMap.SORTED );
+      }
+   };
+
+   /**
+    * Returns true if the maps created by this factory may be read and updated
+    * by many threads at once.
+    */
+   public boolean isConcurrent() {
+      return false;
+   }
+
+   /**
+    * Returns true if map iterates its keys in natural order, as the maps of
+    * SORTED and CONCURRENT and any SortedMap do.
+    */
+   public static boolean isSorted( Map map ) {
+      return map instanceof SortedMap || map instanceof ConcurrentTreeMap
+            || map instanceof CompactMap && ((CompactMap) map).isSorted();
+   }
+
+   /**
+    * Creates a new, empty Map.
+    */
+   public abstract Map newMap();
+}
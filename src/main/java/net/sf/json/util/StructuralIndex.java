@@ -0,0 +1,303 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import net.sf.json.JSONException;
+import net.sf.json.JsonConfig;
+
+/**
+ * An index of the structure of a JSON text, used to parse only the values
+ * that are requested.<br>
+ * Creating the index records, in one pass, the offsets of the characters
+ * <code>{ } [ ] : ,</code> that are not inside strings and the position of
+ * the bracket closing each opening one. Looking up a path such as
+ * <code>docs[9000].payload</code> then walks those offsets, jumping over
+ * every object and array not on the path, and parses only the value found at
+ * its end.<br>
+ * Paths use the syntax of IncludePaths without wildcards. The text must be
+ * well formed, comments and the non standard separators accepted by
+ * JSONTokener are not supported.
+ *
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class StructuralIndex {
+   /** For opening brackets, the position of the closing one */
+   private int[] matches;
+   /** Offsets of the structural characters in text */
+   private int[] offsets;
+   private int size;
+   private final String text;
+
+   /**
+    * Creates the index of a JSON text.
+    *
+    * @throws JSONException if the text has an unterminated string or
+    *         unbalanced brackets.
+    */
+   public StructuralIndex( String text ) {
+      if( text == null ){
+         throw new IllegalArgumentException( "text is null." );
+      }
+      this.text = text;
+      index();
+   }
+
+   /**
+    * Returns the value at path, parsed with a default JsonConfig.
+    *
+    * @throws JSONException if there is no value at path.
+    */
+   public Object get( String path ) {
+      return get( path, new JsonConfig() );
+   }
+
+   /**
+    * Returns the value at path, parsed with jsonConfig.
+    *
+    * @throws JSONException if there is no value at path.
+    */
+   public Object get( String path, JsonConfig jsonConfig ) {
+      Object value = opt( path, jsonConfig );
+      if( value == null ){
+         throw new JSONException( "No value at " + path );
+      }
+      return value;
+   }
+
+   /**
+    * Returns the value at path, parsed with a default JsonConfig, or null if
+    * there is none.
+    */
+   public Object opt( String path ) {
+      return opt( path, new JsonConfig() );
+   }
+
+   /**
+    * Returns the value at path, parsed with jsonConfig, or null if there is
+    * none.
+    */
+   public Object opt( String path, JsonConfig jsonConfig ) {
+      if( path == null ){
+         throw new IllegalArgumentException( "path is null." );
+      }
+      int start = skipWhitespace( 0 );
+      int length = path.length();
+      int i = 0;
+      while( i < length ){
+         int s = structuralAt( start );
+         if( path.charAt( i ) == '[' ){
+            int end = path.indexOf( ']', i );
+            if( end < 0 ){
+               throw new JSONException( "Missing ']' in path " + path );
+            }
+            int index;
+            try{
+               index = Integer.parseInt( path.substring( i + 1, end )
+                     .trim() );
+            }catch( NumberFormatException nfe ){
+               throw new JSONException( "Invalid index in path " + path );
+            }
+            if( s < 0 || text.charAt( offsets[s] ) != '[' ){
+               return null;
+            }
+            start = element( s, index );
+            i = end + 1;
+         }else{
+            int end = i;
+            while( end < length && path.charAt( end ) != '.' && path.charAt( end ) != '[' ){
+               end++;
+            }
+            if( end == i ){
+               throw new JSONException( "Empty property name in path " + path );
+            }
+            if( s < 0 || text.charAt( offsets[s] ) != '{' ){
+               return null;
+            }
+            start = property( s, path.substring( i, end ), jsonConfig );
+            i = end;
+         }
+         if( start < 0 ){
+            return null;
+         }
+         if( i < length && path.charAt( i ) == '.' ){
+            i++;
+         }
+      }
+      JSONTokener tokener = new JSONTokener( text );
+      tokener.seek( start );
+      return tokener.nextValue( jsonConfig );
+   }
+
+   /**
+    * Returns the number of structural characters in the text.
+    */
+   public int size() {
+      return size;
+   }
+
+   private void add( int offset ) {
+      if( size == offsets.length ){
+         int[] grown = new int[size * 2];
+         System.arraycopy( offsets, 0, grown, 0, size );
+         offsets = grown;
+         grown = new int[size * 2];
+         System.arraycopy( matches, 0, grown, 0, size );
+         matches = grown;
+      }
+      offsets[size++] = offset;
+   }
+
+   /**
+    * Returns the offset of element index of the array opened at structural s,
+    * or -1 if index is negative or the array is shorter.
+    */
+   private int element( int s, int index ) {
+      if( index < 0 ){
+         return -1;
+      }
+      int close = matches[s];
+      int j = s + 1;
+      if( j == close && skipWhitespace( offsets[s] + 1 ) == offsets[close] ){
+         return -1;
+      }
+      for( int i = 0; i < index; i++ ){
+         j = skipValue( j );
+         if( j >= close ){
+            return -1;
+         }
+         j++;
+      }
+      return skipWhitespace( offsets[j - 1] + 1 );
+   }
+
+   private void index() {
+      int length = text.length();
+      int capacity = length / 8 + 16;
+      offsets = new int[capacity];
+      matches = new int[capacity];
+      int[] open = new int[16];
+      int depth = 0;
+      for( int i = 0; i < length; i++ ){
+         char c = text.charAt( i );
+         switch( c ){
+            case '"':
+            case '\'':
+               for( i++; i < length && text.charAt( i ) != c; i++ ){
+                  if( text.charAt( i ) == '\\' ){
+                     i++;
+                  }
+               }
+               if( i >= length ){
+                  throw new JSONException( "Unterminated string at character " + length );
+               }
+               break;
+            case '{':
+            case '[':
+               if( depth == open.length ){
+                  int[] grown = new int[depth * 2];
+                  System.arraycopy( open, 0, grown, 0, depth );
+                  open = grown;
+               }
+               open[depth++] = size;
+               add( i );
+               break;
+            case '}':
+            case ']':
+               if( depth == 0
+                     || text.charAt( offsets[open[depth - 1]] ) != (c == '}' ? '{' : '[') ){
+                  throw new JSONException( "Unbalanced '" + c + "' at character " + i );
+               }
+               matches[open[--depth]] = size;
+               add( i );
+               break;
+            case ':':
+            case ',':
+               add( i );
+               break;
+            default:
+               // empty
+         }
+      }
+      if( depth != 0 ){
+         throw new JSONException( "Unbalanced '" + text.charAt( offsets[open[depth - 1]] )
+               + "' at character " + offsets[open[depth - 1]] );
+      }
+   }
+
+   /**
+    * Returns the offset of the value of the property named key in the object
+    * opened at structural s, or -1 if there is no such property.
+    */
+   private int property( int s, String key, JsonConfig jsonConfig ) {
+      int close = matches[s];
+      int j = s + 1;
+      JSONTokener tokener = new JSONTokener( text );
+      while( j < close ){
+         if( text.charAt( offsets[j] ) != ':' ){
+            throw new JSONException( "Expected a ':' after a key at character " + offsets[j] );
+         }
+         tokener.seek( offsets[j - 1] + 1 );
+         String name = tokener.nextKey( jsonConfig );
+         if( key.equals( name ) ){
+            return skipWhitespace( offsets[j] + 1 );
+         }
+         j = skipValue( j + 1 ) + 1;
+      }
+      return -1;
+   }
+
+   private int skipWhitespace( int offset ) {
+      int length = text.length();
+      while( offset < length && text.charAt( offset ) <= ' ' ){
+         offset++;
+      }
+      return offset;
+   }
+
+   /**
+    * Returns the structural ending the value that starts before structural j,
+    * the ',' or closing bracket following it.
+    */
+   private int skipValue( int j ) {
+      char c = text.charAt( offsets[j] );
+      while( c == '{' || c == '[' ){
+         j = matches[j] + 1;
+         c = text.charAt( offsets[j] );
+      }
+      return j;
+   }
+
+   /**
+    * Returns the structural at offset, or -1 if the character at offset is
+    * not structural.
+    */
+   private int structuralAt( int offset ) {
+      int low = 0;
+      int high = size - 1;
+      while( low <= high ){
+         int mid = (low + high) >>> 1;
+         if( offsets[mid] < offset ){
+            low = mid + 1;
+         }else if( offsets[mid] > offset ){
+            high = mid - 1;
+         }else{
+            return mid;
+         }
+      }
+      return -1;
+   }
+}
@@ -39,25 +39,39 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import net.sf.ezmorph.Morpher;
-import net.sf.ezmorph.object.IdentityObjectMorpher;
 import net.sf.json.processors.JsonValueProcessor;
 import net.sf.json.processors.JsonVerifier;
+import net.sf.json.util.ArrayListFactory;
 import net.sf.json.util.JSONTokener;
 import net.sf.json.util.JSONUtils;
+import net.sf.json.util.LazyNumber;
+import net.sf.json.util.LazyText;
 
-import org.apache.commons.lang.StringUtils;
 
 /**
  * A JSONArray is an ordered sequence of values. Its external text form is a
@@ -108,6 +122,9 @@ import org.apache.commons.lang.StringUtils;
  * @author JSON.org
  */
 public final class JSONArray extends AbstractJSON implements JSON, List<Object>, Comparable {
+   /** The number of characters parseParallel() hands to each task */
+   private static final int PARALLEL_CHUNK_SIZE = 64 * 1024;
+
    /**
     * Creates a JSONArray.<br>
     * Inspects the object type to call the correct JSONArray factory method.
@@ -136,7 +153,11 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       }else if( object instanceof Collection ){
          return _fromCollection( (Collection) object, jsonConfig );
       }else if( object instanceof JSONTokener ){
-         return _fromJSONTokener( (JSONTokener) object, jsonConfig );
+         return _fromJSONTokenerLazily( (JSONTokener) object, jsonConfig );
+      }else if( object instanceof Reader ){
+         return _fromText( new JSONTokener( (Reader) object, JSONTokener.DEFAULT_BUFFER_SIZE ), jsonConfig );
+      }else if( object instanceof ByteBuffer ){
+         return _fromText( newTokener( (ByteBuffer) object ), jsonConfig );
       }else if( object instanceof String ){
          return _fromString( (String) object, jsonConfig );
       }else if( object != null && object.getClass()
@@ -170,7 +191,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             || JSONUtils.isNumber( object ) || JSONUtils.isNull( object )
             || JSONUtils.isString( object ) || object instanceof JSON ){
          fireArrayStartEvent( jsonConfig );
-         JSONArray jsonArray = new JSONArray().element( object, jsonConfig );
+         JSONArray jsonArray = new JSONArray( jsonConfig ).element( object, jsonConfig );
          fireElementAddedEvent( 0, jsonArray.get( 0 ), jsonConfig );
          fireArrayStartEvent( jsonConfig );
          return jsonArray;
@@ -181,7 +202,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
          throw new JSONException( "Unsupported type" );
       }else if( JSONUtils.isObject( object ) ){
          fireArrayStartEvent( jsonConfig );
-         JSONArray jsonArray = new JSONArray().element( JSONObject.fromObject( object, jsonConfig ) );
+         JSONArray jsonArray = new JSONArray( jsonConfig ).element( JSONObject.fromObject( object, jsonConfig ) );
          fireElementAddedEvent( 0, jsonArray.get( 0 ), jsonConfig );
          fireArrayStartEvent( jsonConfig );
          return jsonArray;
@@ -190,6 +211,126 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       }
    }
 
+   /**
+    * Creates a JSONArray from a UTF-8 encoded file.<br>
+    * The file is memory mapped and parsed in place, so its text is never
+    * copied to the heap. Files larger than 2GB can't be mapped.
+    *
+    * @param file the source file
+    * @throws JSONException if the file can not be read or does not contain a
+    *         proper JSONArray.
+    */
+   public static JSONArray fromFile( File file ) {
+      return fromFile( file, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JSONArray from a UTF-8 encoded file.<br>
+    * The file is memory mapped and parsed in place, so its text is never
+    * copied to the heap. Files larger than 2GB can't be mapped.
+    *
+    * @param file the source file
+    * @throws JSONException if the file can not be read or does not contain a
+    *         proper JSONArray.
+    */
+   public static JSONArray fromFile( File file, JsonConfig jsonConfig ) {
+      return _fromText( newTokener( file ), jsonConfig );
+   }
+
+   /**
+    * Creates a JSONArray from a stream of encoded characters.<br>
+    * The stream is read through a buffer and is not closed.
+    *
+    * @param in the source stream
+    * @param charset the encoding of the stream
+    * @throws JSONException if the stream can not be read or does not contain a
+    *         proper JSONArray.
+    */
+   public static JSONArray fromObject( InputStream in, Charset charset ) {
+      return fromObject( in, charset, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JSONArray from a stream of encoded characters.<br>
+    * The stream is read through a buffer and is not closed.
+    *
+    * @param in the source stream
+    * @param charset the encoding of the stream
+    * @throws JSONException if the stream can not be read or does not contain a
+    *         proper JSONArray.
+    */
+   public static JSONArray fromObject( InputStream in, Charset charset, JsonConfig jsonConfig ) {
+      return fromObject( new InputStreamReader( in, charset ), jsonConfig );
+   }
+
+   /**
+    * Creates a JSONArray from a large JSON array text, parsing its elements in
+    * parallel.<br>
+    * The text is split at top level commas into chunks of about 64K
+    * characters, each chunk is parsed by a task submitted to executor and the
+    * elements are stitched back in order. Texts that are small, contain
+    * comments or can't be split, and configurations that trigger events or
+    * have include paths, are parsed on the calling thread instead, as events
+    * and element paths depend on parsing the elements in order.
+    *
+    * @param source the JSON array text
+    * @param executor the executor that runs the tasks, it is not shut down
+    * @throws JSONException if the text is not a proper JSONArray or the
+    *         current thread is interrupted while waiting for the tasks.
+    */
+   public static JSONArray parseParallel( String source, final JsonConfig jsonConfig,
+         ExecutorService executor ) {
+      if( source == null ){
+         throw new IllegalArgumentException( "source is null." );
+      }
+      int[] bounds = null;
+      if( !jsonConfig.isEventTriggeringEnabled() && jsonConfig.getIncludePaths() == null ){
+         bounds = _splitElements( source, PARALLEL_CHUNK_SIZE, jsonConfig.isStrict() );
+      }
+      if( bounds == null || bounds.length < 3 ){
+         return _fromString( source, jsonConfig );
+      }
+
+      final String text = source;
+      List futures = new ArrayList( bounds.length - 1 );
+      for( int i = 1; i < bounds.length; i++ ){
+         final int start = bounds[i - 1] + 1;
+         final int end = bounds[i];
+         futures.add( executor.submit( new Callable(){
+            public Object call() throws Exception {
+               StringBuffer chunk = new StringBuffer( end - start + 2 );
+               chunk.append( '[' )
+                     .append( text, start, end )
+                     .append( ']' );
+               return _fromString( chunk.toString(), jsonConfig );
+            }
+         } ) );
+      }
+
+      JSONArray jsonArray = new JSONArray( jsonConfig );
+      try{
+         for( Iterator i = futures.iterator(); i.hasNext(); ){
+            JSONArray chunk = (JSONArray) ((Future) i.next()).get();
+            jsonArray.elements.addAll( chunk.elements );
+         }
+      }catch( InterruptedException ie ){
+         Thread.currentThread()
+               .interrupt();
+         throw new JSONException( ie );
+      }catch( ExecutionException ee ){
+         Throwable cause = ee.getCause();
+         if( cause instanceof JSONException ){
+            throw (JSONException) cause;
+         }
+         throw new JSONException( cause );
+      }finally{
+         for( Iterator i = futures.iterator(); i.hasNext(); ){
+            ((Future) i.next()).cancel( true );
+         }
+      }
+      return jsonArray;
+   }
+
    /**
     * Returns the number of dimensions suited for a java array.
     */
@@ -467,12 +608,10 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
-      for( int i = 0; i < array.length; i++ ){
-         Boolean b = array[i] ? Boolean.TRUE : Boolean.FALSE;
-         jsonArray.elements.add( b );
-         fireElementAddedEvent( i, b, jsonConfig );
-      }
+      JSONArray jsonArray = new JSONArray( jsonConfig );
+      jsonArray.setElements( new BooleanElements( jsonArray, array.clone() ),
+            jsonConfig );
+      fireElementAddedEvents( jsonArray, jsonConfig );
 
       removeInstance( array );
       fireArrayEndEvent( jsonConfig );
@@ -501,12 +640,13 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
+      int[] values = new int[array.length];
       for( int i = 0; i < array.length; i++ ){
-         Number n = JSONUtils.transformNumber(array[i]);
-         jsonArray.elements.add( n );
-         fireElementAddedEvent( i, n, jsonConfig );
+         values[i] = array[i];
       }
+      jsonArray.setElements( new IntElements( jsonArray, values ), jsonConfig );
+      fireElementAddedEvents( jsonArray, jsonConfig );
 
       removeInstance( array );
       fireArrayEndEvent( jsonConfig );
@@ -535,7 +675,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
       for( int i = 0; i < array.length; i++ ){
          Character c = array[i];
          jsonArray.elements.add( c );
@@ -569,19 +709,18 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
-      try{
-         for( int i = 0; i < array.length; i++ ){
-            Double d = array[i];
-            JSONUtils.testValidity( d );
-            jsonArray.elements.add( d );
-            fireElementAddedEvent( i, d, jsonConfig );
+      for( int i = 0; i < array.length; i++ ){
+         if( Double.isInfinite( array[i] ) || Double.isNaN( array[i] ) ){
+            removeInstance( array );
+            JSONException jsone = new JSONException( "JSON does not allow non-finite numbers" );
+            fireErrorEvent( jsone, jsonConfig );
+            throw jsone;
          }
-      }catch( JSONException jsone ){
-         removeInstance( array );
-         fireErrorEvent( jsone, jsonConfig );
-         throw jsone;
       }
+      JSONArray jsonArray = new JSONArray( jsonConfig );
+      jsonArray.setElements( new DoubleElements( jsonArray, array.clone() ),
+            jsonConfig );
+      fireElementAddedEvents( jsonArray, jsonConfig );
 
       removeInstance( array );
       fireArrayEndEvent( jsonConfig );
@@ -613,7 +752,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
       if( e != null ){
          jsonArray.elements.add( e.toString() );
          fireElementAddedEvent( 0, jsonArray.get(0), jsonConfig );
@@ -651,7 +790,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
       try{
          for( int i = 0; i < array.length; i++ ){
             Float f = array[i];
@@ -692,12 +831,9 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
-      for( int i = 0; i < array.length; i++ ){
-         Number n = array[i];
-         jsonArray.elements.add( n );
-         fireElementAddedEvent( i, n, jsonConfig );
-      }
+      JSONArray jsonArray = new JSONArray( jsonConfig );
+      jsonArray.setElements( new IntElements( jsonArray, array.clone() ), jsonConfig );
+      fireElementAddedEvents( jsonArray, jsonConfig );
 
       removeInstance( array );
       fireArrayEndEvent( jsonConfig );
@@ -726,12 +862,9 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
-      for( int i = 0; i < array.length; i++ ){
-         Number n = JSONUtils.transformNumber(array[i]);
-         jsonArray.elements.add( n );
-         fireElementAddedEvent( i, n, jsonConfig );
-      }
+      JSONArray jsonArray = new JSONArray( jsonConfig );
+      jsonArray.setElements( new LongElements( jsonArray, array.clone() ), jsonConfig );
+      fireElementAddedEvents( jsonArray, jsonConfig );
 
       removeInstance( array );
       fireArrayEndEvent( jsonConfig );
@@ -758,7 +891,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
       try{
          for( int i = 0; i < array.length; i++ ){
             Object element = array[i];
@@ -803,12 +936,13 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
+      int[] values = new int[array.length];
       for( int i = 0; i < array.length; i++ ){
-         Number n = JSONUtils.transformNumber(array[i]);
-         jsonArray.elements.add( n );
-         fireElementAddedEvent( i, n, jsonConfig );
+         values[i] = array[i];
       }
+      jsonArray.setElements( new IntElements( jsonArray, values ), jsonConfig );
+      fireElementAddedEvents( jsonArray, jsonConfig );
 
       removeInstance( array );
       fireArrayEndEvent( jsonConfig );
@@ -833,7 +967,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
       try{
          int i = 0;
          for( Iterator elements = collection.iterator(); elements.hasNext(); ){
@@ -875,7 +1009,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
             throw jsone;
          }
       }
-      JSONArray jsonArray = new JSONArray();
+      JSONArray jsonArray = new JSONArray( jsonConfig );
       int index = 0;
       for( Iterator elements = array.iterator(); elements.hasNext(); ){
          Object element = elements.next();
@@ -889,93 +1023,153 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
    }
 
    private static JSONArray _fromJSONString( JSONString string, JsonConfig jsonConfig ) {
-      return _fromJSONTokener( new JSONTokener( string.toJSONString() ), jsonConfig );
+      return _fromText( new JSONTokener( string.toJSONString() ), jsonConfig );
    }
 
    private static JSONArray _fromJSONTokener( JSONTokener tokener, JsonConfig jsonConfig ) {
-      fireArrayStartEvent( jsonConfig );
+      return JSONParser.parseArray( tokener, jsonConfig );
+   }
 
+   /**
+    * Returns a JSONArray that keeps its text and parses it on first use if
+    * jsonConfig asks for a lazy tree and tokener reads a String, otherwise
+    * parses it now.
+    */
+   private static JSONArray _fromJSONTokenerLazily( JSONTokener tokener, JsonConfig jsonConfig ) {
+      if( isLazyTree( jsonConfig ) ){
+         LazyText text = LazyText.skip( tokener, '[' );
+         if( text != null ){
+            return _fromLazyText( text, jsonConfig );
+         }
+      }
+      return _fromJSONTokener( tokener, jsonConfig );
+   }
+
+   /**
+    * Returns a JSONArray that parses text on first use.
+    */
+   static JSONArray _fromLazyText( LazyText text, JsonConfig jsonConfig ) {
       JSONArray jsonArray = new JSONArray();
-      int index = 0;
+      jsonArray.elements = new LazyElements( jsonArray, text, jsonConfig );
+      return jsonArray;
+   }
 
-      try{
-         if( tokener.nextClean() != '[' ){
-            throw tokener.syntaxError( "A JSONArray text must start with '['" );
-         }
-         if( tokener.nextClean() == ']' ){
-            fireArrayEndEvent( jsonConfig );
-            return jsonArray;
-         }
-         tokener.back();
-         for( ;; ){
-            if( tokener.nextClean() == ',' ){
-               tokener.back();
-               jsonArray.elements.add( JSONNull.getInstance() );
-               fireElementAddedEvent( index, jsonArray.get( index++ ), jsonConfig );
-            }else{
-               tokener.back();
-               Object v = tokener.nextValue( jsonConfig );
-               if( !JSONUtils.isFunctionHeader( v ) ){
-                     jsonArray.addValue( v, jsonConfig );
-                  fireElementAddedEvent( index, jsonArray.get( index++ ), jsonConfig );
-               }else{
-                  // read params if any
-                  String params = JSONUtils.getFunctionParams( (String) v );
-                  // read function text
-                  int i = 0;
-                  StringBuffer sb = new StringBuffer();
-                  for( ;; ){
-                     char ch = tokener.next();
-                     if( ch == 0 ){
-                        break;
-                     }
-                     if( ch == '{' ){
-                        i++;
-                     }
-                     if( ch == '}' ){
-                        i--;
-                     }
-                     sb.append( ch );
-                     if( i == 0 ){
-                        break;
+   private static JSONArray _fromString( String string, JsonConfig jsonConfig ) {
+      return _fromText( new JSONTokener( string ), jsonConfig );
+   }
+
+   /**
+    * Parses a JSONArray from a tokener that holds a whole JSON text, which may
+    * not continue after it when jsonConfig is strict.
+    */
+   private static JSONArray _fromText( JSONTokener tokener, JsonConfig jsonConfig ) {
+      JSONArray jsonArray = _fromJSONTokenerLazily( tokener, jsonConfig );
+      JSONParser.end( tokener, jsonConfig );
+      return jsonArray;
+   }
+
+   /**
+    * Returns true if c is whitespace between tokens, as JSONTokener skips it
+    * in strict mode or otherwise.
+    */
+   private static boolean _isBlank( char c, boolean strict ) {
+      if( strict ){
+         return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+      }
+      return c > 0 && c <= ' ';
+   }
+
+   /**
+    * Scans an array text for top level commas, skipping strings, and returns
+    * the offsets of the opening bracket, of the commas that split it into
+    * chunks of at least chunkSize characters, and of the closing bracket.<br>
+    * A comma is only used if it follows an element, so that elided elements
+    * stay in the chunk that parses them. Returns null if the text has
+    * comments, is not a balanced array, or if strict and text other than
+    * whitespace follows the array.
+    */
+   private static int[] _splitElements( String source, int chunkSize, boolean strict ) {
+      int length = source.length();
+      int i = 0;
+      while( i < length && _isBlank( source.charAt( i ), strict ) ){
+         i++;
+      }
+      if( i == length || source.charAt( i ) != '[' ){
+         return null;
+      }
+      List bounds = new ArrayList();
+      bounds.add( new Integer( i ) );
+      // the brackets that are open at i
+      StringBuffer open = new StringBuffer();
+      char last = 0;
+      for( ; i < length; i++ ){
+         char c = source.charAt( i );
+         switch( c ){
+            case '"':
+            case '\'':
+               for( i++; i < length && source.charAt( i ) != c; i++ ){
+                  if( source.charAt( i ) == '\\' ){
+                     i++;
+                  }
+               }
+               if( i >= length ){
+                  return null;
+               }
+               break;
+            case '/':
+            case '#':
+               return null;
+            case '{':
+            case '[':
+               open.append( c );
+               break;
+            case '}':
+            case ']':
+               int depth = open.length();
+               if( depth == 0 || open.charAt( depth - 1 ) != (c == '}' ? '{' : '[') ){
+                  return null;
+               }
+               open.setLength( depth - 1 );
+               if( depth == 1 ){
+                  for( int j = i + 1; strict && j < length; j++ ){
+                     if( !_isBlank( source.charAt( j ), true ) ){
+                        return null;
                      }
                   }
-                  if( i != 0 ){
-                     throw tokener.syntaxError( "Unbalanced '{' or '}' on prop: " + v );
+                  bounds.add( new Integer( i ) );
+                  int[] offsets = new int[bounds.size()];
+                  for( int j = 0; j < offsets.length; j++ ){
+                     offsets[j] = ((Integer) bounds.get( j )).intValue();
                   }
-                  // trim '{' at start and '}' at end
-                  String text = sb.toString();
-                  text = text.substring( 1, text.length() - 1 )
-                        .trim();
-                  jsonArray.addValue( new JSONFunction( (params != null) ? StringUtils.split(
-                        params, "," ) : null, text ), jsonConfig );
-                  fireElementAddedEvent( index, jsonArray.get( index++ ), jsonConfig );
+                  return offsets;
                }
-            }
-            switch( tokener.nextClean() ){
-               case ';':
-               case ',':
-                  if( tokener.nextClean() == ']' ){
-                     fireArrayEndEvent( jsonConfig );
-                     return jsonArray;
-                  }
-                  tokener.back();
-                  break;
-               case ']':
-                  fireArrayEndEvent( jsonConfig );
-                  return jsonArray;
-               default:
-                  throw tokener.syntaxError( "Expected a ',' or ']'" );
-            }
+               break;
+            case ',':
+               if( open.length() == 1 && last != ',' && last != '['
+                     && i - ((Integer) bounds.get( bounds.size() - 1 )).intValue() >= chunkSize ){
+                  bounds.add( new Integer( i ) );
+               }
+               break;
+            default:
+               // empty
+         }
+         if( !_isBlank( c, strict ) ){
+            last = c;
          }
-      }catch( JSONException jsone ){
-         fireErrorEvent( jsone, jsonConfig );
-         throw jsone;
       }
+      return null;
    }
 
-   private static JSONArray _fromString( String string, JsonConfig jsonConfig ) {
-      return _fromJSONTokener( new JSONTokener( string ), jsonConfig );
+   /**
+    * Fires an elementAdded event for every element of a JSONArray built from
+    * a primitive array, boxing them only when events are enabled.
+    */
+   private static void fireElementAddedEvents( JSONArray jsonArray, JsonConfig jsonConfig ) {
+      if( jsonConfig.isEventTriggeringEnabled() ){
+         for( int i = 0; i < jsonArray.elements.size(); i++ ){
+            fireElementAddedEvent( i, jsonArray.elements.get( i ), jsonConfig );
+         }
+      }
    }
 
    private static void processArrayDimensions( JSONArray jsonArray, List dims, int index ) {
@@ -997,6 +1191,12 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
 
    // ------------------------------------------------------
 
+   /** hashCode() of a frozen array, 0 until computed */
+   private int cachedHashCode;
+
+   /** toString() of a frozen array, null until computed */
+   private String cachedString;
+
    /**
     * The List where the JSONArray's properties are kept.
     */
@@ -1007,6 +1207,9 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
     */
    private boolean expandElements;
 
+   /** rejects changes once set */
+   private boolean frozen;
+
    /**
     * Construct an empty JSONArray.
     */
@@ -1014,6 +1217,15 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       this.elements = new ArrayList<Object>();
    }
 
+   /**
+    * Construct an empty JSONArray whose elements are kept in a List created
+    * by the ArrayListFactory of jsonConfig.
+    */
+   public JSONArray( JsonConfig jsonConfig ) {
+      this.elements = jsonConfig.getArrayListFactory()
+            .newList();
+   }
+
    public void add( int index, Object value ) {
       add( index, value, new JsonConfig() );
    }
@@ -1085,7 +1297,7 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
    }
 
    public boolean contains( Object o, JsonConfig jsonConfig ) {
-      return elements.contains( processValue( o, jsonConfig ) );
+      return indexOf( processValue( o, jsonConfig ), false ) >= 0;
    }
 
    public boolean containsAll( Collection collection ) {
@@ -1093,7 +1305,12 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
    }
 
    public boolean containsAll( Collection collection, JsonConfig jsonConfig ) {
-      return elements.containsAll( fromObject( collection, jsonConfig ) );
+      for( Iterator i = fromObject( collection, jsonConfig ).iterator(); i.hasNext(); ){
+         if( indexOf( i.next(), false ) < 0 ){
+            return false;
+         }
+      }
+      return true;
    }
 
    /**
@@ -1518,6 +1735,21 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       return this;
    }
 
+   /**
+    * Append a JSON value as it is, without copying it or running it through
+    * JsonValueProcessors. This increases the array's length by one.<br>
+    * The value is shared with anyone else holding it, changes made to it
+    * through either side are seen by both. It must not contain this array.
+    *
+    * @param value A JSONObject, JSONArray or JSONNull, null is appended as
+    *        JSONNull.
+    * @return this.
+    */
+   public JSONArray elementAdopt( JSON value ) {
+      this.elements.add( value != null ? value : JSONNull.getInstance() );
+      return this;
+   }
+
    public boolean equals( Object obj ) {
       if( obj == this ){
          return true;
@@ -1536,89 +1768,44 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
          return false;
       }
 
-      int max = size();
-      for( int i = 0; i < max; i++ ){
-         Object o1 = get( i );
-         Object o2 = other.get( i );
-
-         // handle nulls
-         if( JSONNull.getInstance()
-               .equals( o1 ) ){
-            if( JSONNull.getInstance()
-                  .equals( o2 ) ){
-               continue;
-            }else{
-               return false;
-            }
-         }else{
-            if( JSONNull.getInstance()
-                  .equals( o2 ) ){
-               return false;
-            }
+      if( this.elements instanceof PrimitiveElements
+            && this.elements.getClass() == other.elements.getClass() ){
+         return ((PrimitiveElements) this.elements).sameValues(
+               (PrimitiveElements) other.elements );
+      }
+      Iterator e2 = other.elements.iterator();
+      for( Iterator e1 = this.elements.iterator(); e1.hasNext(); ){
+         if( !valuesEqual( e1.next(), e2.next() ) ){
+            return false;
          }
+      }
+      return true;
+   }
 
-         if( o1 instanceof JSONArray && o2 instanceof JSONArray ){
-            JSONArray e = (JSONArray) o1;
-            JSONArray a = (JSONArray) o2;
-            if( !a.equals( e ) ){
-               return false;
-            }
-         }else{
-            if( o1 instanceof String && o2 instanceof JSONFunction ){
-               if( !o1.equals( String.valueOf( o2 ) ) ){
-                  return false;
-               }
-            }else if( o1 instanceof JSONFunction && o2 instanceof String ){
-               if( !o2.equals( String.valueOf( o1 ) ) ){
-                  return false;
-               }
-            }else if( o1 instanceof JSONObject && o2 instanceof JSONObject ){
-               if( !o1.equals( o2 ) ){
-                  return false;
-               }
-            }else if( o1 instanceof JSONArray && o2 instanceof JSONArray ){
-               if( !o1.equals( o2 ) ){
-                  return false;
-               }
-            }else if( o1 instanceof JSONFunction && o2 instanceof JSONFunction ){
-               if( !o1.equals( o2 ) ){
-                  return false;
-               }
-            }else{
-               if( o1 instanceof String ){
-                  if( !o1.equals( String.valueOf( o2 ) ) ){
-                     return false;
-                  }
-               }else if( o2 instanceof String ){
-                  if( !o2.equals( String.valueOf( o1 ) ) ){
-                     return false;
-                  }
-               }else{
-                  Morpher m1 = JSONUtils.getMorpherRegistry()
-                        .getMorpherFor( o1.getClass() );
-                  Morpher m2 = JSONUtils.getMorpherRegistry()
-                        .getMorpherFor( o2.getClass() );
-                  if( m1 != null && m1 != IdentityObjectMorpher.getInstance() ){
-                     if( !o1.equals( JSONUtils.getMorpherRegistry()
-                           .morph( o1.getClass(), o2 ) ) ){
-                        return false;
-                     }
-                  }else if( m2 != null && m2 != IdentityObjectMorpher.getInstance() ){
-                     if( !JSONUtils.getMorpherRegistry()
-                           .morph( o1.getClass(), o1 )
-                           .equals( o2 ) ){
-                        return false;
-                     }
-                  }else{
-                     if( !o1.equals( o2 ) ){
-                        return false;
-                     }
-                  }
-               }
-            }
+   /**
+    * Makes this array and every JSONObject and JSONArray in it immutable.
+    * Methods that change them throw an UnsupportedOperationException from
+    * then on.<br>
+    * A frozen tree computes its hashCode() and toString() once, and may be
+    * read by several threads at the same time once it has been published
+    * safely, for example through a final or volatile field.
+    *
+    * @return this array.
+    */
+   public JSONArray freeze() {
+      if( frozen ){
+         return this;
+      }
+      if( this.elements instanceof PrimitiveElements ){
+         ((PrimitiveElements) this.elements).frozen = true;
+      }else{
+         for( Iterator elements = this.elements.iterator(); elements.hasNext(); ){
+            freeze( elements.next() );
          }
+         this.elements = Collections.unmodifiableList( this.elements );
       }
-      return true;
+      frozen = true;
+      return this;
    }
 
    /**
@@ -1645,6 +1832,9 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
     *         is not convertable to boolean.
     */
    public boolean getBoolean( int index ) {
+      if( this.elements instanceof PrimitiveElements ){
+         return ((PrimitiveElements) this.elements).booleanValue( index );
+      }
       Object o = get( index );
       if( o != null ){
          if( o.equals( Boolean.FALSE )
@@ -1667,6 +1857,9 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
     *         converted to a number.
     */
    public double getDouble( int index ) {
+      if( this.elements instanceof PrimitiveElements ){
+         return ((PrimitiveElements) this.elements).doubleValue( index );
+      }
       Object o = get( index );
       if( o != null ){
          try{
@@ -1689,6 +1882,9 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
     *         number.
     */
    public int getInt( int index ) {
+      if( this.elements instanceof PrimitiveElements ){
+         return ((PrimitiveElements) this.elements).intValue( index );
+      }
       Object o = get( index );
       if( o != null ){
          return o instanceof Number ? ((Number) o).intValue() : (int) getDouble( index );
@@ -1740,6 +1936,9 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
     *         converted to a number.
     */
    public long getLong( int index ) {
+      if( this.elements instanceof PrimitiveElements ){
+         return ((PrimitiveElements) this.elements).longValue( index );
+      }
       Object o = get( index );
       if( o != null ){
          return o instanceof Number ? ((Number) o).longValue() : (long) getDouble( index );
@@ -1763,17 +1962,23 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
    }
 
    public int hashCode() {
+      if( cachedHashCode != 0 ){
+         return cachedHashCode;
+      }
       int hashcode = 29;
 
       for( Iterator e = elements.iterator(); e.hasNext(); ){
          Object element = e.next();
          hashcode += JSONUtils.hashCode( element );
       }
+      if( frozen ){
+         cachedHashCode = hashcode;
+      }
       return hashcode;
    }
 
    public int indexOf( Object o ) {
-      return elements.indexOf( o );
+      return indexOf( o, false );
    }
 
    public boolean isArray() {
@@ -1788,6 +1993,15 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       return expandElements;
    }
 
+   /**
+    * Returns true if this array has been frozen.
+    *
+    * @see #freeze()
+    */
+   public boolean isFrozen() {
+      return frozen;
+   }
+
    /**
     * Returns an Iterator for this JSONArray
     */
@@ -1818,21 +2032,22 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
     * @throws JSONException If the array contains an invalid number.
     */
    public String join( String separator, boolean stripQuotes ) {
-      int len = size();
       StringBuffer sb = new StringBuffer();
+      boolean b = false;
 
-      for( int i = 0; i < len; i += 1 ){
-         if( i > 0 ){
+      for( Iterator elements = this.elements.iterator(); elements.hasNext(); ){
+         if( b ){
             sb.append( separator );
          }
-         String value = JSONUtils.valueToString( this.elements.get( i ) );
+         b = true;
+         String value = JSONUtils.valueToString( elements.next() );
          sb.append( stripQuotes ? JSONUtils.stripQuotes( value ) : value );
       }
       return sb.toString();
    }
 
    public int lastIndexOf( Object o ) {
-      return elements.lastIndexOf( o );
+      return indexOf( o, true );
    }
 
    public ListIterator listIterator() {
@@ -2114,8 +2329,25 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
     *         array.
     */
    public String toString() {
+      if( isVerbatim() ){
+         return ((LazyElements) this.elements).text.toString();
+      }
+      if( cachedString != null ){
+         return cachedString;
+      }
       try{
-         return '[' + join( "," ) + ']';
+         String string;
+         if( this.elements instanceof PrimitiveElements ){
+            StringWriter writer = new StringWriter();
+            ((PrimitiveElements) this.elements).write( writer, false );
+            string = writer.toString();
+         }else{
+            string = '[' + join( "," ) + ']';
+         }
+         if( frozen ){
+            cachedString = string;
+         }
+         return string;
       }catch( Exception e ){
          return null;
       }
@@ -2187,17 +2419,71 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       return sb.toString();
    }
 
+   /**
+    * Returns a frozen JSONArray with the elements of this one and value at
+    * index. If the index is greater than the length of the JSONArray, then
+    * null elements will be added as necessary to pad it out.<br>
+    * This array is frozen and left as it is. The new array shares its
+    * elements with this one and, once this one was made by with(), the tree
+    * that holds them too, so every version costs O(log n) instead of a full
+    * copy.
+    *
+    * @param index The subscript.
+    * @param value An object value.
+    * @return a new JSONArray.
+    * @throws JSONException If the index is negative or if the the value is an
+    *         invalid number.
+    */
+   public JSONArray with( int index, Object value ) {
+      return with( index, value, new JsonConfig() );
+   }
+
+   /**
+    * Returns a frozen JSONArray with the elements of this one and value,
+    * converted with jsonConfig, at index.
+    *
+    * @see #with(int, Object)
+    */
+   public JSONArray with( int index, Object value, JsonConfig jsonConfig ) {
+      if( index < 0 ){
+         throw new JSONException( "JSONArray[" + index + "] not found." );
+      }
+      freeze();
+      if( !isFrozen( value ) ){
+         value = freeze( processValue( value, jsonConfig ) );
+      }
+      PersistentVector elements = PersistentVector.of( this.elements );
+      while( elements.size() < index ){
+         elements = elements.plus( JSONNull.getInstance() );
+      }
+      JSONArray jsonArray = new JSONArray();
+      jsonArray.elements = elements.with( index, value );
+      jsonArray.frozen = true;
+      return jsonArray;
+   }
+
     protected void write(Writer writer, WritingVisitor visitor) throws IOException {
+        if( visitor == NORMAL && isVerbatim() ){
+           ((LazyElements) this.elements).text.write( writer );
+           return;
+        }
+        if( visitor == NORMAL && cachedString != null ){
+           writer.write( cachedString );
+           return;
+        }
+        if( this.elements instanceof PrimitiveElements ){
+           ((PrimitiveElements) this.elements).write( writer, visitor != NORMAL );
+           return;
+        }
         boolean b = false;
-        int len = size();
 
         writer.write( '[' );
 
-        for( int i = 0; i < len; i += 1 ){
+        for( Iterator elements = this.elements.iterator(); elements.hasNext(); ){
            if( b ){
               writer.write( ',' );
            }
-           Object v = this.elements.get( i );
+           Object v = elements.next();
            if( v instanceof JSON ){
                visitor.on((JSON)v,writer);
            }else{
@@ -2218,6 +2504,25 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       return this;
    }
 
+   /**
+    * Appends a value read by JSONParser as it is.
+    */
+   void addParsed( Object value ) {
+      this.elements.add( value );
+   }
+
+   boolean isUnparsed() {
+      return this.elements instanceof LazyElements;
+   }
+
+   /**
+    * Returns true if this JSONArray has not been parsed yet and its text can
+    * be written as it is, see LazyText.isExact().
+    */
+   boolean isVerbatim() {
+      return isUnparsed() && ((LazyElements) this.elements).isExact();
+   }
+
    /**
     * Append an object value. This increases the array's length by one.
     *
@@ -2283,6 +2588,27 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       return _addValue( processValue( value, jsonConfig ), jsonConfig );
    }
 
+   /**
+    * Returns the index of the first or last element equal to o. A LazyNumber
+    * element also matches the Number it converts to, which the List methods
+    * miss as Integer, Long and Double only equal their own type.
+    */
+   private int indexOf( Object o, boolean last ) {
+      int index = last ? elements.lastIndexOf( o ) : elements.indexOf( o );
+      if( index >= 0 || !(o instanceof Number) || o instanceof LazyNumber ){
+         return index;
+      }
+      int size = elements.size();
+      for( int i = 0; i < size; i++ ){
+         int j = last ? size - 1 - i : i;
+         Object element = elements.get( j );
+         if( element instanceof LazyNumber && element.equals( o ) ){
+            return j;
+         }
+      }
+      return -1;
+   }
+
    private Object processValue( Object value, JsonConfig jsonConfig ) {
       if( value != null ){
          JsonValueProcessor jsonValueProcessor = jsonConfig.findJsonValueProcessor( value.getClass() );
@@ -2295,4 +2621,316 @@ public final class JSONArray extends AbstractJSON implements JSON, List<Object>,
       }
       return _processValue( value, jsonConfig );
    }
-}
\ No newline at end of file
+
+   /**
+    * Keeps primitives as the elements, or copies them to a List of the
+    * ArrayListFactory of jsonConfig if it is not the default one.
+    */
+   private void setElements( PrimitiveElements primitives, JsonConfig jsonConfig ) {
+      if( jsonConfig.getArrayListFactory() == ArrayListFactory.ARRAY_LIST ){
+         this.elements = primitives;
+      }else{
+         this.elements.addAll( primitives );
+      }
+   }
+
+   /**
+    * The elements of a JSONArray whose text has not been parsed yet. The
+    * text is parsed on first use, then the JSONArray switches to the parsed
+    * elements.
+    */
+   private static final class LazyElements extends AbstractList<Object> {
+      private List<Object> elements;
+      private final JsonConfig jsonConfig;
+      private final JSONArray owner;
+      private final LazyText text;
+
+      LazyElements( JSONArray owner, LazyText text, JsonConfig jsonConfig ) {
+         this.owner = owner;
+         this.text = text;
+         this.jsonConfig = jsonConfig;
+      }
+
+      public void add( int index, Object element ) {
+         load().add( index, element );
+      }
+
+      public void clear() {
+         load().clear();
+      }
+
+      public Object get( int index ) {
+         return load().get( index );
+      }
+
+      public boolean isEmpty() {
+         return load().isEmpty();
+      }
+
+      public Iterator<Object> iterator() {
+         return load().iterator();
+      }
+
+      public ListIterator<Object> listIterator( int index ) {
+         return load().listIterator( index );
+      }
+
+      public Object remove( int index ) {
+         return load().remove( index );
+      }
+
+      public Object set( int index, Object element ) {
+         return load().set( index, element );
+      }
+
+      public int size() {
+         return load().size();
+      }
+
+      boolean isExact() {
+         return text.isExact( jsonConfig.getMergedExcludes() );
+      }
+
+      private List<Object> load() {
+         if( elements == null ){
+            elements = _fromJSONTokener( text.newTokener(), jsonConfig ).elements;
+            owner.elements = elements;
+         }
+         return elements;
+      }
+   }
+
+   /**
+    * The elements of a JSONArray built from a primitive array, kept unboxed.
+    * Elements are boxed when read through the List interface, the first
+    * change to the list moves them to an ArrayList that the JSONArray uses
+    * from then on.
+    */
+   private abstract static class PrimitiveElements extends AbstractList<Object> {
+      private List<Object> elements;
+      private boolean frozen;
+      private final JSONArray owner;
+
+      PrimitiveElements( JSONArray owner ) {
+         this.owner = owner;
+      }
+
+      public void add( int index, Object element ) {
+         unpack().add( index, element );
+      }
+
+      public void clear() {
+         unpack().clear();
+      }
+
+      public Object get( int index ) {
+         return elements != null ? elements.get( index ) : box( index );
+      }
+
+      public Object remove( int index ) {
+         return unpack().remove( index );
+      }
+
+      public Object set( int index, Object element ) {
+         return unpack().set( index, element );
+      }
+
+      public int size() {
+         return elements != null ? elements.size() : length();
+      }
+
+      abstract Object box( int index );
+
+      boolean booleanValue( int index ) {
+         throw new JSONException( "JSONArray[" + index + "] is not a Boolean." );
+      }
+
+      double doubleValue( int index ) {
+         throw new JSONException( "JSONArray[" + index + "] is not a number." );
+      }
+
+      int intValue( int index ) {
+         throw new JSONException( "JSONArray[" + index + "] is not a number." );
+      }
+
+      abstract int length();
+
+      long longValue( int index ) {
+         throw new JSONException( "JSONArray[" + index + "] is not a number." );
+      }
+
+      /**
+       * Returns true if other, of the same class, holds the same values.
+       */
+      abstract boolean sameValues( PrimitiveElements other );
+
+      /**
+       * Returns the JSON text of an element.
+       */
+      abstract String toString( int index );
+
+      void write( Writer writer, boolean canonical ) throws IOException {
+         int length = length();
+         writer.write( '[' );
+         for( int i = 0; i < length; i++ ){
+            if( i > 0 ){
+               writer.write( ',' );
+            }
+            String value = toString( i );
+            writer.write( canonical ? value.toLowerCase() : value );
+         }
+         writer.write( ']' );
+      }
+
+      private List<Object> unpack() {
+         if( frozen ){
+            throw new UnsupportedOperationException();
+         }
+         if( elements == null ){
+            elements = new ArrayList<Object>( this );
+            owner.elements = elements;
+         }
+         return elements;
+      }
+   }
+
+   private static final class BooleanElements extends PrimitiveElements {
+      private final boolean[] values;
+
+      BooleanElements( JSONArray owner, boolean[] values ) {
+         super( owner );
+         this.values = values;
+      }
+
+      Object box( int index ) {
+         return values[index] ? Boolean.TRUE : Boolean.FALSE;
+      }
+
+      boolean booleanValue( int index ) {
+         return values[index];
+      }
+
+      int length() {
+         return values.length;
+      }
+
+      boolean sameValues( PrimitiveElements other ) {
+         return Arrays.equals( values, ((BooleanElements) other).values );
+      }
+
+      String toString( int index ) {
+         return values[index] ? "true" : "false";
+      }
+   }
+
+   private static final class DoubleElements extends PrimitiveElements {
+      private final double[] values;
+
+      DoubleElements( JSONArray owner, double[] values ) {
+         super( owner );
+         this.values = values;
+      }
+
+      Object box( int index ) {
+         return new Double( values[index] );
+      }
+
+      double doubleValue( int index ) {
+         return values[index];
+      }
+
+      int intValue( int index ) {
+         return (int) values[index];
+      }
+
+      int length() {
+         return values.length;
+      }
+
+      long longValue( int index ) {
+         return (long) values[index];
+      }
+
+      boolean sameValues( PrimitiveElements other ) {
+         return Arrays.equals( values, ((DoubleElements) other).values );
+      }
+
+      String toString( int index ) {
+         return JSONUtils.doubleToString( values[index] );
+      }
+   }
+
+   private static final class IntElements extends PrimitiveElements {
+      private final int[] values;
+
+      IntElements( JSONArray owner, int[] values ) {
+         super( owner );
+         this.values = values;
+      }
+
+      Object box( int index ) {
+         return new Integer( values[index] );
+      }
+
+      double doubleValue( int index ) {
+         return values[index];
+      }
+
+      int intValue( int index ) {
+         return values[index];
+      }
+
+      int length() {
+         return values.length;
+      }
+
+      long longValue( int index ) {
+         return values[index];
+      }
+
+      boolean sameValues( PrimitiveElements other ) {
+         return Arrays.equals( values, ((IntElements) other).values );
+      }
+
+      String toString( int index ) {
+         return String.valueOf( values[index] );
+      }
+   }
+
+   private static final class LongElements extends PrimitiveElements {
+      private final long[] values;
+
+      LongElements( JSONArray owner, long[] values ) {
+         super( owner );
+         this.values = values;
+      }
+
+      Object box( int index ) {
+         return JSONUtils.transformNumber( new Long( values[index] ) );
+      }
+
+      double doubleValue( int index ) {
+         return values[index];
+      }
+
+      int intValue( int index ) {
+         return (int) values[index];
+      }
+
+      int length() {
+         return values.length;
+      }
+
+      long longValue( int index ) {
+         return values[index];
+      }
+
+      boolean sameValues( PrimitiveElements other ) {
+         return Arrays.equals( values, ((LongElements) other).values );
+      }
+
+      String toString( int index ) {
+         return String.valueOf( values[index] );
+      }
+   }
+}
@@ -49,22 +49,29 @@ import net.sf.json.processors.JsonVerifier;
 import net.sf.json.regexp.RegexpUtils;
 import net.sf.json.util.JSONTokener;
 import net.sf.json.util.JSONUtils;
+import net.sf.json.util.LazyText;
+import net.sf.json.util.ObjectMapFactory;
 import net.sf.json.util.PropertyFilter;
 import org.apache.commons.beanutils.DynaBean;
 import org.apache.commons.beanutils.DynaProperty;
 import org.apache.commons.beanutils.PropertyUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.beans.PropertyDescriptor;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
 
 /**
@@ -159,7 +166,11 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       }else if( object instanceof DynaBean ){
          return _fromDynaBean( (DynaBean) object, jsonConfig );
       }else if( object instanceof JSONTokener ){
-         return _fromJSONTokener( (JSONTokener) object, jsonConfig );
+         return _fromJSONTokenerLazily( (JSONTokener) object, jsonConfig );
+      }else if( object instanceof Reader ){
+         return _fromText( new JSONTokener( (Reader) object, JSONTokener.DEFAULT_BUFFER_SIZE ), jsonConfig );
+      }else if( object instanceof ByteBuffer ){
+         return _fromText( newTokener( (ByteBuffer) object ), jsonConfig );
       }else if( object instanceof JSONString ){
          return _fromJSONString( (JSONString) object, jsonConfig );
       }else if( object instanceof Map ){
@@ -168,7 +179,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          return _fromString( (String) object, jsonConfig );
       }else if( JSONUtils.isNumber( object ) || JSONUtils.isBoolean( object )
             || JSONUtils.isString( object ) ){
-         return new JSONObject();
+         return new JSONObject( jsonConfig );
       }else if( JSONUtils.isArray( object ) ){
          throw new JSONException( "'object' is an array. Use JSONArray instead" );
       }else{
@@ -176,6 +187,58 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       }
    }
 
+   /**
+    * Creates a JSONObject from a UTF-8 encoded file.<br>
+    * The file is memory mapped and parsed in place, so its text is never
+    * copied to the heap. Files larger than 2GB can't be mapped.
+    *
+    * @param file the source file
+    * @throws JSONException if the file can not be read or does not contain a
+    *         proper JSONObject.
+    */
+   public static JSONObject fromFile( File file ) {
+      return fromFile( file, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JSONObject from a UTF-8 encoded file.<br>
+    * The file is memory mapped and parsed in place, so its text is never
+    * copied to the heap. Files larger than 2GB can't be mapped.
+    *
+    * @param file the source file
+    * @throws JSONException if the file can not be read or does not contain a
+    *         proper JSONObject.
+    */
+   public static JSONObject fromFile( File file, JsonConfig jsonConfig ) {
+      return _fromText( newTokener( file ), jsonConfig );
+   }
+
+   /**
+    * Creates a JSONObject from a stream of encoded characters.<br>
+    * The stream is read through a buffer and is not closed.
+    *
+    * @param in the source stream
+    * @param charset the encoding of the stream
+    * @throws JSONException if the stream can not be read or does not contain a
+    *         proper JSONObject.
+    */
+   public static JSONObject fromObject( InputStream in, Charset charset ) {
+      return fromObject( in, charset, new JsonConfig() );
+   }
+
+   /**
+    * Creates a JSONObject from a stream of encoded characters.<br>
+    * The stream is read through a buffer and is not closed.
+    *
+    * @param in the source stream
+    * @param charset the encoding of the stream
+    * @throws JSONException if the stream can not be read or does not contain a
+    *         proper JSONObject.
+    */
+   public static JSONObject fromObject( InputStream in, Charset charset, JsonConfig jsonConfig ) {
+      return fromObject( new InputStreamReader( in, charset ), jsonConfig );
+   }
+
    /**
     * Creates a JSONDynaBean from a JSONObject.
     */
@@ -626,7 +689,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       }
 
       Collection exclusions = jsonConfig.getMergedExcludes();
-      JSONObject jsonObject = new JSONObject();
+      JSONObject jsonObject = new JSONObject( jsonConfig );
       try{
          PropertyDescriptor[] pds = PropertyUtils.getPropertyDescriptors(bean);
          PropertyFilter jsonPropertyFilter = jsonConfig.getJsonPropertyFilter();
@@ -722,7 +785,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          }
       }
 
-      JSONObject jsonObject = new JSONObject();
+      JSONObject jsonObject = new JSONObject( jsonConfig );
       try{
          DynaProperty[] props = bean.getDynaClass()
                .getDynaProperties();
@@ -789,7 +852,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
 
       JSONArray sa = object.names();
       Collection exclusions = jsonConfig.getMergedExcludes();
-      JSONObject jsonObject = new JSONObject();
+      JSONObject jsonObject = new JSONObject( jsonConfig );
       PropertyFilter jsonPropertyFilter = jsonConfig.getJsonPropertyFilter();
       for( Iterator i = sa.iterator(); i.hasNext(); ){
          String key = (String) i.next();
@@ -815,150 +878,37 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
    }
 
    private static JSONObject _fromJSONString( JSONString string, JsonConfig jsonConfig ) {
-      return _fromJSONTokener( new JSONTokener( string.toJSONString() ), jsonConfig );
+      return _fromText( new JSONTokener( string.toJSONString() ), jsonConfig );
    }
 
    private static JSONObject _fromJSONTokener( JSONTokener tokener, JsonConfig jsonConfig ) {
-      fireObjectStartEvent( jsonConfig );
-
-      try{
-         char c;
-         String key;
-         Object value;
-
-         if( tokener.matches( "null.*" ) ){
-            fireObjectEndEvent( jsonConfig );
-            return new JSONObject( true );
-         }
-
-         if( tokener.nextClean() != '{' ){
-            throw tokener.syntaxError( "A JSONObject text must begin with '{'" );
-         }
-
-         Collection exclusions = jsonConfig.getMergedExcludes();
-         PropertyFilter jsonPropertyFilter = jsonConfig.getJsonPropertyFilter();
-         JSONObject jsonObject = new JSONObject();
-         for( ;; ){
-            c = tokener.nextClean();
-            switch( c ){
-               case 0:
-                  throw tokener.syntaxError( "A JSONObject text must end with '}'" );
-               case '}':
-                  fireObjectEndEvent( jsonConfig );
-                  return jsonObject;
-               default:
-                  tokener.back();
-                  key = tokener.nextValue( jsonConfig )
-                        .toString();
-            }
-
-            /*
-             * The key is followed by ':'. We will also tolerate '=' or '=>'.
-             */
-
-            c = tokener.nextClean();
-            if( c == '=' ){
-               if( tokener.next() != '>' ){
-                  tokener.back();
-               }
-            }else if( c != ':' ){
-               throw tokener.syntaxError( "Expected a ':' after a key" );
-            }
-            Object v = tokener.nextValue( jsonConfig );
-            if( !JSONUtils.isFunctionHeader( v ) ){
-               if( exclusions.contains( key ) ){
-                  switch( tokener.nextClean() ){
-                     case ';':
-                     case ',':
-                        if( tokener.nextClean() == '}' ){
-                           fireObjectEndEvent( jsonConfig );
-                           return jsonObject;
-                        }
-                        tokener.back();
-                        break;
-                     case '}':
-                        fireObjectEndEvent( jsonConfig );
-                        return jsonObject;
-                     default:
-                        throw tokener.syntaxError( "Expected a ',' or '}'" );
-                  }
-                  continue;
-               }
-               if( jsonPropertyFilter == null || !jsonPropertyFilter.apply( tokener, key, v ) ){
-                     if( jsonObject.properties.containsKey( key ) ){
-                        jsonObject.accumulate( key, v, jsonConfig );
-                        firePropertySetEvent( key, v, true, jsonConfig );
-                     }else{
-                        jsonObject.element( key, v, jsonConfig );
-                        firePropertySetEvent( key, v, false, jsonConfig );
-                     }
-               }
-            }else{
-               // read params if any
-               String params = JSONUtils.getFunctionParams( (String) v );
-               // read function text
-               int i = 0;
-               StringBuffer sb = new StringBuffer();
-               for( ;; ){
-                  char ch = tokener.next();
-                  if( ch == 0 ){
-                     break;
-                  }
-                  if( ch == '{' ){
-                     i++;
-                  }
-                  if( ch == '}' ){
-                     i--;
-                  }
-                  sb.append( ch );
-                  if( i == 0 ){
-                     break;
-                  }
-               }
-               if( i != 0 ){
-                  throw tokener.syntaxError( "Unbalanced '{' or '}' on prop: " + v );
-               }
-               // trim '{' at start and '}' at end
-               String text = sb.toString();
-               text = text.substring( 1, text.length() - 1 )
-                     .trim();
-               value = new JSONFunction(
-                     (params != null) ? StringUtils.split( params, "," ) : null, text );
-               if( jsonPropertyFilter == null || !jsonPropertyFilter.apply( tokener, key, value ) ){
-                  if( jsonObject.properties.containsKey( key ) ){
-                     jsonObject.accumulate( key, value, jsonConfig );
-                     firePropertySetEvent( key, value, true, jsonConfig );
-                  }else{
-                     jsonObject.element( key, value, jsonConfig );
-                     firePropertySetEvent( key, value, false, jsonConfig );
-                  }
-               }
-            }
-
-            /*
-             * Pairs are separated by ','. We will also tolerate ';'.
-             */
+      return JSONParser.parseObject( tokener, jsonConfig );
+   }
 
-            switch( tokener.nextClean() ){
-               case ';':
-               case ',':
-                  if( tokener.nextClean() == '}' ){
-                     fireObjectEndEvent( jsonConfig );
-                     return jsonObject;
-                  }
-                  tokener.back();
-                  break;
-               case '}':
-                  fireObjectEndEvent( jsonConfig );
-                  return jsonObject;
-               default:
-                  throw tokener.syntaxError( "Expected a ',' or '}'" );
-            }
+   /**
+    * Returns a JSONObject that keeps its text and parses it on first use if
+    * jsonConfig asks for a lazy tree and tokener reads a String, otherwise
+    * parses it now.
+    */
+   private static JSONObject _fromJSONTokenerLazily( JSONTokener tokener, JsonConfig jsonConfig ) {
+      if( isLazyTree( jsonConfig ) ){
+         LazyText text = LazyText.skip( tokener, '{' );
+         if( text != null ){
+            return _fromLazyText( text, jsonConfig );
          }
-      }catch( JSONException jsone ){
-         fireErrorEvent( jsone, jsonConfig );
-         throw jsone;
       }
+      return _fromJSONTokener( tokener, jsonConfig );
+   }
+
+   /**
+    * Returns a JSONObject that parses text on first use.
+    */
+   static JSONObject _fromLazyText( LazyText text, JsonConfig jsonConfig ) {
+      // starts without a map of its own
+      JSONObject jsonObject = new JSONObject( true );
+      jsonObject.nullObject = false;
+      jsonObject.properties = new LazyProperties( jsonObject, text, jsonConfig );
+      return jsonObject;
    }
 
    private static JSONObject _fromMap( Map map, JsonConfig jsonConfig ) {
@@ -985,7 +935,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       }
 
       Collection exclusions = jsonConfig.getMergedExcludes();
-      JSONObject jsonObject = new JSONObject();
+      JSONObject jsonObject = new JSONObject( jsonConfig );
       PropertyFilter jsonPropertyFilter = jsonConfig.getJsonPropertyFilter();
       try{
          for( Iterator entries = map.entrySet()
@@ -1042,7 +992,17 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          fireObjectEndEvent( jsonConfig );
          return new JSONObject( true );
       }
-      return _fromJSONTokener( new JSONTokener( str ), jsonConfig );
+      return _fromText( new JSONTokener( str ), jsonConfig );
+   }
+
+   /**
+    * Parses a JSONObject from a tokener that holds a whole JSON text, which may
+    * not continue after it when jsonConfig is strict.
+    */
+   private static JSONObject _fromText( JSONTokener tokener, JsonConfig jsonConfig ) {
+      JSONObject jsonObject = _fromJSONTokenerLazily( tokener, jsonConfig );
+      JSONParser.end( tokener, jsonConfig );
+      return jsonObject;
    }
 
    /**
@@ -1085,7 +1045,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       boolean accumulated = false;
       if( value == null ){
          if( JSONUtils.isArray( type ) ){
-            value = new JSONArray();
+            value = new JSONArray( jsonConfig );
          }else if( JSONUtils.isNumber( type ) ){
             if( JSONUtils.isDouble( type ) ){
                value = new Double( 0 );
@@ -1106,7 +1066,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
             if( o instanceof JSONArray ){
                ((JSONArray) o).addString( (String) value );
             }else{
-               jsonObject.properties.put( key, new JSONArray().element( o )
+               jsonObject.properties.put( key, new JSONArray( jsonConfig ).element( o )
                      .addString( (String) value ) );
             }
          }else{
@@ -1131,6 +1091,18 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
 
    // ------------------------------------------------------
 
+   /** hashCode() of a frozen object, 0 until computed */
+   private int cachedHashCode;
+
+   /** toString() of a frozen object, null until computed */
+   private String cachedString;
+
+   /** rejects changes once set */
+   private boolean frozen;
+
+   /** true if the properties of a frozen object iterate in natural order */
+   private boolean sorted;
+
    /** identifies this object as null */
    private boolean nullObject;
 
@@ -1143,17 +1115,26 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
     * Construct an empty JSONObject.
     */
    public JSONObject() {
-      this.properties = new TreeMap();
+      this.properties = ObjectMapFactory.SORTED.newMap();
    }
 
    /**
     * Creates a JSONObject that is null.
     */
    public JSONObject( boolean isNull ) {
-      this();
+      this.properties = isNull ? Collections.EMPTY_MAP : ObjectMapFactory.SORTED.newMap();
       this.nullObject = isNull;
    }
 
+   /**
+    * Construct an empty JSONObject whose properties are kept in a Map created
+    * by the ObjectMapFactory of jsonConfig.
+    */
+   public JSONObject( JsonConfig jsonConfig ) {
+      this.properties = jsonConfig.getObjectMapFactory()
+            .newMap();
+   }
+
    /**
     * Accumulate values under a key. It is similar to the element method except
     * that if there is already an object stored under the key then a JSONArray
@@ -1477,6 +1458,32 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       return this;
    }
 
+   /**
+    * Put a key/value pair in the JSONObject, storing the JSON value as it is,
+    * without copying it or running it through JsonValueProcessors. If the
+    * value is null, then the key will be removed from the JSONObject if it is
+    * present.<br>
+    * The value is shared with anyone else holding it, changes made to it
+    * through either side are seen by both. It must not contain this object.
+    *
+    * @param key A key string.
+    * @param value A JSONObject, JSONArray or JSONNull.
+    * @return this.
+    * @throws JSONException If the key is null or this is a null object.
+    */
+   public JSONObject elementAdopt( String key, JSON value ) {
+      verifyIsNull();
+      if( key == null ){
+         throw new JSONException( "Null key." );
+      }
+      if( value != null ){
+         this.properties.put( key, value );
+      }else{
+         remove( key );
+      }
+      return this;
+   }
+
    /**
     * Put a key/value pair in the JSONObject, but only if the key and the value
     * are both non-null.
@@ -1541,84 +1548,41 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          return false;
       }
 
-      for( Iterator keys = properties.keySet()
-            .iterator(); keys.hasNext(); ){
-         String key = (String) keys.next();
-         if( !other.properties.containsKey( key ) ){
+      for( Iterator entries = properties.entrySet()
+            .iterator(); entries.hasNext(); ){
+         Map.Entry entry = (Map.Entry) entries.next();
+         Object o2 = other.properties.get( entry.getKey() );
+         if( o2 == null || !valuesEqual( entry.getValue(), o2 ) ){
             return false;
          }
-         Object o1 = properties.get( key );
-         Object o2 = other.properties.get( key );
-
-         if( JSONNull.getInstance()
-               .equals( o1 ) ){
-            if( JSONNull.getInstance()
-                  .equals( o2 ) ){
-               continue;
-            }else{
-               return false;
-            }
-         }else{
-            if( JSONNull.getInstance()
-                  .equals( o2 ) ){
-               return false;
-            }
-         }
+      }
+      return true;
+   }
 
-         if( o1 instanceof String && o2 instanceof JSONFunction ){
-            if( !o1.equals( String.valueOf( o2 ) ) ){
-               return false;
-            }
-         }else if( o1 instanceof JSONFunction && o2 instanceof String ){
-            if( !o2.equals( String.valueOf( o1 ) ) ){
-               return false;
-            }
-         }else if( o1 instanceof JSONObject && o2 instanceof JSONObject ){
-            if( !o1.equals( o2 ) ){
-               return false;
-            }
-         }else if( o1 instanceof JSONArray && o2 instanceof JSONArray ){
-            if( !o1.equals( o2 ) ){
-               return false;
-            }
-         }else if( o1 instanceof JSONFunction && o2 instanceof JSONFunction ){
-            if( !o1.equals( o2 ) ){
-               return false;
-            }
-         }else{
-            if( o1 instanceof String ){
-               if( !o1.equals( String.valueOf( o2 ) ) ){
-                  return false;
-               }
-            }else if( o2 instanceof String ){
-               if( !o2.equals( String.valueOf( o1 ) ) ){
-                  return false;
-               }
-            }else{
-               Morpher m1 = JSONUtils.getMorpherRegistry()
-                     .getMorpherFor( o1.getClass() );
-               Morpher m2 = JSONUtils.getMorpherRegistry()
-                     .getMorpherFor( o2.getClass() );
-               if( m1 != null && m1 != IdentityObjectMorpher.getInstance() ){
-                  if( !o1.equals( JSONUtils.getMorpherRegistry()
-                        .morph( o1.getClass(), o2 ) ) ){
-                     return false;
-                  }
-               }else if( m2 != null && m2 != IdentityObjectMorpher.getInstance() ){
-                  if( !JSONUtils.getMorpherRegistry()
-                        .morph( o1.getClass(), o1 )
-                        .equals( o2 ) ){
-                     return false;
-                  }
-               }else{
-                  if( !o1.equals( o2 ) ){
-                     return false;
-                  }
-               }
-            }
+   /**
+    * Makes this object and every JSONObject and JSONArray in it immutable.
+    * Methods that change them throw an UnsupportedOperationException from
+    * then on.<br>
+    * A frozen tree computes its hashCode() and toString() once, and may be
+    * read by several threads at the same time once it has been published
+    * safely, for example through a final or volatile field.
+    *
+    * @return this object.
+    */
+   public JSONObject freeze() {
+      if( frozen ){
+         return this;
+      }
+      if( !isNullObject() ){
+         for( Iterator values = this.properties.values()
+               .iterator(); values.hasNext(); ){
+            freeze( values.next() );
          }
+         sorted = ObjectMapFactory.isSorted( this.properties );
+         this.properties = Collections.unmodifiableMap( this.properties );
       }
-      return true;
+      frozen = true;
+      return this;
    }
 
    public Object get( Object key ) {
@@ -1788,6 +1752,9 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
    }
 
    public int hashCode() {
+      if( cachedHashCode != 0 ){
+         return cachedHashCode;
+      }
       int hashcode = 19;
       if( isNullObject() ){
          return hashcode + JSONNull.getInstance()
@@ -1800,6 +1767,9 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          Object value = entry.getValue();
          hashcode += key.hashCode() + JSONUtils.hashCode( value );
       }
+      if( frozen ){
+         cachedHashCode = hashcode;
+      }
       return hashcode;
    }
 
@@ -1812,6 +1782,15 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       return this.properties.isEmpty();
    }
 
+   /**
+    * Returns true if this object has been frozen.
+    *
+    * @see #freeze()
+    */
+   public boolean isFrozen() {
+      return frozen;
+   }
+
    /**
     * Returs if this object is a null JSONObject.
     */
@@ -2054,6 +2033,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
    }
 
    public void putAll( Map map, JsonConfig jsonConfig ) {
+      verifyIsNull();
       if( map instanceof JSONObject ){
          for( Iterator entries = map.entrySet()
                .iterator(); entries.hasNext(); ){
@@ -2137,20 +2117,32 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          return JSONNull.getInstance()
                .toString();
       }
+      if( isVerbatim() ){
+         return ((LazyProperties) this.properties).text.toString();
+      }
+      if( cachedString != null ){
+         return cachedString;
+      }
       try{
-         Iterator keys = keys();
+         Iterator entries = this.properties.entrySet()
+               .iterator();
          StringBuffer sb = new StringBuffer( "{" );
 
-         while( keys.hasNext() ){
+         while( entries.hasNext() ){
             if( sb.length() > 1 ){
                sb.append( ',' );
             }
-            Object o = keys.next();
-            sb.append( JSONUtils.quote( o.toString() ) );
+            Map.Entry entry = (Map.Entry) entries.next();
+            sb.append( JSONUtils.quote( entry.getKey()
+                  .toString() ) );
             sb.append( ':' );
-            sb.append( JSONUtils.valueToString( this.properties.get( o ) ) );
+            sb.append( JSONUtils.valueToString( entry.getValue() ) );
          }
          sb.append( '}' );
+         if( frozen ){
+            cachedString = sb.toString();
+            return cachedString;
+         }
          return sb.toString();
       }catch( Exception e ){
          return null;
@@ -2249,6 +2241,60 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       return Collections.unmodifiableCollection( properties.values() );
    }
 
+   /**
+    * Returns a frozen JSONObject with the properties of this one and key set
+    * to value. If the value is null the key is removed instead.<br>
+    * This object is frozen and left as it is. The new object shares its
+    * values with this one and, once this one was made by with() or
+    * without(), the tree that holds them too, so every version costs
+    * O(log n) instead of a full copy. The keys of the new object are in
+    * natural order.
+    *
+    * @param key A key string.
+    * @param value An object which is the value.
+    * @return a new JSONObject.
+    * @throws JSONException If the key is null, this is a null object or the
+    *         value is an invalid number.
+    */
+   public JSONObject with( String key, Object value ) {
+      return with( key, value, new JsonConfig() );
+   }
+
+   /**
+    * Returns a frozen JSONObject with the properties of this one and key set
+    * to value, converted with jsonConfig. If the value is null the key is
+    * removed instead.
+    *
+    * @see #with(String, Object)
+    */
+   public JSONObject with( String key, Object value, JsonConfig jsonConfig ) {
+      verifyIsNull();
+      if( key == null ){
+         throw new JSONException( "Null key." );
+      }
+      if( value == null ){
+         return without( key );
+      }
+      freeze();
+      if( !isFrozen( value ) ){
+         value = freeze( processValue( key, value, jsonConfig ) );
+      }
+      return newFrozen( PersistentTreeMap.of( this.properties )
+            .with( key, value ) );
+   }
+
+   /**
+    * Returns a frozen JSONObject with the properties of this one except key.
+    *
+    * @see #with(String, Object)
+    */
+   public JSONObject without( String key ) {
+      verifyIsNull();
+      freeze();
+      return newFrozen( PersistentTreeMap.of( this.properties )
+            .without( key ) );
+   }
+
    /**
     * Write the contents of the JSONObject as JSON text to a writer. For
     * compactness, no whitespace is added.
@@ -2263,19 +2309,31 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
           writer.write( JSONNull.getInstance().toString() );
            return;
        }
+       if( visitor == NORMAL && isVerbatim() ){
+          ((LazyProperties) this.properties).text.write( writer );
+          return;
+       }
+       if( visitor == NORMAL && cachedString != null ){
+          writer.write( cachedString );
+          return;
+       }
 
        boolean b = false;
-       Iterator keys = keys();
+       Map properties = visitor == NORMAL || isSorted() ? this.properties
+             : new TreeMap( this.properties );
+       Iterator entries = properties.entrySet()
+             .iterator();
        writer.write( '{' );
 
-       while( keys.hasNext() ){
+       while( entries.hasNext() ){
           if( b ){
              writer.write( ',' );
           }
-          Object k = keys.next();
-          writer.write( JSONUtils.quote( k.toString() ) );
+          Map.Entry entry = (Map.Entry) entries.next();
+          writer.write( JSONUtils.quote( entry.getKey()
+                .toString() ) );
           writer.write( ':' );
-          Object v = this.properties.get( k );
+          Object v = entry.getValue();
           if( v instanceof JSON ){
               visitor.on((JSON)v,writer);
           }else{
@@ -2286,6 +2344,25 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
        writer.write( '}' );
    }
 
+   boolean isUnparsed() {
+      return this.properties instanceof LazyProperties;
+   }
+
+   /**
+    * Returns true if this JSONObject has not been parsed yet and its text can
+    * be written as it is, see LazyText.isExact().
+    */
+   boolean isVerbatim() {
+      return isUnparsed() && ((LazyProperties) this.properties).isExact();
+   }
+
+   /**
+    * Puts a value read by JSONParser as it is.
+    */
+   void putParsed( String key, Object value ) {
+      this.properties.put( key, value );
+   }
+
    private JSONObject _accumulate( String key, Object value, JsonConfig jsonConfig ) {
       if( isNullObject() ){
          throw new JSONException( "Can't accumulate on null object" );
@@ -2298,7 +2375,7 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          if( o instanceof JSONArray ){
             ((JSONArray) o).element( value, jsonConfig );
          }else{
-            setInternal( key, new JSONArray().element( o )
+            setInternal( key, new JSONArray( jsonConfig ).element( o )
                   .element( value, jsonConfig ), jsonConfig );
          }
       }
@@ -2362,6 +2439,29 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
       return this;
    }
 
+   /**
+    * Returns true if the properties iterate in natural order, so that
+    * writeCanonical() need not sort them.
+    */
+   private boolean isSorted() {
+      if( frozen ){
+         return sorted;
+      }
+      Map properties = this.properties instanceof LazyProperties
+            ? ((LazyProperties) this.properties).load() : this.properties;
+      return ObjectMapFactory.isSorted( properties );
+   }
+
+   private static JSONObject newFrozen( Map properties ) {
+      // starts without a map of its own
+      JSONObject jsonObject = new JSONObject( true );
+      jsonObject.nullObject = false;
+      jsonObject.properties = properties;
+      jsonObject.frozen = true;
+      jsonObject.sorted = properties instanceof PersistentTreeMap;
+      return jsonObject;
+   }
+
    private Object processValue( Object value, JsonConfig jsonConfig ) {
       if( value != null ){
          JsonValueProcessor processor = jsonConfig.findJsonValueProcessor( value.getClass() );
@@ -2411,4 +2511,74 @@ public final class JSONObject extends AbstractJSON implements JSON, Map<String,O
          throw new JSONException( "null object" );
       }
    }
-}
\ No newline at end of file
+
+   /**
+    * The properties of a JSONObject whose text has not been parsed yet. The
+    * text is parsed on first use, then the JSONObject switches to the parsed
+    * properties.
+    */
+   private static final class LazyProperties extends AbstractMap {
+      private final JsonConfig jsonConfig;
+      private final JSONObject owner;
+      private Map properties;
+      private final LazyText text;
+
+      LazyProperties( JSONObject owner, LazyText text, JsonConfig jsonConfig ) {
+         this.owner = owner;
+         this.text = text;
+         this.jsonConfig = jsonConfig;
+      }
+
+      public void clear() {
+         load().clear();
+      }
+
+      public boolean containsKey( Object key ) {
+         return load().containsKey( key );
+      }
+
+      public Set entrySet() {
+         return load().entrySet();
+      }
+
+      public Object get( Object key ) {
+         return load().get( key );
+      }
+
+      public boolean isEmpty() {
+         return load().isEmpty();
+      }
+
+      public Set keySet() {
+         return load().keySet();
+      }
+
+      public Object put( Object key, Object value ) {
+         return load().put( key, value );
+      }
+
+      public Object remove( Object key ) {
+         return load().remove( key );
+      }
+
+      public int size() {
+         return load().size();
+      }
+
+      public Collection values() {
+         return load().values();
+      }
+
+      boolean isExact() {
+         return text.isExact( jsonConfig.getMergedExcludes() );
+      }
+
+      private Map load() {
+         if( properties == null ){
+            properties = _fromJSONTokener( text.newTokener(), jsonConfig ).properties;
+            owner.properties = properties;
+         }
+         return properties;
+      }
+   }
+}
@@ -53,6 +53,8 @@ public class AllTests extends TestSuite {
       suite.addTest( new TestSuite( TestJSONArrayEvents.class ) );
       suite.addTest( new TestSuite( TestJSONObjectAsMap.class ) );
       suite.addTest( new TestSuite( TestJSONArrayAsList.class ) );
+      suite.addTest( new TestSuite( TestPersistentTreeMap.class ) );
+      suite.addTest( new TestSuite( TestPersistentVector.class ) );
 
       suite.addTest( new TestSuite( TestUserSubmitted.class ) );
 
@@ -15,14 +15,19 @@
  */
 package net.sf.json;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.StringWriter;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.TestCase;
 import net.sf.ezmorph.MorphUtils;
@@ -30,6 +35,7 @@ import net.sf.ezmorph.bean.MorphDynaBean;
 import net.sf.ezmorph.bean.MorphDynaClass;
 import net.sf.json.sample.ArrayJSONStringBean;
 import net.sf.json.sample.BeanA;
+import net.sf.json.util.ArrayListFactory;
 import net.sf.json.util.JSONTokener;
 
 import org.apache.commons.beanutils.DynaBean;
@@ -46,6 +52,33 @@ public class TestJSONArray extends TestCase {
       super( testName );
    }
 
+   public void testArrayListFactory() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setArrayListFactory( ArrayListFactory.COPY_ON_WRITE );
+      JSONArray jsonArray = JSONArray.fromObject( new int[] { 1, 2 }, jsonConfig );
+      Iterator elements = jsonArray.iterator();
+      jsonArray.element( 3 );
+      assertEquals( new Integer( 1 ), elements.next() );
+      assertEquals( new Integer( 2 ), elements.next() );
+      assertFalse( elements.hasNext() );
+      assertEquals( "[1,2,3]", jsonArray.toString() );
+
+      jsonConfig.setLazyTree( true );
+      jsonArray = JSONArray.fromObject( "[[1],{\"a\":[2]}]", jsonConfig );
+      assertFalse( jsonArray.isUnparsed() );
+      elements = jsonArray.getJSONObject( 1 )
+            .getJSONArray( "a" )
+            .iterator();
+      jsonArray.getJSONObject( 1 )
+            .getJSONArray( "a" )
+            .clear();
+      assertEquals( new Integer( 2 ), elements.next() );
+      assertEquals( "[[1],{\"a\":[]}]", jsonArray.toString() );
+
+      jsonConfig.setArrayListFactory( null );
+      assertSame( ArrayListFactory.ARRAY_LIST, jsonConfig.getArrayListFactory() );
+   }
+
    public void testConstructor_Collection() {
       List l = new ArrayList();
       l.add( Boolean.TRUE );
@@ -661,6 +694,34 @@ public class TestJSONArray extends TestCase {
       Assertions.assertEquals( "", array.getString( 0 ) );
    }
 
+   public void testElementAdopt() {
+      JSONArray child = JSONArray.fromObject( "[1]" );
+      JSONArray array = new JSONArray().elementAdopt( child )
+            .elementAdopt( null );
+      assertSame( child, array.get( 0 ) );
+      child.element( 2 );
+      assertEquals( "[[1,2],null]", array.toString() );
+   }
+
+   public void testFromFile() throws Exception {
+      File file = File.createTempFile( "json", ".json" );
+      file.deleteOnExit();
+      FileOutputStream out = new FileOutputStream( file );
+      out.write( "[1,\"j\u00e9son\",{\"a\":[true]}]".getBytes( "UTF-8" ) );
+      out.close();
+      JSONArray actual = JSONArray.fromFile( file );
+      assertEquals( JSONArray.fromObject( "[1,\"j\u00e9son\",{\"a\":[true]}]" ), actual );
+   }
+
+   public void testFromFile_missing() {
+      try{
+         JSONArray.fromFile( new File( "does/not/exist.json" ) );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
    public void testFromObject_BigDecimal() {
       JSONArray actual = JSONArray.fromObject( new BigDecimal( "12345678901234567890.1234567890" ) );
       assertTrue( actual.get( 0 ) instanceof BigDecimal );
@@ -739,6 +800,45 @@ public class TestJSONArray extends TestCase {
       Assertions.assertEquals( expected, actual );
    }
 
+   public void testFreeze() {
+      JSONArray jsonArray = JSONArray.fromObject( "[1,{\"a\":[2]},[3]]" );
+      int hashCode = jsonArray.hashCode();
+      assertSame( jsonArray, jsonArray.freeze() );
+      assertTrue( jsonArray.isFrozen() );
+      assertTrue( jsonArray.getJSONObject( 1 )
+            .isFrozen() );
+      assertTrue( jsonArray.getJSONArray( 2 )
+            .isFrozen() );
+      assertEquals( hashCode, jsonArray.hashCode() );
+      assertSame( jsonArray.toString(), jsonArray.toString() );
+      assertEquals( JSONArray.fromObject( "[1,{\"a\":[2]},[3]]" ), jsonArray );
+      try{
+         jsonArray.element( 4 );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      try{
+         jsonArray.getJSONArray( 2 )
+               .iterator()
+               .remove();
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+
+      jsonArray = JSONArray.fromObject( new int[] { 1, 2 } )
+            .freeze();
+      assertEquals( 2, jsonArray.getInt( 1 ) );
+      try{
+         jsonArray.set( 0, new Integer( 5 ) );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      assertEquals( "[1,2]", jsonArray.toString() );
+   }
+
    public void testGet_exception() {
       try{
          JSONArray jsonArray = JSONArray.fromObject( "[]" );
@@ -928,6 +1028,73 @@ public class TestJSONArray extends TestCase {
       }
    }
 
+   public void testLazyTree() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyTree( true );
+      jsonConfig.setStrict( true );
+      String text = "[ 1 , [ 2 ] , { \"a\" : 3 } ]";
+      JSONArray jsonArray = JSONArray.fromObject( text, jsonConfig );
+      assertTrue( jsonArray.isUnparsed() );
+      assertEquals( "[1,[2],{\"a\":3}]", jsonArray.toString() );
+      assertEquals( 3, jsonArray.size() );
+      assertFalse( jsonArray.isUnparsed() );
+      assertTrue( jsonArray.getJSONArray( 1 )
+            .isUnparsed() );
+      assertEquals( "[1,[2],{\"a\":3}]", jsonArray.toString() );
+      assertEquals( 3, jsonArray.getJSONObject( 2 )
+            .getInt( "a" ) );
+      assertEquals( JSONArray.fromObject( text ), jsonArray );
+      try{
+         JSONArray.fromObject( "[[1 2]]", jsonConfig );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testMaxDepth() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setMaxDepth( 3 );
+      assertEquals( 1, JSONArray.fromObject( "[[[1]],{\"a\":[]}]", jsonConfig )
+            .getJSONArray( 0 )
+            .getJSONArray( 0 )
+            .getInt( 0 ) );
+      try{
+         JSONArray.fromObject( "[[[[1]]]]", jsonConfig );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testMaxDepth_deep() {
+      int depth = 100000;
+      StringBuffer sb = new StringBuffer();
+      for( int i = 0; i < depth; i++ ){
+         sb.append( '[' );
+      }
+      sb.append( "true" );
+      for( int i = 0; i < depth; i++ ){
+         sb.append( ",1]" );
+      }
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setMaxDepth( depth );
+      JSONArray jsonArray = JSONArray.fromObject( sb.toString(), jsonConfig );
+      for( int i = 1; i < depth; i++ ){
+         assertEquals( 2, jsonArray.size() );
+         jsonArray = jsonArray.getJSONArray( 0 );
+      }
+      assertTrue( jsonArray.getBoolean( 0 ) );
+
+      jsonConfig.setMaxDepth( depth - 1 );
+      try{
+         JSONArray.fromObject( sb.toString(), jsonConfig );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
    public void testOptionalGet() {
       Object[] params = new Object[] { new JSONArray(), JSONObject.fromObject( "{\"int\":1}" ) };
       JSONArray jsonArray = JSONArray.fromObject( params );
@@ -947,6 +1114,160 @@ public class TestJSONArray extends TestCase {
       assertEquals( "json", jsonArray.optString( 3, "json" ) );
    }
 
+   public void testPrimitiveArray() throws Exception {
+      int[] ints = { 1, -2, 3 };
+      JSONArray jsonArray = JSONArray.fromObject( ints );
+      ints[0] = 9;
+      assertEquals( 1, jsonArray.getInt( 0 ) );
+      assertEquals( -2L, jsonArray.getLong( 1 ) );
+      assertEquals( new Integer( 3 ), jsonArray.get( 2 ) );
+      assertEquals( "[1,-2,3]", jsonArray.toString() );
+      assertEquals( JSONArray.fromObject( "[1,-2,3]" ), jsonArray );
+      jsonArray.element( "x" );
+      assertEquals( "[1,-2,3,\"x\"]", jsonArray.toString() );
+
+      jsonArray = JSONArray.fromObject( new long[] { 1, 1L << 40 } );
+      assertEquals( new Integer( 1 ), jsonArray.get( 0 ) );
+      assertEquals( new Long( 1L << 40 ), jsonArray.get( 1 ) );
+      assertEquals( 1L << 40, jsonArray.getLong( 1 ) );
+
+      jsonArray = JSONArray.fromObject( new double[] { 1, 2.5, 1e20 } );
+      assertEquals( 2.5d, jsonArray.getDouble( 1 ), 0d );
+      assertEquals( 2, jsonArray.getInt( 1 ) );
+      assertEquals( JSONArray.fromObject( new Object[] { new Double( 1 ), new Double( 2.5 ),
+            new Double( 1e20 ) } )
+            .toString(), jsonArray.toString() );
+      StringWriter writer = new StringWriter();
+      jsonArray.writeCanonical( writer );
+      assertEquals( "[1,2.5,1.0e20]", writer.toString() );
+      jsonArray.set( 0, "a" );
+      assertEquals( "a", jsonArray.getString( 0 ) );
+      assertEquals( 2.5d, jsonArray.getDouble( 1 ), 0d );
+
+      jsonArray = JSONArray.fromObject( new boolean[] { true, false } );
+      assertTrue( jsonArray.getBoolean( 0 ) );
+      assertEquals( Boolean.FALSE, jsonArray.get( 1 ) );
+      assertEquals( "[true,false]", jsonArray.toString() );
+      try{
+         jsonArray.getInt( 0 );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+      jsonArray.remove( 0 );
+      assertEquals( "[false]", jsonArray.toString() );
+
+      try{
+         JSONArray.fromObject( new double[] { 1, Double.NaN } );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testParseParallel() throws Exception {
+      StringBuffer sb = new StringBuffer( "[" );
+      for( int i = 0; i < 20000; i++ ){
+         sb.append( "{\"id\":" )
+               .append( i )
+               .append( ",\"text\":\"a,b]\",\"list\":[1,,2]}," );
+         if( i % 1000 == 0 ){
+            sb.append( ",'x'," );
+         }
+      }
+      sb.append( "true]" );
+      String source = sb.toString();
+      ExecutorService executor = Executors.newFixedThreadPool( 4 );
+      try{
+         JSONArray expected = JSONArray.fromObject( source );
+         JSONArray actual = JSONArray.parseParallel( source, new JsonConfig(), executor );
+         assertEquals( expected.size(), actual.size() );
+         assertEquals( expected, actual );
+      }finally{
+         executor.shutdown();
+      }
+   }
+
+   public void testParseParallel_error() throws Exception {
+      StringBuffer sb = new StringBuffer( "[" );
+      for( int i = 0; i < 20000; i++ ){
+         sb.append( "{\"id\":" )
+               .append( i )
+               .append( "}," );
+      }
+      sb.append( "{\"id\" 1}]" );
+      ExecutorService executor = Executors.newFixedThreadPool( 2 );
+      try{
+         JSONArray.parseParallel( sb.toString(), new JsonConfig(), executor );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }finally{
+         executor.shutdown();
+      }
+   }
+
+   public void testParseParallel_mismatch() throws Exception {
+      StringBuffer sb = new StringBuffer( "[" );
+      for( int i = 0; i < 20000; i++ ){
+         sb.append( "{\"id\":" )
+               .append( i )
+               .append( "}," );
+      }
+      String[] ends = { "true}", "{\"id\":[1}]" };
+      ExecutorService executor = Executors.newFixedThreadPool( 2 );
+      try{
+         for( int i = 0; i < ends.length; i++ ){
+            try{
+               JSONArray.parseParallel( sb + ends[i], new JsonConfig(), executor );
+               fail( "Expected a JSONException for " + ends[i] );
+            }catch( JSONException expected ){
+               // ok
+            }
+         }
+      }finally{
+         executor.shutdown();
+      }
+   }
+
+   public void testParseParallel_small() throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool( 2 );
+      try{
+         assertEquals( JSONArray.fromObject( "[1,/* c */2]" ), JSONArray.parseParallel(
+               "[1,/* c */2]", new JsonConfig(), executor ) );
+      }finally{
+         executor.shutdown();
+      }
+   }
+
+   public void testParseParallel_strict() throws Exception {
+      StringBuffer sb = new StringBuffer( "[" );
+      for( int i = 0; i < 20000; i++ ){
+         sb.append( "{\"id\":" )
+               .append( i )
+               .append( "}," );
+      }
+      sb.append( "1]" );
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setStrict( true );
+      String[] texts = { sb + " x", "\u2028" + sb, sb + "\u00a0" };
+      ExecutorService executor = Executors.newFixedThreadPool( 2 );
+      try{
+         assertEquals( 20001, JSONArray.parseParallel( " " + sb + "\r\n", jsonConfig, executor )
+               .size() );
+         for( int i = 0; i < texts.length; i++ ){
+            try{
+               JSONArray.parseParallel( texts[i], jsonConfig, executor );
+               fail( "Expected a JSONException for text " + i );
+            }catch( JSONException expected ){
+               // ok
+            }
+         }
+      }finally{
+         executor.shutdown();
+      }
+   }
+
    public void testToArray_bean_element() {
       BeanA[] expected = new BeanA[] { new BeanA() };
       JSONArray jsonArray = JSONArray.fromObject( expected );
@@ -1379,6 +1700,34 @@ public class TestJSONArray extends TestCase {
       Assertions.assertEquals( expected, actual );
    }
 
+   public void testWith() {
+      JSONArray v1 = JSONArray.fromObject( "[1,{\"a\":2}]" );
+      JSONArray v2 = v1.with( 0, "x" );
+      JSONArray v3 = v2.with( 3, new Integer( 4 ) );
+      assertTrue( v1.isFrozen() );
+      assertEquals( "[1,{\"a\":2}]", v1.toString() );
+      assertEquals( "[\"x\",{\"a\":2}]", v2.toString() );
+      assertEquals( "[\"x\",{\"a\":2},null,4]", v3.toString() );
+      assertSame( v1.getJSONObject( 1 ), v3.getJSONObject( 1 ) );
+      assertEquals( JSONArray.fromObject( v3.toString() ), v3 );
+      try{
+         v3.element( 5 );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      try{
+         v3.with( -1, "y" );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+
+      JSONArray numbers = JSONArray.fromObject( new int[] { 1, 2 } )
+            .with( 1, new Integer( 3 ) );
+      assertEquals( 3, numbers.getInt( 1 ) );
+   }
+
    public void testWrite() throws IOException {
       JSONArray jsonArray = JSONArray.fromObject( "[[],{},1,true,\"json\"]" );
       StringWriter sw = new StringWriter();
@@ -109,10 +109,40 @@ public class TestJSONArrayEqualsHashCodeCompareTo extends TestCase {
       assertFalse( strings.equals( null ) );
    }
 
+   public void testEquals_numbers() {
+      JSONArray ints = new JSONArray().element( 1 )
+            .element( 2 );
+      assertTrue( ints.equals( new JSONArray().element( 1L )
+            .element( Long.valueOf( "2" ) ) ) );
+      assertFalse( ints.equals( new JSONArray().element( 1 )
+            .element( 3L ) ) );
+      assertFalse( new JSONArray().element( 1L << 32 )
+            .element( 2 )
+            .equals( new JSONArray().element( 0 )
+                  .element( 2 ) ) );
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyNumbers( true );
+      assertTrue( ints.equals( JSONArray.fromObject( "[1,2]", jsonConfig ) ) );
+      assertTrue( JSONArray.fromObject( "[1,2]", jsonConfig )
+            .equals( ints ) );
+   }
+
    public void testEquals_object() {
       assertFalse( strings.equals( new Object() ) );
    }
 
+   public void testEquals_primitive_arrays() {
+      JSONArray ints = JSONArray.fromObject( new int[] { 1, 2, 3 } );
+      assertTrue( ints.equals( JSONArray.fromObject( new int[] { 1, 2, 3 } ) ) );
+      assertTrue( ints.equals( JSONArray.fromObject( new long[] { 1, 2, 3 } ) ) );
+      assertTrue( ints.equals( JSONArray.fromObject( "[1,2,3]" ) ) );
+      assertFalse( ints.equals( JSONArray.fromObject( new int[] { 1, 2, 4 } ) ) );
+      assertTrue( JSONArray.fromObject( new double[] { 1.5, 2 } )
+            .equals( JSONArray.fromObject( new double[] { 1.5, 2 } ) ) );
+      assertFalse( JSONArray.fromObject( new boolean[] { true } )
+            .equals( JSONArray.fromObject( new boolean[] { false } ) ) );
+   }
+
    public void testEquals_same_object() {
       assertTrue( strings.equals( strings ) );
    }
@@ -26,12 +26,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import junit.framework.TestCase;
 import net.sf.ezmorph.MorphUtils;
 import net.sf.ezmorph.bean.MorphDynaBean;
 import net.sf.ezmorph.bean.MorphDynaClass;
 import net.sf.ezmorph.test.ArrayAssertions;
+import net.sf.json.processors.JsonValueProcessor;
 import net.sf.json.sample.BeanA;
 import net.sf.json.sample.BeanB;
 import net.sf.json.sample.BeanC;
@@ -51,10 +53,12 @@ import net.sf.json.sample.PrimitiveBean;
 import net.sf.json.sample.PropertyBean;
 import net.sf.json.sample.TransientBean;
 import net.sf.json.sample.ValueBean;
+import net.sf.json.util.ArrayListFactory;
 import net.sf.json.util.CycleDetectionStrategy;
 import net.sf.json.util.JSONTokener;
 import net.sf.json.util.JSONUtils;
 import net.sf.json.util.JavaIdentifierTransformer;
+import net.sf.json.util.ObjectMapFactory;
 import net.sf.json.util.PropertyFilter;
 
 import org.apache.commons.beanutils.PropertyUtils;
@@ -92,6 +96,42 @@ public class TestJSONObject extends TestCase {
       }
    }
 
+   public void testConcurrentObjectMapFactory() throws Exception {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setObjectMapFactory( ObjectMapFactory.CONCURRENT );
+      jsonConfig.setArrayListFactory( ArrayListFactory.COPY_ON_WRITE );
+      final JSONObject jsonObject = JSONObject.fromObject( "{\"b\":{\"c\":1},\"a\":[1]}",
+            jsonConfig );
+      Thread[] threads = new Thread[4];
+      for( int t = 0; t < threads.length; t++ ){
+         final int offset = t;
+         threads[t] = new Thread(){
+            public void run() {
+               for( int i = 0; i < 200; i++ ){
+                  jsonObject.element( "k" + (i * 4 + offset), i );
+                  jsonObject.getJSONArray( "a" )
+                        .element( i );
+                  JSONObject.fromObject( jsonObject.toString() );
+               }
+            }
+         };
+         threads[t].start();
+      }
+      for( int t = 0; t < threads.length; t++ ){
+         threads[t].join();
+      }
+      assertEquals( 802, jsonObject.size() );
+      assertEquals( 801, jsonObject.getJSONArray( "a" )
+            .size() );
+      assertEquals( 1, jsonObject.getJSONObject( "b" )
+            .getInt( "c" ) );
+      assertEquals( "a", jsonObject.keys()
+            .next() );
+      StringWriter writer = new StringWriter();
+      jsonObject.writeCanonical( writer );
+      assertEquals( jsonObject.toString(), writer.toString() );
+   }
+
    public void testConstructor_Object__nullJSONObject() {
       JSONObject jsonObject = JSONObject.fromObject( (JSONObject) null );
       assertTrue( jsonObject.isNullObject() );
@@ -368,6 +408,24 @@ public class TestJSONObject extends TestCase {
       }
    }
 
+   public void testElementAdopt() {
+      JSONObject child = JSONObject.fromObject( "{\"b\":[1,2]}" );
+      JSONObject jsonObject = new JSONObject().elementAdopt( "a", child )
+            .elementAdopt( "n", JSONNull.getInstance() );
+      assertSame( child, jsonObject.get( "a" ) );
+      child.getJSONArray( "b" )
+            .element( 3 );
+      assertEquals( "{\"a\":{\"b\":[1,2,3]},\"n\":null}", jsonObject.toString() );
+      jsonObject.elementAdopt( "a", null );
+      assertFalse( jsonObject.has( "a" ) );
+      try{
+         new JSONObject( true ).elementAdopt( "a", child );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
    public void testFromBean_array() {
       try{
          JSONObject.fromObject( new ArrayList() );
@@ -712,6 +770,31 @@ public class TestJSONObject extends TestCase {
       assertEquals( "json", json.getString( "string" ) );
    }
 
+   public void testFromObject_String_values() {
+      JSONObject json = JSONObject.fromObject( "{\"f\":\"function(){ return 1; }\",\"a\":1,"
+            + "\"a\":2,\"b\":[\"function(x){ return x; }\",,2]}" );
+      assertTrue( json.get( "f" ) instanceof JSONFunction );
+      assertEquals( JSONArray.fromObject( "[1,2]" ), json.get( "a" ) );
+      assertTrue( json.getJSONArray( "b" )
+            .get( 0 ) instanceof JSONFunction );
+      assertEquals( JSONNull.getInstance(), json.getJSONArray( "b" )
+            .get( 1 ) );
+
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.registerJsonValueProcessor( "n", new JsonValueProcessor(){
+         public Object processArrayValue( Object value, JsonConfig jsonConfig ) {
+            return value;
+         }
+
+         public Object processObjectValue( String key, Object value, JsonConfig jsonConfig ) {
+            return String.valueOf( value );
+         }
+      } );
+      json = JSONObject.fromObject( "{\"n\":1,\"m\":2}", jsonConfig );
+      assertEquals( "1", json.get( "n" ) );
+      assertEquals( new Integer( 2 ), json.get( "m" ) );
+   }
+
    public void testFromObject_toBean_DynaBean() {
       // bug report 1540137
 
@@ -817,6 +900,51 @@ public class TestJSONObject extends TestCase {
       assertTrue( json.has( "pchar" ) );
    }
 
+   public void testFreeze() throws Exception {
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":{\"b\":[1,{\"c\":2}]},\"d\":3}" );
+      int hashCode = jsonObject.hashCode();
+      String string = jsonObject.toString();
+      assertSame( jsonObject, jsonObject.freeze() );
+      assertTrue( jsonObject.isFrozen() );
+      JSONObject c = jsonObject.getJSONObject( "a" )
+            .getJSONArray( "b" )
+            .getJSONObject( 1 );
+      assertTrue( c.isFrozen() );
+      assertEquals( hashCode, jsonObject.hashCode() );
+      assertEquals( string, jsonObject.toString() );
+      assertSame( jsonObject.toString(), jsonObject.toString() );
+      StringWriter writer = new StringWriter();
+      jsonObject.write( writer );
+      assertEquals( string, writer.toString() );
+      assertEquals( 2, c.getInt( "c" ) );
+      try{
+         c.element( "e", 4 );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      try{
+         jsonObject.keySet()
+               .remove( "d" );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      try{
+         ((Map.Entry) jsonObject.entrySet()
+               .iterator()
+               .next()).setValue( "x" );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      assertEquals( JSONObject.fromObject( string ), JSONObject.fromObject( jsonObject ) );
+      assertFalse( JSONObject.fromObject( jsonObject )
+            .isFrozen() );
+      assertTrue( new JSONObject( true ).freeze()
+            .isNullObject() );
+   }
+
    public void testFromString_null_String() {
       JSONObject json = JSONObject.fromObject( null );
       assertTrue( json.isNullObject() );
@@ -830,6 +958,100 @@ public class TestJSONObject extends TestCase {
             .has( "any" ) );
    }
 
+   public void testLazyTree() throws Exception {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyTree( true );
+      jsonConfig.setStrict( true );
+      String text = "{ \"a\" : { \"x\" : [ 1, 2 ] },\n \"b\":\"y z\", \"c\":[{\"d\":true}] }";
+      JSONObject jsonObject = JSONObject.fromObject( text, jsonConfig );
+      assertTrue( jsonObject.isUnparsed() );
+      assertEquals( "{\"a\":{\"x\":[1,2]},\"b\":\"y z\",\"c\":[{\"d\":true}]}",
+            jsonObject.toString() );
+
+      JSONObject a = jsonObject.getJSONObject( "a" );
+      assertFalse( jsonObject.isUnparsed() );
+      assertTrue( a.isUnparsed() );
+      assertTrue( jsonObject.getJSONArray( "c" )
+            .isUnparsed() );
+      StringWriter writer = new StringWriter();
+      jsonObject.write( writer );
+      assertEquals( "{\"a\":{\"x\":[1,2]},\"b\":\"y z\",\"c\":[{\"d\":true}]}", writer.toString() );
+
+      assertEquals( 2, a.getJSONArray( "x" )
+            .getInt( 1 ) );
+      assertFalse( a.isUnparsed() );
+      assertEquals( JSONObject.fromObject( text ), jsonObject );
+   }
+
+   public void testLazyTree_canonical() throws Exception {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyTree( true );
+      jsonConfig.setStrict( true );
+      JSONObject jsonObject = JSONObject.fromObject( "{\"b\":1, \"a\":2}", jsonConfig );
+      StringWriter writer = new StringWriter();
+      jsonObject.writeCanonical( writer );
+      assertEquals( "{\"a\":2,\"b\":1}", writer.toString() );
+   }
+
+   public void testLazyTree_events() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyTree( true );
+      jsonConfig.setStrict( true );
+      jsonConfig.enableEventTriggering();
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":{\"b\":1}}", jsonConfig );
+      assertFalse( jsonObject.isUnparsed() );
+      assertFalse( jsonObject.getJSONObject( "a" )
+            .isUnparsed() );
+   }
+
+   public void testLazyTree_inexact() throws Exception {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyTree( true );
+      jsonConfig.setStrict( true );
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":1,\"a\":2}", jsonConfig );
+      assertTrue( jsonObject.isUnparsed() );
+      assertEquals( "{\"a\":[1,2]}", jsonObject.toString() );
+      jsonObject = JSONObject.fromObject( "{\"a\":{\"class\":1, \"b\":2}}", jsonConfig );
+      StringWriter writer = new StringWriter();
+      jsonObject.write( writer );
+      assertEquals( "{\"a\":{\"b\":2}}", writer.toString() );
+      String text = "{\"f\":\"function(a){ return a; }\"}";
+      assertEquals( JSONObject.fromObject( text )
+            .toString(), JSONObject.fromObject( text, jsonConfig )
+            .toString() );
+      String[] invalid = { "{\"n\":1e999}", "{\"a\":[1,,2]}", "{\"a\":[1, 2,], \"b\":1}",
+            "{\"a\":{\"x\":01}}", "{\"a\":{\"x\":[1e999]}}" };
+      for( int i = 0; i < invalid.length; i++ ){
+         try{
+            JSONObject.fromObject( invalid[i], jsonConfig );
+            fail( "Expected a JSONException for " + invalid[i] );
+         }catch( JSONException expected ){
+            // ok
+         }
+      }
+
+      jsonConfig.setExcludes( new String[] { "secret" } );
+      jsonObject = JSONObject.fromObject( "{\"secret\":1, \"b\" : 2}", jsonConfig );
+      assertFalse( jsonObject.isUnparsed() );
+      assertEquals( "{\"b\":2}", jsonObject.toString() );
+
+      jsonConfig = new JsonConfig();
+      jsonConfig.setLazyTree( true );
+      jsonObject = JSONObject.fromObject( "{'a':1, b: [1,,2]}", jsonConfig );
+      assertFalse( jsonObject.isUnparsed() );
+      assertEquals( "{\"a\":1,\"b\":[1,null,2]}", jsonObject.toString() );
+   }
+
+   public void testLazyTree_modify() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyTree( true );
+      jsonConfig.setStrict( true );
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":{\"b\":1}}", jsonConfig );
+      jsonObject.getJSONObject( "a" )
+            .element( "c", 2 );
+      assertEquals( "{\"a\":{\"b\":1,\"c\":2}}", jsonObject.toString() );
+   }
+
    public void testLength() {
       assertEquals( 0, new JSONObject().size() );
    }
@@ -843,6 +1065,61 @@ public class TestJSONObject extends TestCase {
       }
    }
 
+   public void testMaxDepth() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setMaxDepth( 2 );
+      assertEquals( 1, JSONObject.fromObject( "{\"a\":{\"b\":1},\"c\":[]}", jsonConfig )
+            .getJSONObject( "a" )
+            .getInt( "b" ) );
+      try{
+         JSONObject.fromObject( "{\"a\":{\"b\":[1]}}", jsonConfig );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+      jsonConfig.setMaxDepth( 0 );
+      assertEquals( JsonConfig.DEFAULT_MAX_DEPTH, jsonConfig.getMaxDepth() );
+   }
+
+   public void testObjectMapFactory() throws Exception {
+      String text = "{\"b\":1,\"c\":{\"z\":1,\"y\":2},\"a\":{\"x\":[3]}}";
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setObjectMapFactory( ObjectMapFactory.INSERTION_ORDER );
+      JSONObject jsonObject = JSONObject.fromObject( text, jsonConfig );
+      assertEquals( text, jsonObject.toString() );
+      assertEquals( text, JSONObject.fromObject( jsonObject, jsonConfig )
+            .toString() );
+      StringWriter writer = new StringWriter();
+      jsonObject.writeCanonical( writer );
+      assertEquals( "{\"a\":{\"x\":[3]},\"b\":1,\"c\":{\"y\":2,\"z\":1}}", writer.toString() );
+      assertEquals( JSONObject.fromObject( text ), jsonObject );
+
+      jsonConfig.setObjectMapFactory( ObjectMapFactory.HASH );
+      jsonObject = JSONObject.fromObject( text, jsonConfig );
+      assertEquals( 2, jsonObject.getJSONObject( "c" )
+            .getInt( "y" ) );
+      assertEquals( JSONObject.fromObject( text ), jsonObject );
+      jsonObject = new JSONObject( jsonConfig );
+      for( int i = 9; i >= 0; i-- ){
+         jsonObject.element( "k" + i, i );
+      }
+      writer = new StringWriter();
+      jsonObject.freeze()
+            .writeCanonical( writer );
+      assertTrue( writer.toString()
+            .startsWith( "{\"k0\":0,\"k1\":1,\"k2\":2," ) );
+
+      assertTrue( ObjectMapFactory.isSorted( ObjectMapFactory.SORTED.newMap() ) );
+      assertTrue( ObjectMapFactory.isSorted( ObjectMapFactory.CONCURRENT.newMap() ) );
+      assertTrue( ObjectMapFactory.isSorted( new TreeMap() ) );
+      assertFalse( ObjectMapFactory.isSorted( ObjectMapFactory.HASH.newMap() ) );
+      assertFalse( ObjectMapFactory.isSorted( ObjectMapFactory.INSERTION_ORDER.newMap() ) );
+      assertFalse( ObjectMapFactory.isSorted( Collections.unmodifiableMap( new TreeMap() ) ) );
+
+      jsonConfig.setObjectMapFactory( null );
+      assertSame( ObjectMapFactory.SORTED, jsonConfig.getObjectMapFactory() );
+   }
+
    public void testOptBoolean() {
       assertFalse( new JSONObject().optBoolean( "any" ) );
    }
@@ -1378,6 +1655,36 @@ public class TestJSONObject extends TestCase {
       jsonConfig = new JsonConfig();
    }
 
+   public void testWith() {
+      JSONObject v1 = JSONObject.fromObject( "{\"name\":\"json\",\"limits\":{\"max\":10},\"tags\":[1]}" );
+      JSONObject v2 = v1.with( "name", "lib" );
+      JSONObject v3 = v2.with( "port", new Integer( 8080 ) )
+            .without( "tags" );
+      assertTrue( v1.isFrozen() );
+      assertTrue( v2.isFrozen() );
+      assertEquals( "json", v1.getString( "name" ) );
+      assertEquals( "lib", v2.getString( "name" ) );
+      assertEquals( "{\"limits\":{\"max\":10},\"name\":\"lib\",\"port\":8080}", v3.toString() );
+      assertSame( v1.getJSONObject( "limits" ), v3.getJSONObject( "limits" ) );
+      assertFalse( v3.has( "tags" ) );
+      assertEquals( 3, v3.size() );
+      assertEquals( JSONObject.fromObject( v3.toString() ), v3 );
+      assertEquals( v2, v2.with( "tags", null )
+            .with( "tags", JSONArray.fromObject( "[1]" ) ) );
+      try{
+         v3.element( "x", 1 );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+
+      JSONObject nested = v3.with( "limits", JSONObject.fromObject( "{\"min\":1}" ) );
+      assertTrue( nested.getJSONObject( "limits" )
+            .isFrozen() );
+      assertEquals( 10, v3.getJSONObject( "limits" )
+            .getInt( "max" ) );
+   }
+
    private MorphDynaBean createDynaBean() throws Exception {
       Map properties = new HashMap();
       properties.put( "name", String.class );
@@ -141,6 +141,16 @@ public class TestJSONObjectEqualsHashCodeCompareTo extends TestCase {
       assertFalse( b.equals( a ) );
    }
 
+   public void testEquals_shared_values() {
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":{\"b\":[1,2]},\"c\":1}" );
+      JSONObject copy = jsonObject.with( "c", new Long( 1 ) );
+      assertTrue( jsonObject.equals( copy ) );
+      assertTrue( copy.equals( jsonObject ) );
+      assertFalse( jsonObject.equals( copy.with( "c", "2" ) ) );
+      assertFalse( jsonObject.equals( copy.without( "c" )
+            .with( "d", new Integer( 1 ) ) ) );
+   }
+
    public void testEquals_strings_values() {
       assertTrue( values.get( "JSONObject.strings" )
             .equals( values.get( "JSONObject.values.1" ) ) );
@@ -103,6 +103,18 @@ public class TestJSONObjectEvents extends TestCase {
       assertEvents();
    }
 
+   public void testFromObject_string_nested() {
+      JSONObject.fromObject( "{a:{b:[1,{c:2}]},d:[]}", jsonConfig );
+      assertEquals( 0, jsonEventAdpater.getError() );
+      assertEquals( 0, jsonEventAdpater.getWarning() );
+      assertEquals( 2, jsonEventAdpater.getArrayStart() );
+      assertEquals( 2, jsonEventAdpater.getArrayEnd() );
+      assertEquals( 3, jsonEventAdpater.getObjectStart() );
+      assertEquals( 3, jsonEventAdpater.getObjectEnd() );
+      assertEquals( 2, jsonEventAdpater.getElementAdded() );
+      assertEquals( 4, jsonEventAdpater.getPropertySet() );
+   }
+
    protected void setUp() throws Exception {
       jsonEventAdpater = new JsonEventAdpater();
       jsonConfig = new JsonConfig();
@@ -16,6 +16,12 @@
 
 package net.sf.json;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -197,6 +203,82 @@ public class TestJSONSerializer extends TestCase {
       Assertions.assertEquals( JSONArray.fromObject( "[1,2]" ), (JSONArray) json );
    }
 
+   public void testToJSON_Object_Reader_array() {
+      JSON json = JSONSerializer.toJSON( new StringReader( " [1,2]" ) );
+      assertNotNull( json );
+      assertTrue( json instanceof JSONArray );
+      Assertions.assertEquals( JSONArray.fromObject( "[1,2]" ), (JSONArray) json );
+   }
+
+   public void testToJSON_Object_Reader_null() {
+      JSON json = JSONSerializer.toJSON( new StringReader( "null" ) );
+      assertTrue( JSONNull.getInstance()
+            .equals( json ) );
+   }
+
+   public void testToJSON_Object_Reader_null_strict() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setStrict( true );
+      assertTrue( JSONNull.getInstance()
+            .equals( JSONSerializer.toJSON( new StringReader( " null\n" ), jsonConfig ) ) );
+      String[] invalid = { "NULL", "null\n[1]", "nul", "nullx" };
+      for( int i = 0; i < invalid.length; i++ ){
+         try{
+            JSONSerializer.toJSON( new StringReader( invalid[i] ), jsonConfig );
+            fail( "Expected a JSONException for " + invalid[i] );
+         }catch( JSONException expected ){
+            // ok
+         }
+      }
+      try{
+         JSONSerializer.toJSON( "NULL", jsonConfig );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testToJSON_Object_Reader_object() {
+      JSON json = JSONSerializer.toJSON( new StringReader( "{'name':'json'}" ) );
+      assertNotNull( json );
+      assertTrue( json instanceof JSONObject );
+      Assertions.assertEquals( JSONObject.fromObject( "{\"name\":\"json\"}" ), (JSONObject) json );
+   }
+
+   public void testToJSON_File() throws Exception {
+      File file = File.createTempFile( "json", ".json" );
+      file.deleteOnExit();
+      FileOutputStream out = new FileOutputStream( file );
+      out.write( new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF } );
+      out.write( "{\"name\":\"j\u00e9son\"}".getBytes( "UTF-8" ) );
+      out.close();
+      JSON json = JSONSerializer.toJSON( file );
+      assertTrue( json instanceof JSONObject );
+      assertEquals( "j\u00e9son", ((JSONObject) json).getString( "name" ) );
+   }
+
+   public void testToJSON_InputStream() throws Exception {
+      Charset utf8 = Charset.forName( "UTF-8" );
+      JSON json = JSONSerializer.toJSON( new ByteArrayInputStream( "{\"name\":\"j\u00e9son\"}".getBytes( "UTF-8" ) ), utf8 );
+      assertTrue( json instanceof JSONObject );
+      assertEquals( "j\u00e9son", ((JSONObject) json).getString( "name" ) );
+   }
+
+   public void testToJSON_Object_ByteBuffer() throws Exception {
+      String str = "{\"name\":\"j\u00e9son \u20ac \ud834\udd1e\",\"list\":[1,2.5,true,null]}";
+      byte[] bytes = ("  " + str).getBytes( "UTF-8" );
+      ByteBuffer buffer = ByteBuffer.wrap( bytes );
+      buffer.position( 2 );
+      JSON json = JSONSerializer.toJSON( buffer );
+      assertEquals( JSONSerializer.toJSON( str ), json );
+      assertEquals( 2, buffer.position() );
+
+      ByteBuffer direct = ByteBuffer.allocateDirect( bytes.length );
+      direct.put( bytes );
+      direct.flip();
+      assertEquals( JSONSerializer.toJSON( str ), JSONSerializer.toJSON( direct ) );
+   }
+
    public void testToJSON_Object_null() {
       JSON json = JSONSerializer.toJSON( (Object) null );
       assertNotNull( json );
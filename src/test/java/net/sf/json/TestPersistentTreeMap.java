@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestPersistentTreeMap extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestPersistentTreeMap.class );
+   }
+
+   public TestPersistentTreeMap( String name ) {
+      super( name );
+   }
+
+   public void testImmutable() {
+      PersistentTreeMap map = PersistentTreeMap.EMPTY.with( "a", "1" );
+      try{
+         map.put( "b", "2" );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      try{
+         map.entrySet()
+               .iterator()
+               .remove();
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      try{
+         ((Map.Entry) map.entrySet()
+               .iterator()
+               .next()).setValue( "3" );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+   }
+
+   public void testWith() {
+      Random random = new Random( 42 );
+      TreeMap expected = new TreeMap();
+      PersistentTreeMap map = PersistentTreeMap.EMPTY;
+      ArrayList versions = new ArrayList();
+      ArrayList copies = new ArrayList();
+      for( int i = 0; i < 2000; i++ ){
+         String key = "k" + random.nextInt( 500 );
+         if( random.nextInt( 4 ) == 0 ){
+            expected.remove( key );
+            map = map.without( key );
+         }else{
+            expected.put( key, new Integer( i ) );
+            map = map.with( key, new Integer( i ) );
+         }
+         if( i % 100 == 0 ){
+            versions.add( map );
+            copies.add( new TreeMap( expected ) );
+         }
+      }
+      assertEquals( expected, map );
+      assertEquals( expected.hashCode(), map.hashCode() );
+      assertEquals( new ArrayList( expected.keySet() ), new ArrayList( map.keySet() ) );
+      for( Iterator keys = expected.keySet()
+            .iterator(); keys.hasNext(); ){
+         Object key = keys.next();
+         assertTrue( map.containsKey( key ) );
+         assertEquals( expected.get( key ), map.get( key ) );
+      }
+      assertFalse( map.containsKey( "x" ) );
+      assertNull( map.get( null ) );
+      for( int i = 0; i < versions.size(); i++ ){
+         assertEquals( copies.get( i ), versions.get( i ) );
+      }
+      assertSame( map, map.without( "x" ) );
+   }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestPersistentVector extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestPersistentVector.class );
+   }
+
+   public TestPersistentVector( String name ) {
+      super( name );
+   }
+
+   public void testImmutable() {
+      PersistentVector vector = PersistentVector.EMPTY.plus( "a" );
+      try{
+         vector.add( "b" );
+         fail( "Expected an UnsupportedOperationException" );
+      }catch( UnsupportedOperationException expected ){
+         // ok
+      }
+      try{
+         vector.get( 1 );
+         fail( "Expected an IndexOutOfBoundsException" );
+      }catch( IndexOutOfBoundsException expected ){
+         // ok
+      }
+   }
+
+   public void testPlus() {
+      List expected = new ArrayList();
+      PersistentVector vector = PersistentVector.EMPTY;
+      for( int i = 0; i < 40000; i++ ){
+         vector = vector.plus( new Integer( i ) );
+         expected.add( new Integer( i ) );
+      }
+      assertEquals( expected, vector );
+      assertEquals( expected, PersistentVector.of( expected ) );
+   }
+
+   public void testWith() {
+      PersistentVector vector = PersistentVector.EMPTY;
+      for( int i = 0; i < 1100; i++ ){
+         vector = vector.plus( new Integer( i ) );
+      }
+      PersistentVector changed = vector.with( 1050, "x" )
+            .with( 3, "y" )
+            .with( 1100, "z" );
+      assertEquals( new Integer( 1050 ), vector.get( 1050 ) );
+      assertEquals( 1100, vector.size() );
+      assertEquals( "x", changed.get( 1050 ) );
+      assertEquals( "y", changed.get( 3 ) );
+      assertEquals( "z", changed.get( 1100 ) );
+      assertEquals( new Integer( 1049 ), changed.get( 1049 ) );
+      assertEquals( 1101, changed.size() );
+   }
+}
@@ -29,6 +29,14 @@ public class AllTests extends TestSuite {
       suite.addTest( new TestSuite( TestJavaIdentifierTransformer.class ) );
       suite.addTest( new TestSuite( TestJSONUtils.class ) );
       suite.addTest( new TestSuite( TestJSONTokener.class ) );
+      suite.addTest( new TestSuite( TestCompactMap.class ) );
+      suite.addTest( new TestSuite( TestConcurrentTreeMap.class ) );
+      suite.addTest( new TestSuite( TestIncludePaths.class ) );
+      suite.addTest( new TestSuite( TestJsonLinesReader.class ) );
+      suite.addTest( new TestSuite( TestJsonLinesWriter.class ) );
+      suite.addTest( new TestSuite( TestJsonReader.class ) );
+      suite.addTest( new TestSuite( TestKeyCache.class ) );
+      suite.addTest( new TestSuite( TestStructuralIndex.class ) );
       suite.addTest( new TestSuite( TestJSONBuilder.class ) );
       suite.addTest( new TestSuite( TestJSONStringer.class ) );
       suite.addTest( new TestSuite( TestWebUtils.class ) );
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestCompactMap extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestCompactMap.class );
+   }
+
+   public TestCompactMap( String name ) {
+      super( name );
+   }
+
+   public void testEquals() {
+      Map map = new CompactMap( CompactMap.SORTED );
+      Map expected = new HashMap();
+      for( int i = 0; i < 3; i++ ){
+         map.put( "k" + i, new Integer( i ) );
+         expected.put( "k" + i, new Integer( i ) );
+      }
+      assertEquals( expected, map );
+      assertEquals( map, expected );
+      assertEquals( expected.hashCode(), map.hashCode() );
+      assertEquals( new Integer( 1 ), map.put( "k1", "one" ) );
+      assertEquals( "one", map.get( "k1" ) );
+      assertFalse( expected.equals( map ) );
+   }
+
+   public void testInsertionOrder() {
+      Map map = new CompactMap( CompactMap.INSERTION_ORDER );
+      List keys = new ArrayList();
+      for( int i = CompactMap.THRESHOLD * 2; i > 0; i-- ){
+         map.put( "k" + i, new Integer( i ) );
+         keys.add( "k" + i );
+         assertEquals( keys, new ArrayList( map.keySet() ) );
+      }
+      assertEquals( CompactMap.THRESHOLD * 2, map.size() );
+      assertEquals( new Integer( 3 ), map.get( "k3" ) );
+   }
+
+   public void testRemove() {
+      Map map = new CompactMap( CompactMap.HASH );
+      map.put( "a", "1" );
+      map.put( "b", "2" );
+      map.put( "c", "3" );
+      assertEquals( "2", map.remove( "b" ) );
+      assertNull( map.remove( "b" ) );
+      assertEquals( Arrays.asList( new Object[] { "a", "c" } ), new ArrayList( map.keySet() ) );
+      for( Iterator i = map.entrySet()
+            .iterator(); i.hasNext(); ){
+         Map.Entry entry = (Map.Entry) i.next();
+         if( entry.getKey()
+               .equals( "a" ) ){
+            i.remove();
+         }else{
+            entry.setValue( "three" );
+         }
+      }
+      assertEquals( 1, map.size() );
+      assertEquals( "three", map.get( "c" ) );
+      map.clear();
+      assertTrue( map.isEmpty() );
+      assertFalse( map.containsKey( "c" ) );
+   }
+
+   public void testSorted() {
+      Map map = new CompactMap( CompactMap.SORTED );
+      String[] keys = { "m", "c", "x", "a", "p", "b", "z", "e", "d", "y", "f" };
+      for( int i = 0; i < keys.length; i++ ){
+         map.put( keys[i], new Integer( i ) );
+         String[] sorted = new String[i + 1];
+         System.arraycopy( keys, 0, sorted, 0, i + 1 );
+         Arrays.sort( sorted );
+         assertEquals( Arrays.asList( sorted ), new ArrayList( map.keySet() ) );
+      }
+      assertTrue( map.containsKey( "y" ) );
+      assertTrue( map.containsValue( new Integer( 0 ) ) );
+      try{
+         new CompactMap( CompactMap.SORTED ).put( null, "a" );
+         fail( "Expected a NullPointerException" );
+      }catch( NullPointerException expected ){
+         // ok
+      }
+   }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestConcurrentTreeMap extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestConcurrentTreeMap.class );
+   }
+
+   public TestConcurrentTreeMap( String name ) {
+      super( name );
+   }
+
+   public void testConcurrentUpdates() throws Exception {
+      final Map map = new ConcurrentTreeMap();
+      Thread[] threads = new Thread[4];
+      for( int t = 0; t < threads.length; t++ ){
+         final int offset = t;
+         threads[t] = new Thread(){
+            public void run() {
+               for( int i = 0; i < 500; i++ ){
+                  String key = "k" + (i * 4 + offset);
+                  map.put( key, new Integer( i ) );
+                  if( i % 2 == 1 ){
+                     map.remove( key );
+                  }
+               }
+            }
+         };
+         threads[t].start();
+      }
+      for( int t = 0; t < threads.length; t++ ){
+         threads[t].join();
+      }
+      assertEquals( 1000, map.size() );
+      assertEquals( new ArrayList( new TreeMap( map ).keySet() ), new ArrayList( map.keySet() ) );
+   }
+
+   public void testSnapshotIteration() {
+      Map map = new ConcurrentTreeMap();
+      map.put( "b", "2" );
+      map.put( "a", "1" );
+      Iterator entries = map.entrySet()
+            .iterator();
+      map.put( "c", "3" );
+      map.remove( "a" );
+      assertEquals( "a", ((Map.Entry) entries.next()).getKey() );
+      assertEquals( "b", ((Map.Entry) entries.next()).getKey() );
+      assertFalse( entries.hasNext() );
+      assertEquals( Arrays.asList( new Object[] { "b", "c" } ), new ArrayList( map.keySet() ) );
+   }
+
+   public void testSorted() {
+      Map map = new ConcurrentTreeMap();
+      Map expected = new TreeMap();
+      String[] keys = { "m", "c", "x", "a", "p", "b", "z", "e", "d", "y", "f", "c" };
+      for( int i = 0; i < keys.length; i++ ){
+         Integer value = new Integer( i );
+         assertEquals( expected.put( keys[i], value ), map.put( keys[i], value ) );
+         assertEquals( new ArrayList( expected.entrySet() ), new ArrayList( map.entrySet() ) );
+      }
+      assertEquals( expected, map );
+      assertEquals( expected.hashCode(), map.hashCode() );
+      assertEquals( new Integer( 11 ), map.get( "c" ) );
+      assertNull( map.get( "q" ) );
+      assertEquals( new Integer( 3 ), map.remove( "a" ) );
+      assertNull( map.remove( "a" ) );
+      for( Iterator i = map.entrySet()
+            .iterator(); i.hasNext(); ){
+         Map.Entry entry = (Map.Entry) i.next();
+         if( entry.getKey()
+               .equals( "b" ) ){
+            i.remove();
+         }else if( entry.getKey()
+               .equals( "z" ) ){
+            entry.setValue( "last" );
+         }
+      }
+      assertFalse( map.containsKey( "b" ) );
+      assertEquals( "last", map.get( "z" ) );
+      assertEquals( 9, map.size() );
+      try{
+         map.put( null, "a" );
+         fail( "Expected a NullPointerException" );
+      }catch( NullPointerException npe ){
+         // ok
+      }
+      map.clear();
+      assertTrue( map.isEmpty() );
+   }
+}
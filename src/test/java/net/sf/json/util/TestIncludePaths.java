@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import net.sf.json.JsonConfig;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestIncludePaths extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestIncludePaths.class );
+   }
+
+   private JsonConfig jsonConfig;
+
+   public TestIncludePaths( String name ) {
+      super( name );
+   }
+
+   public void testArrayIndex() {
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "[1]", "[3].a" } ) );
+      JSONArray jsonArray = JSONArray.fromObject( "[1,[2,3],{\"a\":4},{\"a\":5,\"b\":6},7]",
+            jsonConfig );
+      assertEquals( JSONArray.fromObject( "[[2,3],{\"a\":5}]" ), jsonArray );
+   }
+
+   public void testInvalidPaths() {
+      String[] invalid = { "", "a.", "a..b", "a[", "a[x]", "[1]." };
+      for( int i = 0; i < invalid.length; i++ ){
+         try{
+            new IncludePaths( new String[] { invalid[i] } );
+            fail( "Expected a JSONException for '" + invalid[i] + "'" );
+         }catch( JSONException expected ){
+            // ok
+         }
+      }
+   }
+
+   public void testNestedPaths() {
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "items[*].id", "meta.version" } ) );
+      JSONObject jsonObject = JSONObject.fromObject( "{\"meta\":{\"version\":2,\"author\":\"me\"},"
+            + "\"items\":[{\"id\":1,\"tags\":[\"a\",\"}\"]},{\"name\":\"x\",\"id\":2}],"
+            + "\"other\":{\"deep\":[[[]]]}}", jsonConfig );
+      assertEquals( JSONObject.fromObject( "{\"meta\":{\"version\":2},\"items\":[{\"id\":1},{\"id\":2}]}" ),
+            jsonObject );
+   }
+
+   public void testPropertyFilterNotAppliedToSkippedValues() {
+      final int[] calls = new int[1];
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "a" } ) );
+      jsonConfig.setJsonPropertyFilter( new PropertyFilter(){
+         public boolean apply( Object source, String name, Object value ) {
+            calls[0]++;
+            return false;
+         }
+      } );
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":1,\"b\":{\"c\":2},\"d\":[3]}", jsonConfig );
+      assertEquals( JSONObject.fromObject( "{\"a\":1}" ), jsonObject );
+      assertEquals( 1, calls[0] );
+   }
+
+   public void testReader() {
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "b.c" } ) );
+      JSONObject jsonObject = JSONObject.fromObject( new StringReader(
+            "{\"a\":'x',\"b\":{\"c\":true,\"d\":null}}" ), jsonConfig );
+      assertEquals( JSONObject.fromObject( "{\"b\":{\"c\":true}}" ), jsonObject );
+   }
+
+   public void testSkippedFunction() {
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "b" } ) );
+      JSONObject jsonObject = JSONObject.fromObject(
+            "{\"a\":function(x){ if(x){ return '}'; } },\"b\":1}", jsonConfig );
+      assertEquals( JSONObject.fromObject( "{\"b\":1}" ), jsonObject );
+   }
+
+   public void testSubtreeIncluded() {
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "a" } ) );
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":{\"b\":[1,{\"c\":2}]},\"d\":3}",
+            jsonConfig );
+      assertEquals( JSONObject.fromObject( "{\"a\":{\"b\":[1,{\"c\":2}]}}" ), jsonObject );
+   }
+
+   public void testTokenerRestored() {
+      JSONTokener tokener = new JSONTokener( "{\"a\":{\"b\":1,\"c\":2}}" );
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "a.b" } ) );
+      JSONObject.fromObject( tokener, jsonConfig );
+      assertNull( tokener.getIncludePaths() );
+   }
+
+   public void testWildcardProperty() {
+      jsonConfig.setIncludePaths( new IncludePaths( new String[] { "*.id", "a.name" } ) );
+      JSONObject jsonObject = JSONObject.fromObject(
+            "{\"a\":{\"id\":1,\"name\":\"x\",\"z\":0},\"b\":{\"id\":2,\"name\":\"y\"},\"c\":3}",
+            jsonConfig );
+      assertEquals(
+            JSONObject.fromObject( "{\"a\":{\"id\":1,\"name\":\"x\"},\"b\":{\"id\":2}}" ),
+            jsonObject );
+   }
+
+   protected void setUp() throws Exception {
+      jsonConfig = new JsonConfig();
+   }
+}
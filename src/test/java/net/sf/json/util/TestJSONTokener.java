@@ -16,8 +16,15 @@
 
 package net.sf.json.util;
 
+import java.io.StringReader;
+import java.util.Arrays;
+
 import junit.framework.TestCase;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import net.sf.json.JSONSerializer;
+import net.sf.json.JsonConfig;
 
 /**
  * @author Andres Almiray <aalmiray@users.sourceforge.net>
@@ -74,6 +81,73 @@ public class TestJSONTokener extends TestCase {
       }
    }
 
+   public void testNextValue_numbers() {
+      assertEquals( new Integer( 0 ), new JSONTokener( "0" ).nextValue() );
+      assertEquals( new Integer( 0 ), new JSONTokener( "-0" ).nextValue() );
+      assertEquals( new Integer( -12 ), new JSONTokener( "-12" ).nextValue() );
+      assertEquals( new Integer( Integer.MAX_VALUE ), new JSONTokener( "2147483647" ).nextValue() );
+      assertEquals( new Long( 2147483648L ), new JSONTokener( "2147483648" ).nextValue() );
+      assertEquals( new Long( Long.MIN_VALUE ),
+            new JSONTokener( "-9223372036854775808" ).nextValue() );
+      assertEquals( new Double( "9223372036854775808" ),
+            new JSONTokener( "9223372036854775808" ).nextValue() );
+      assertEquals( new Double( 1.5 ), new JSONTokener( "1.5" ).nextValue() );
+      assertEquals( new Double( 1.0 ), new JSONTokener( "1.0" ).nextValue() );
+      assertEquals( new Double( -2.5e-3 ), new JSONTokener( "-2.5e-3" ).nextValue() );
+      assertEquals( new Double( 1e5 ), new JSONTokener( "1E+5" ).nextValue() );
+      // non plain forms
+      assertEquals( new Integer( 8 ), new JSONTokener( "010" ).nextValue() );
+      assertEquals( new Integer( 255 ), new JSONTokener( "0xff" ).nextValue() );
+      assertEquals( new Double( 0.5 ), new JSONTokener( ".5" ).nextValue() );
+      assertEquals( new Double( 1.0 ), new JSONTokener( "1." ).nextValue() );
+      assertEquals( "-", new JSONTokener( "-" ).nextValue() );
+   }
+
+   public void testNextValue_lazyNumbers() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setLazyNumbers( true );
+      Object value = new JSONTokener( "12.50" ).nextValue( jsonConfig );
+      assertTrue( value instanceof LazyNumber );
+      assertEquals( "12.50", value.toString() );
+      assertEquals( 12.5d, ((Number) value).doubleValue(), 0d );
+      assertEquals( value, new Double( 12.5 ) );
+      // non plain forms are converted right away
+      assertEquals( new Integer( 255 ), new JSONTokener( "0xff" ).nextValue( jsonConfig ) );
+
+      JSONObject jsonObject = JSONObject.fromObject( "{\"a\":1,\"b\":12345678901,\"c\":2.50}",
+            jsonConfig );
+      assertTrue( jsonObject.get( "a" ) instanceof LazyNumber );
+      assertEquals( 1, jsonObject.getInt( "a" ) );
+      assertEquals( 12345678901L, jsonObject.getLong( "b" ) );
+      assertEquals( 2.5d, jsonObject.getDouble( "c" ), 0d );
+      assertEquals( jsonObject, JSONObject.fromObject( "{\"a\":1,\"b\":12345678901,\"c\":2.5}" ) );
+      assertEquals( "{\"a\":1,\"b\":12345678901,\"c\":2.5}", jsonObject.toString() );
+      assertEquals( JSONObject.fromObject( "{\"a\":1,\"b\":12345678901,\"c\":2.50}" )
+            .hashCode(), jsonObject.hashCode() );
+      JSONArray jsonArray = JSONArray.fromObject( "[1,2.50,1]", jsonConfig );
+      assertTrue( jsonArray.contains( new Integer( 1 ) ) );
+      assertTrue( jsonArray.containsAll( Arrays.asList( new Object[] { new Integer( 1 ),
+            new Double( 2.5 ) } ) ) );
+      assertEquals( 1, jsonArray.indexOf( new Double( 2.5 ) ) );
+      assertEquals( 2, jsonArray.lastIndexOf( new Integer( 1 ) ) );
+      assertEquals( -1, jsonArray.indexOf( new Integer( 2 ) ) );
+
+      value = new JSONTokener( "1e300" ).nextValue( jsonConfig );
+      assertEquals( 1e300d, ((Number) value).doubleValue(), 0d );
+      try{
+         JSONObject.fromObject( "{\"a\":1e999}", jsonConfig );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+      try{
+         new LazyNumber( "-2E+400" );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
    public void testReset() {
       JSONTokener tok = new JSONTokener( "abc" );
       tok.next();
@@ -82,4 +156,192 @@ public class TestJSONTokener extends TestCase {
       tok.reset();
       assertEquals( 'a', tok.next() );
    }
-}
\ No newline at end of file
+
+   public void testStartsWith() {
+      JSONTokener tok = new JSONTokener( "null, 1" );
+      assertTrue( tok.startsWith( "null" ) );
+      assertFalse( tok.startsWith( "nulls" ) );
+      tok.next();
+      assertFalse( tok.startsWith( "null" ) );
+      assertFalse( new JSONTokener( "nul" ).startsWith( "null" ) );
+      assertTrue( new JSONTokener( new StringReader( "null" ), 1 ).startsWith( "null" ) );
+   }
+
+   public void testStrict() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setStrict( true );
+      String json = " {\"a\" : [1, -2.5e3, true, false, null],\r\n\t\"b\":{\"c\":\"x\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\"},"
+            + "\"d\":[], \"e\":{}} ";
+      JSONObject jsonObject = JSONObject.fromObject( json, jsonConfig );
+      assertEquals( JSONObject.fromObject( json ), jsonObject );
+      assertEquals( "x\"\\/\b\f\n\r\t\u00e9", jsonObject.getJSONObject( "b" )
+            .getString( "c" ) );
+      assertEquals( jsonObject, JSONObject.fromObject( new StringReader( json ), jsonConfig ) );
+      assertEquals( JSONArray.fromObject( "[1,[2]]" ), JSONArray.fromObject( "[1,[2]]", jsonConfig ) );
+   }
+
+   public void testStrict_invalid() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setStrict( true );
+      String[] invalid = { "{'a':1}", "{a:1}", "{\"a\"=1}", "{\"a\"=>1}", "{\"a\":1;\"b\":2}",
+            "{\"a\":1,}", "{\"a\":1} x", "{\"a\":1}}", "{\"a\":01}", "{\"a\":0x1F}", "{\"a\":+1}",
+            "{\"a\":1.}", "{\"a\":abc}", "{\"a\":True}", "{\"a\":\"\\x41\"}", "{\"a\":\"\\u00g1\"}",
+            "{\"a\":\"tab\there\"}", "{/* c */\"a\":1}", "{\"a\":1 # c\n}",
+            "{\"a\":function(){ return 1; }}", "[1,,2]", "[,1]", "[1,]", "[1] [2]" };
+      for( int i = 0; i < invalid.length; i++ ){
+         try{
+            JSONSerializer.toJSON( invalid[i], jsonConfig );
+            fail( "Expected a JSONException for " + invalid[i] );
+         }catch( JSONException expected ){
+            // ok
+         }
+         // still accepted when lenient, except for the ones invalid anyway
+         if( i < 7 ){
+            JSONSerializer.toJSON( invalid[i] );
+         }
+      }
+   }
+
+   public void testStrict_tokener() {
+      JSONTokener tok = new JSONTokener( "\"a\" 12 true" );
+      tok.setStrict( true );
+      assertTrue( tok.isStrict() );
+      assertEquals( "a", tok.nextValue() );
+      assertEquals( new Integer( 12 ), tok.nextValue() );
+      assertEquals( Boolean.TRUE, tok.nextValue() );
+      assertEquals( 0, tok.nextClean() );
+      tok = new JSONTokener( "// comment\n1" );
+      tok.setStrict( true );
+      assertEquals( '/', tok.nextClean() );
+   }
+
+   public void testBytes_next() throws Exception {
+      byte[] bytes = "x[a\u00e9\u20ac\ud834\udd1e]".getBytes( "UTF-8" );
+      JSONTokener tok = new JSONTokener( bytes, 1, bytes.length - 1 );
+      assertEquals( bytes.length - 1, tok.length() );
+      assertEquals( '[', tok.next() );
+      assertEquals( 'a', tok.next() );
+      assertEquals( '\u00e9', tok.next() );
+      assertEquals( '\u20ac', tok.peek() );
+      assertEquals( '\u20ac', tok.next() );
+      assertEquals( '\ud834', tok.next() );
+      tok.back();
+      assertEquals( '\ud834', tok.next() );
+      assertEquals( '\udd1e', tok.next() );
+      tok.back();
+      assertEquals( '\udd1e', tok.next() );
+      tok.back();
+      tok.back();
+      tok.back();
+      assertEquals( '\u20ac', tok.next() );
+      try{
+         // like a string source, next(int) may not reach the end
+         tok.next( 3 );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+      assertEquals( "\ud834\udd1e", tok.next( 2 ) );
+      assertEquals( ']', tok.next() );
+      assertFalse( tok.more() );
+      assertEquals( 0, tok.next() );
+      tok.reset();
+      assertEquals( '[', tok.next() );
+      assertTrue( tok.startsWith( "a\u00e9" ) );
+      tok.skipPast( "\u20ac" );
+      assertEquals( '\ud834', tok.next() );
+   }
+
+   public void testBytes_malformed() {
+      byte[] bytes = new byte[] { '[', (byte) 0xC3, ']' };
+      JSONTokener tok = new JSONTokener( bytes, 0, bytes.length );
+      assertEquals( '[', tok.next() );
+      try{
+         tok.next();
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testBytes_badEscape() throws Exception {
+      String[] texts = { "{\"a\":\"\\u12\"}", "{\"a\":\"\\x1\"}", "{\"a\":\"\\uzzzz\"}",
+            "{\"a\":\"\\u-001\"}" };
+      for( int i = 0; i < texts.length; i++ ){
+         byte[] bytes = texts[i].getBytes( "UTF-8" );
+         JSONTokener[] tokeners = { new JSONTokener( texts[i] ),
+               new JSONTokener( new StringReader( texts[i] ), 4 ),
+               new JSONTokener( bytes, 0, bytes.length ) };
+         for( int j = 0; j < tokeners.length; j++ ){
+            try{
+               tokeners[j].nextValue();
+               fail( "Expected a JSONException for " + texts[i] + " with tokener " + j );
+            }catch( JSONException expected ){
+               // ok
+            }
+         }
+      }
+   }
+
+   public void testBytes_nextValue() throws Exception {
+      String str = "{\"a\":\"\u00e9\",b:[1,'\u20ac']}";
+      byte[] bytes = str.getBytes( "UTF-8" );
+      assertEquals( JSONObject.fromObject( str ), JSONObject.fromObject( new JSONTokener( bytes, 0,
+            bytes.length ) ) );
+   }
+
+   public void testReader_next() {
+      JSONTokener tok = new JSONTokener( new StringReader( "abcdef" ), 2 );
+      assertEquals( 'a', tok.next() );
+      assertEquals( "bcd", tok.next( 3 ) );
+      tok.back();
+      assertEquals( 'd', tok.next() );
+      assertEquals( 'e', tok.peek() );
+      assertTrue( tok.more() );
+      assertEquals( 'e', tok.next() );
+      assertEquals( 'f', tok.next() );
+      assertFalse( tok.more() );
+      assertEquals( 0, tok.next() );
+   }
+
+   public void testReader_skip() {
+      JSONTokener tok = new JSONTokener( new StringReader( "abcdefghij" ), 2 );
+      tok.skipPast( "de" );
+      assertEquals( 'f', tok.next() );
+      assertEquals( 0, tok.skipTo( 'z' ) );
+      assertEquals( 'g', tok.next() );
+      assertEquals( 'j', tok.skipTo( 'j' ) );
+      assertEquals( 'j', tok.next() );
+   }
+
+   public void testReader_reset() {
+      JSONTokener tok = new JSONTokener( new StringReader( "abc" ), JSONTokener.DEFAULT_BUFFER_SIZE );
+      tok.next();
+      tok.next();
+      tok.reset();
+      assertEquals( 'a', tok.next() );
+
+      tok = new JSONTokener( new StringReader( "abcdef" ), 2 );
+      for( int i = 0; i < 4; i++ ){
+         tok.next();
+      }
+      try{
+         tok.reset();
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testReader_smallBuffer() {
+      String json = "{\"a\":[1,2,{\"b\":\"\\u0041 string\"}], /* comment */ \"c\":null,\"d\":'e'}";
+      JSONObject expected = JSONObject.fromObject( json );
+      JSONObject actual = JSONObject.fromObject( new JSONTokener( new StringReader( json ), 1 ) );
+      assertEquals( expected, actual );
+      assertEquals( "A string", actual.getJSONArray( "a" )
+            .getJSONObject( 2 )
+            .getString( "b" ) );
+      assertEquals( JSONArray.fromObject( "[1,[2,3]]" ),
+            JSONArray.fromObject( new StringReader( "[1,[2,3]]" ) ) );
+   }
+}
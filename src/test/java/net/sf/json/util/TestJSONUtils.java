@@ -51,6 +51,7 @@ public class TestJSONUtils extends TestCase {
       assertEquals( "a", JSONUtils.getFunctionParams( "function(a)" ) );
       assertEquals( "a,b", JSONUtils.getFunctionParams( "function(a,b)" ) );
       assertEquals( "", JSONUtils.getFunctionParams( "notAFunction" ) );
+      assertEquals( "a, b", JSONUtils.getFunctionParams( "function (a, b)" ) );
    }
 
    public void testIsArray() {
@@ -89,6 +90,25 @@ public class TestJSONUtils extends TestCase {
       assertTrue( JSONUtils.isFunction( "function() { return a; }" ) );
       assertTrue( JSONUtils.isFunction( "function () { return a; }" ) );
       assertTrue( JSONUtils.isFunction( "function(a){ return a; }" ) );
+      assertTrue( JSONUtils.isFunction( "function(){}" ) );
+   }
+
+   public void testIsFunction_invalid() {
+      assertFalse( JSONUtils.isFunction( "function  (){ return a; }" ) );
+      assertFalse( JSONUtils.isFunction( "function(){ return a; }x" ) );
+      assertFalse( JSONUtils.isFunction( "function(){\n return a; }" ) );
+      assertFalse( JSONUtils.isFunction( "function()  { return a; }" ) );
+      assertFalse( JSONUtils.isFunction( "func(){ return a; }" ) );
+      assertFalse( JSONUtils.isFunction( "function(" ) );
+   }
+
+   public void testIsFunctionHeader() {
+      assertTrue( JSONUtils.isFunctionHeader( "function()" ) );
+      assertTrue( JSONUtils.isFunctionHeader( "function (a,b)" ) );
+      assertFalse( JSONUtils.isFunctionHeader( "function(" ) );
+      assertFalse( JSONUtils.isFunctionHeader( "function(a)b" ) );
+      assertFalse( JSONUtils.isFunctionHeader( "function(a\n)" ) );
+      assertFalse( JSONUtils.isFunctionHeader( "functional()" ) );
    }
 
    public void testNumberToString_null() {
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import net.sf.json.JsonConfig;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestJsonLinesReader extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestJsonLinesReader.class );
+   }
+
+   public TestJsonLinesReader( String name ) {
+      super( name );
+   }
+
+   public void testRead() throws Exception {
+      JsonLinesReader reader = new JsonLinesReader( new StringReader(
+            "{\"a\":1}\n\n  [1,2]  \r\nnull\n{\"b\":\"x\"}" ) );
+      assertEquals( JSONObject.fromObject( "{\"a\":1}" ), reader.read() );
+      assertEquals( JSONArray.fromObject( "[1,2]" ), reader.read() );
+      assertEquals( 3, reader.getLineNumber() );
+      assertEquals( JSONNull.getInstance(), reader.read() );
+      assertEquals( JSONObject.fromObject( "{\"b\":\"x\"}" ), reader.read() );
+      assertNull( reader.read() );
+      assertNull( reader.read() );
+      reader.close();
+   }
+
+   public void testRead_file() throws Exception {
+      File file = File.createTempFile( "json", ".jsonl" );
+      file.deleteOnExit();
+      FileOutputStream out = new FileOutputStream( file );
+      out.write( "{\"name\":\"j\u00e9son\"}\n{\"name\":\"b\"}\n".getBytes( "UTF-8" ) );
+      out.close();
+      JsonLinesReader reader = new JsonLinesReader( file, new JsonConfig() );
+      try{
+         assertEquals( "j\u00e9son", ((JSONObject) reader.read()).getString( "name" ) );
+         assertEquals( "b", ((JSONObject) reader.read()).getString( "name" ) );
+         assertNull( reader.read() );
+      }finally{
+         reader.close();
+      }
+   }
+
+   public void testRead_invalid() throws Exception {
+      JsonLinesReader reader = new JsonLinesReader( new StringReader( "{\"a\":1}\n{\"a\" 2}" ) );
+      reader.read();
+      try{
+         reader.read();
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         assertTrue( expected.getMessage()
+               .indexOf( "line 2" ) != -1 );
+      }
+   }
+
+   public void testRead_parallel() throws Exception {
+      StringBuffer sb = new StringBuffer();
+      for( int i = 0; i < 1000; i++ ){
+         sb.append( "{\"id\":" )
+               .append( i )
+               .append( "}\n" );
+      }
+      ExecutorService executor = Executors.newFixedThreadPool( 4 );
+      try{
+         JsonLinesReader reader = new JsonLinesReader( new StringReader( sb.toString() ),
+               new JsonConfig(), executor, 16 );
+         for( int i = 0; i < 1000; i++ ){
+            assertEquals( i, ((JSONObject) reader.read()).getInt( "id" ) );
+         }
+         assertNull( reader.read() );
+         reader.close();
+      }finally{
+         executor.shutdown();
+      }
+   }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import net.sf.json.JsonConfig;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestJsonLinesWriter extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestJsonLinesWriter.class );
+   }
+
+   public TestJsonLinesWriter( String name ) {
+      super( name );
+   }
+
+   public void testWrite() throws Exception {
+      StringWriter out = new StringWriter();
+      JsonLinesWriter writer = new JsonLinesWriter( out );
+      Map map = new HashMap();
+      map.put( "a", "x\ny" );
+      writer.write( map );
+      writer.write( JSONArray.fromObject( "[1,2]" ) );
+      writer.flush();
+      assertEquals( "{\"a\":\"x\\ny\"}\n[1,2]\n", out.toString() );
+      writer.write( JSONObject.fromObject( "{\"b\":true}" ) );
+      writer.close();
+      assertEquals( "{\"a\":\"x\\ny\"}\n[1,2]\n{\"b\":true}\n", out.toString() );
+   }
+
+   public void testWrite_parallel() throws Exception {
+      StringWriter out = new StringWriter();
+      ExecutorService executor = Executors.newFixedThreadPool( 4 );
+      try{
+         JsonLinesWriter writer = new JsonLinesWriter( out, new JsonConfig(), executor, 8 );
+         for( int i = 0; i < 1000; i++ ){
+            Map map = new HashMap();
+            map.put( "id", new Integer( i ) );
+            writer.write( map );
+         }
+         writer.close();
+      }finally{
+         executor.shutdown();
+      }
+      JsonLinesReader reader = new JsonLinesReader( new StringReader( out.toString() ) );
+      for( int i = 0; i < 1000; i++ ){
+         assertEquals( i, ((JSONObject) reader.read()).getInt( "id" ) );
+      }
+      assertNull( reader.read() );
+   }
+}
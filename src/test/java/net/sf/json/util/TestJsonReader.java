@@ -0,0 +1,330 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONException;
+import net.sf.json.JSONFunction;
+import net.sf.json.JSONNull;
+import net.sf.json.sample.JsonEventAdpater;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestJsonReader extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestJsonReader.class );
+   }
+
+   public TestJsonReader( String name ) {
+      super( name );
+   }
+
+   public void testNextToken_array() {
+      JsonReader reader = new JsonReader( new JSONTokener( "[1,'a',true,false,null,2.5]" ) );
+      assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+      assertEquals( 1, reader.getDepth() );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( new Integer( 1 ), reader.getValue() );
+      assertEquals( JsonReader.VALUE_STRING, reader.nextToken() );
+      assertEquals( "a", reader.getText() );
+      assertEquals( JsonReader.VALUE_TRUE, reader.nextToken() );
+      assertEquals( Boolean.TRUE, reader.getValue() );
+      assertEquals( JsonReader.VALUE_FALSE, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_NULL, reader.nextToken() );
+      assertEquals( JSONNull.getInstance(), reader.getValue() );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( new Double( 2.5 ), reader.getValue() );
+      assertEquals( JsonReader.END_ARRAY, reader.nextToken() );
+      assertEquals( 0, reader.getDepth() );
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+   }
+
+   public void testNextToken_emptyElements() {
+      JsonReader reader = new JsonReader( new JSONTokener( "[,1,,2,]" ) );
+      assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_NULL, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_NULL, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( JsonReader.END_ARRAY, reader.nextToken() );
+   }
+
+   public void testFeed_bytes() throws Exception {
+      byte[] bytes = "{\"a\":\"\u00e9\u20ac\ud834\udd1e\"}".getBytes( "UTF-8" );
+      JsonReader reader = new JsonReader();
+      StringBuffer sb = new StringBuffer();
+      for( int i = 0; i < bytes.length; i++ ){
+         reader.feed( ByteBuffer.wrap( bytes, i, 1 ) );
+         for( int t = reader.nextToken(); t != JsonReader.NOT_AVAILABLE; t = reader.nextToken() ){
+            sb.append( t )
+                  .append( ' ' );
+            if( t == JsonReader.VALUE_STRING ){
+               assertEquals( "\u00e9\u20ac\ud834\udd1e", reader.getText() );
+            }
+         }
+      }
+      reader.endOfInput();
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+      assertEquals( "1 5 6 2 ", sb.toString() );
+   }
+
+   public void testFeed_chars() {
+      String json = "{a:[1,'two',true,null,{}],\"b\" : 12.5, c: function(x){ return x; } } [3]";
+      JsonReader expected = new JsonReader( new JSONTokener( json ) );
+      JsonReader reader = new JsonReader();
+      assertEquals( JsonReader.NOT_AVAILABLE, reader.nextToken() );
+      char[] chars = json.toCharArray();
+      for( int i = 0; i < chars.length; i++ ){
+         reader.feed( chars, i, 1 );
+         for( int t = reader.nextToken(); t != JsonReader.NOT_AVAILABLE; t = reader.nextToken() ){
+            assertEquals( expected.nextToken(), t );
+            assertEquals( expected.getText(), reader.getText() );
+            assertEquals( expected.getValue(), reader.getValue() );
+         }
+      }
+      reader.endOfInput();
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+      assertEquals( JsonReader.END_DOCUMENT, expected.nextToken() );
+   }
+
+   public void testFeed_endOfInput() {
+      JsonReader reader = new JsonReader();
+      reader.feed( "[1".toCharArray(), 0, 2 );
+      assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+      assertEquals( JsonReader.NOT_AVAILABLE, reader.nextToken() );
+      reader.endOfInput();
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      try{
+         reader.nextToken();
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+      try{
+         reader.feed( "]".toCharArray(), 0, 1 );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testFeed_incompleteBytes() {
+      JsonReader reader = new JsonReader();
+      reader.feed( ByteBuffer.wrap( new byte[] { '"', (byte) 0xC3 } ) );
+      try{
+         reader.endOfInput();
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testFeed_notFed() {
+      try{
+         new JsonReader( new JSONTokener( "[]" ) ).feed( new char[1], 0, 1 );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testFeed_parse() {
+      JsonEventAdpater listener = new JsonEventAdpater();
+      JsonReader reader = new JsonReader();
+      char[] chars = "{\"a\":[1,2".toCharArray();
+      reader.feed( chars, 0, chars.length );
+      reader.parse( listener );
+      assertEquals( 1, listener.getObjectStart() );
+      assertEquals( 1, listener.getArrayStart() );
+      assertEquals( 1, listener.getElementAdded() );
+      chars = "],\"b\":{}}".toCharArray();
+      reader.feed( chars, 0, chars.length );
+      reader.parse( listener );
+      reader.endOfInput();
+      reader.parse( listener );
+      assertEquals( 2, listener.getObjectStart() );
+      assertEquals( 2, listener.getObjectEnd() );
+      assertEquals( 1, listener.getArrayEnd() );
+      assertEquals( 2, listener.getElementAdded() );
+      assertEquals( 2, listener.getPropertySet() );
+   }
+
+   public void testNextToken_function() {
+      JsonReader reader = new JsonReader( new JSONTokener( "[function(a){ return a; }]" ) );
+      assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_FUNCTION, reader.nextToken() );
+      assertEquals( new JSONFunction( new String[] { "a" }, "return a;" ), reader.getValue() );
+      assertEquals( JsonReader.END_ARRAY, reader.nextToken() );
+   }
+
+   public void testNextToken_invalid() {
+      JsonReader reader = new JsonReader( new JSONTokener( "{\"a\" 1}" ) );
+      assertEquals( JsonReader.START_OBJECT, reader.nextToken() );
+      try{
+         reader.nextToken();
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+
+   public void testNextToken_lenient() {
+      JsonReader reader = new JsonReader( new JSONTokener(
+            "{ /* comment */ a = 1; 'b' => [2]; c: 'x', }" ) );
+      assertEquals( JsonReader.START_OBJECT, reader.nextToken() );
+      assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+      assertEquals( "a", reader.getText() );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+      assertEquals( "b", reader.getText() );
+      assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( JsonReader.END_ARRAY, reader.nextToken() );
+      assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+      assertEquals( "c", reader.getText() );
+      assertEquals( JsonReader.VALUE_STRING, reader.nextToken() );
+      assertEquals( "x", reader.getValue() );
+      assertEquals( JsonReader.END_OBJECT, reader.nextToken() );
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+   }
+
+   public void testNextToken_object() {
+      JsonReader reader = new JsonReader( new JSONTokener( "{\"name\":\"json\",\"obj\":{}}" ) );
+      assertEquals( -1, reader.getCurrentToken() );
+      assertEquals( JsonReader.START_OBJECT, reader.nextToken() );
+      assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+      assertEquals( "name", reader.getText() );
+      assertNull( reader.getValue() );
+      assertEquals( JsonReader.VALUE_STRING, reader.nextToken() );
+      assertEquals( "json", reader.getValue() );
+      assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+      assertEquals( JsonReader.START_OBJECT, reader.nextToken() );
+      assertEquals( 2, reader.getDepth() );
+      assertEquals( JsonReader.END_OBJECT, reader.nextToken() );
+      assertEquals( JsonReader.END_OBJECT, reader.nextToken() );
+      assertEquals( JsonReader.END_OBJECT, reader.getCurrentToken() );
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+   }
+
+   public void testNextToken_reader() {
+      StringBuffer sb = new StringBuffer( "[" );
+      for( int i = 0; i < 1000; i++ ){
+         sb.append( i > 0 ? "," : "" )
+               .append( "{\"id\":" )
+               .append( i )
+               .append( ",\"tags\":[\"x\",\"y\"]}" );
+      }
+      sb.append( "]" );
+      JsonReader reader = new JsonReader( new JSONTokener( new StringReader( sb.toString() ), 16 ) );
+      assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+      int count = 0;
+      while( reader.nextToken() == JsonReader.START_OBJECT ){
+         assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+         assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+         assertEquals( new Integer( count++ ), reader.getValue() );
+         assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+         assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+         reader.skipChildren();
+         assertEquals( JsonReader.END_OBJECT, reader.nextToken() );
+      }
+      assertEquals( 1000, count );
+      assertEquals( JsonReader.END_ARRAY, reader.getCurrentToken() );
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+   }
+
+   public void testNextToken_scalars() {
+      JsonReader reader = new JsonReader( new JSONTokener( "1 \"two\" null" ) );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( JsonReader.VALUE_STRING, reader.nextToken() );
+      assertEquals( "two", reader.getText() );
+      assertEquals( JsonReader.VALUE_NULL, reader.nextToken() );
+      assertEquals( JsonReader.END_DOCUMENT, reader.nextToken() );
+   }
+
+   public void testParse() {
+      JsonEventAdpater listener = new JsonEventAdpater();
+      new JsonReader( new JSONTokener(
+            "{\"a\":[1,{\"b\":null},[]],\"c\":{\"d\":true},\"e\":\"f\"}" ) ).parse( listener );
+      assertEquals( 3, listener.getObjectStart() );
+      assertEquals( 3, listener.getObjectEnd() );
+      assertEquals( 2, listener.getArrayStart() );
+      assertEquals( 2, listener.getArrayEnd() );
+      assertEquals( 5, listener.getPropertySet() );
+      assertEquals( 3, listener.getElementAdded() );
+      assertEquals( 0, listener.getError() );
+   }
+
+   public void testParse_error() {
+      JsonEventAdpater listener = new JsonEventAdpater();
+      try{
+         new JsonReader( new JSONTokener( "[1,{\"a\"}]" ) ).parse( listener );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         assertEquals( 1, listener.getError() );
+         assertEquals( 1, listener.getArrayStart() );
+         assertEquals( 1, listener.getObjectStart() );
+         assertEquals( 1, listener.getElementAdded() );
+      }
+   }
+
+   public void testParse_values() {
+      final StringBuffer sb = new StringBuffer();
+      new JsonReader( new JSONTokener( "[1,{\"a\":'b'}]" ) ).parse( new JsonEventAdpater(){
+         public void onElementAdded( int index, Object element ) {
+            sb.append( "[" + index + "]=" + element + " " );
+         }
+
+         public void onPropertySet( String key, Object value, boolean accumulated ) {
+            sb.append( key + "=" + value + " " );
+         }
+      } );
+      assertEquals( "[0]=1 a=b [1]=null ", sb.toString() );
+   }
+
+   public void testSkipChildren() {
+      JsonReader reader = new JsonReader( new JSONTokener( "{\"a\":{\"b\":[1,{\"c\":[]}]},\"d\":2}" ) );
+      assertEquals( JsonReader.START_OBJECT, reader.nextToken() );
+      assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+      assertEquals( JsonReader.START_OBJECT, reader.nextToken() );
+      reader.skipChildren();
+      assertEquals( JsonReader.END_OBJECT, reader.getCurrentToken() );
+      assertEquals( 1, reader.getDepth() );
+      assertEquals( JsonReader.FIELD_NAME, reader.nextToken() );
+      assertEquals( "d", reader.getText() );
+      // no-op on a field name
+      reader.skipChildren();
+      assertEquals( JsonReader.FIELD_NAME, reader.getCurrentToken() );
+      assertEquals( JsonReader.VALUE_NUMBER, reader.nextToken() );
+      assertEquals( JsonReader.END_OBJECT, reader.nextToken() );
+   }
+
+   public void testSkipChildren_unterminated() {
+      JsonReader reader = new JsonReader( new JSONTokener( "[[1,2]" ) );
+      assertEquals( JsonReader.START_ARRAY, reader.nextToken() );
+      try{
+         reader.skipChildren();
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+   }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONObject;
+import net.sf.json.JsonConfig;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestKeyCache extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestKeyCache.class );
+   }
+
+   public TestKeyCache( String name ) {
+      super( name );
+   }
+
+   public void testIntern() {
+      KeyCache keyCache = new KeyCache();
+      String key = keyCache.intern( new StringBuffer( "name" ) );
+      assertEquals( "name", key );
+      assertSame( key, keyCache.intern( new StringBuffer( "name" ) ) );
+      assertSame( key, keyCache.intern( new String( "name" ) ) );
+      keyCache.clear();
+      assertNotSame( key, keyCache.intern( new StringBuffer( "name" ) ) );
+   }
+
+   public void testIntern_maxKeyLength() {
+      KeyCache keyCache = new KeyCache( 16, 3 );
+      String key = keyCache.intern( new StringBuffer( "long" ) );
+      assertNotSame( key, keyCache.intern( new StringBuffer( "long" ) ) );
+      key = keyCache.intern( new StringBuffer( "abc" ) );
+      assertSame( key, keyCache.intern( new StringBuffer( "abc" ) ) );
+   }
+
+   public void testIntern_size() {
+      KeyCache keyCache = new KeyCache( 1, 64 );
+      String a = keyCache.intern( "a" );
+      keyCache.intern( "b" );
+      assertEquals( "a", keyCache.intern( new StringBuffer( "a" ) ) );
+      assertNotSame( a, keyCache.intern( new StringBuffer( "a" ) ) );
+   }
+
+   public void testNextKey() {
+      JsonConfig jsonConfig = new JsonConfig();
+      jsonConfig.setKeyCache( new KeyCache() );
+      JSONObject first = JSONObject.fromObject( "{\"name\":1,'id':2,other:3}", jsonConfig );
+      JSONObject second = JSONObject.fromObject( "{\"id\":4,\"name\":5,other:6}", jsonConfig );
+      assertEquals( JSONObject.fromObject( "{\"name\":1,\"id\":2,\"other\":3}" ), first );
+      Iterator i = first.keySet()
+            .iterator();
+      Iterator j = second.keySet()
+            .iterator();
+      while( i.hasNext() ){
+         assertSame( i.next(), j.next() );
+      }
+   }
+
+   public void testNextKey_noCache() {
+      JSONTokener tokener = new JSONTokener( "'a' b" );
+      assertEquals( "a", tokener.nextKey( new JsonConfig() ) );
+      assertEquals( "b", tokener.nextKey( new JsonConfig() ) );
+   }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sf.json.util;
+
+import junit.framework.TestCase;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+/**
+ * @author Andres Almiray <aalmiray@users.sourceforge.net>
+ */
+public class TestStructuralIndex extends TestCase {
+   public static void main( String[] args ) {
+      junit.textui.TestRunner.run( TestStructuralIndex.class );
+   }
+
+   public TestStructuralIndex( String name ) {
+      super( name );
+   }
+
+   public void testGet() {
+      StructuralIndex index = new StructuralIndex( " { \"a\" : { \"b\" : [ 1 , { \"c\" : \"x\" } ] } ,"
+            + " 'd' : null , e : true } " );
+      assertEquals( new Integer( 1 ), index.get( "a.b[0]" ) );
+      assertEquals( "x", index.get( "a.b[1].c" ) );
+      assertEquals( JSONNull.getInstance(), index.get( "d" ) );
+      assertEquals( Boolean.TRUE, index.get( "e" ) );
+      assertEquals( JSONObject.fromObject( "{\"c\":\"x\"}" ), index.get( "a.b[1]" ) );
+   }
+
+   public void testGet_large() {
+      StringBuffer sb = new StringBuffer( "{\"docs\":[" );
+      for( int i = 0; i < 10000; i++ ){
+         if( i > 0 ){
+            sb.append( ',' );
+         }
+         sb.append( "{\"id\":" )
+               .append( i )
+               .append( ",\"payload\":{\"text\":\"[{,:}]\",\"n\":[" )
+               .append( i )
+               .append( "]}}" );
+      }
+      sb.append( "]}" );
+      StructuralIndex index = new StructuralIndex( sb.toString() );
+      assertEquals( JSONObject.fromObject( "{\"text\":\"[{,:}]\",\"n\":[9000]}" ),
+            index.get( "docs[9000].payload" ) );
+      assertEquals( new Integer( 9999 ), index.get( "docs[9999].id" ) );
+   }
+
+   public void testGet_missing() {
+      StructuralIndex index = new StructuralIndex( "{\"a\":[1,2],\"b\":{}}" );
+      try{
+         index.get( "c" );
+         fail( "Expected a JSONException" );
+      }catch( JSONException expected ){
+         // ok
+      }
+      assertNull( index.opt( "a[2]" ) );
+      assertNull( index.opt( "a[-1]" ) );
+      assertNull( index.opt( "a.x" ) );
+      assertNull( index.opt( "b.x" ) );
+      assertNull( index.opt( "b[0]" ) );
+      assertNull( new StructuralIndex( "[]" ).opt( "[0]" ) );
+   }
+
+   public void testGet_root() {
+      assertEquals( JSONArray.fromObject( "[1,2]" ), new StructuralIndex( "[1,2]" ).get( "" ) );
+      assertEquals( new Integer( 2 ), new StructuralIndex( "[1,2]" ).get( "[1]" ) );
+   }
+
+   public void testIndex() {
+      assertEquals( 10, new StructuralIndex( "{\"a\":[1,\"]\"],'b':{}}" ).size() );
+   }
+
+   public void testIndex_unbalanced() {
+      String[] invalid = { "{", "[}", "{\"a\":1]", "]", "{\"a\":\"}" };
+      for( int i = 0; i < invalid.length; i++ ){
+         try{
+            new StructuralIndex( invalid[i] );
+            fail( "Expected a JSONException for " + invalid[i] );
+         }catch( JSONException expected ){
+            // ok
+         }
+      }
+   }
+}